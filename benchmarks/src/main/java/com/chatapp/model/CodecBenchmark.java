@@ -0,0 +1,54 @@
+package com.chatapp.model;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodage et décodage d'un message : sérialisation Java (version 1), format binaire (version 2)
+ * et format binaire compressé au-delà du seuil (version 3).
+ * Ajouter {@code -prof gc} pour comparer les allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CodecBenchmark {
+
+    @Param({"1", "2", "3"})
+    private int version;
+
+    @Param({"20", "500", "4000"})
+    private int tailleContenu;
+
+    private Message message;
+    private byte[] trame;
+
+    @Setup
+    public void preparer() {
+        message = new Message("alice", "x".repeat(tailleContenu), Message.TypeMessage.MESSAGE);
+        message.setSalon("jeux");
+        trame = CodecMessage.encoder(message, version);
+    }
+
+    @Benchmark
+    public byte[] encoder() {
+        return CodecMessage.encoder(message, version);
+    }
+
+    @Benchmark
+    public Message decoder() throws TrameInvalideException {
+        return CodecMessage.decoder(trame, CodecMessage.TAILLE_ENTETE, trame.length - CodecMessage.TAILLE_ENTETE);
+    }
+}
@@ -0,0 +1,37 @@
+package com.chatapp.server;
+
+/**
+ * Connexion sans réseau pour les bancs d'essai : compte les trames et les octets déposés
+ */
+public class ConnexionMemoire implements Connexion {
+
+    private long trames;
+    private long octets;
+
+    @Override
+    public void envoyer(byte[] trame) {
+        trames++;
+        octets += trame.length;
+    }
+
+    @Override
+    public int getProfondeurFile() {
+        return 0;
+    }
+
+    @Override
+    public void fermerApresEnvoi() {
+    }
+
+    @Override
+    public void fermer() {
+    }
+
+    public long getTrames() {
+        return trames;
+    }
+
+    public long getOctets() {
+        return octets;
+    }
+}
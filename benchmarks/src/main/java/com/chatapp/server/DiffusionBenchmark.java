@@ -0,0 +1,54 @@
+package com.chatapp.server;
+
+import com.chatapp.model.Message;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Coût d'une diffusion selon le nombre de destinataires, connexions en mémoire :
+ * journal, encodage et dépôt de la trame chez chaque client
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DiffusionBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int destinataires;
+
+    // Part des clients restés en version 1, qui demandent un second encodage
+    @Param({"0", "10"})
+    private int pourcentageVersion1;
+
+    private Server server;
+    private Message message;
+
+    @Setup
+    public void preparer() {
+        server = ServeurMemoire.creer(destinataires, destinataires * pourcentageVersion1 / 100);
+        message = new Message("alice", "bonjour tout le monde", Message.TypeMessage.MESSAGE);
+    }
+
+    @Benchmark
+    public void diffuser() {
+        server.diffuser(message);
+    }
+
+    @Benchmark
+    public void diffuserDansSalon() {
+        server.diffuserDansSalon(message);
+    }
+}
@@ -0,0 +1,53 @@
+package com.chatapp.server;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Débit de {@link Server#ajouterAuJournal(String)} quand plusieurs threads écrivent en même temps
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class JournalBenchmark {
+
+    private static final String LIGNE = "alice: bonjour tout le monde";
+
+    private Server server;
+
+    @Setup
+    public void preparer() {
+        server = ServeurMemoire.creer(0, 0);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void unThread() {
+        server.ajouterAuJournal(LIGNE);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void quatreThreads() {
+        server.ajouterAuJournal(LIGNE);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void tousLesCoeurs() {
+        server.ajouterAuJournal(LIGNE);
+    }
+}
@@ -0,0 +1,43 @@
+package com.chatapp.server;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Construction de la liste complète des utilisateurs par {@link Server#envoyerListeUtilisateurs()}.
+ * Un seul client est en version 1 : la liste est construite et encodée une fois,
+ * et le parcours des autres clients mesure le coût de leur filtrage.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ListeUtilisateursBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int utilisateurs;
+
+    private Server server;
+
+    @Setup
+    public void preparer() {
+        server = ServeurMemoire.creer(utilisateurs, 1);
+    }
+
+    @Benchmark
+    public void envoyerListeUtilisateurs() {
+        server.envoyerListeUtilisateurs();
+    }
+}
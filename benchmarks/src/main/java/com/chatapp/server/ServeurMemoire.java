@@ -0,0 +1,35 @@
+package com.chatapp.server;
+
+import com.chatapp.model.CodecMessage;
+import com.chatapp.model.Message;
+
+/**
+ * Serveur non démarré peuplé de clients en mémoire, connectés comme par le réseau
+ */
+final class ServeurMemoire {
+
+    private ServeurMemoire() {
+    }
+
+    /**
+     * Crée un serveur sans historique avec le nombre de clients demandé,
+     * dont les premiers en version 1
+     */
+    static Server creer(int clients, int clientsVersion1) {
+        ConfigurationServeur configuration = new ConfigurationServeur();
+        configuration.setRepertoireHistorique(null);
+        Server server = new Server(0, ModeServeur.NIO, configuration);
+        for (int i = 0; i < clients; i++) {
+            ClientHandler client = new ClientHandler(server, new ConnexionMemoire());
+            server.ajouterClient(client);
+
+            Message connexion = new Message("utilisateur" + i, "vient de rejoindre le chat",
+                    Message.TypeMessage.CONNEXION);
+            if (i >= clientsVersion1) {
+                connexion.setVersionProtocole(CodecMessage.VERSION_COURANTE);
+            }
+            client.traiterMessage(connexion);
+        }
+        return server;
+    }
+}
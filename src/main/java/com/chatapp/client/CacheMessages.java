@@ -0,0 +1,157 @@
+package com.chatapp.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fichier temporaire recevant les lignes sorties de la mémoire du client, dans l'ordre.
+ * Un index clairsemé retient la position d'une ligne sur {@value #INTERVALLE_INDEX}
+ * pour relire une page sans parcourir le fichier. Le fichier est supprimé à la fermeture.
+ */
+public class CacheMessages implements Closeable {
+
+    private static final int INTERVALLE_INDEX = 64;
+    // Longueur de l'enregistrement puis horodatage
+    private static final int TAILLE_ENTETE = Integer.BYTES + Long.BYTES;
+    private static final int ABSENT = -1;
+
+    private final FileChannel canal;
+    private long[] index = new long[64];
+    private int nombre = 0;
+    private long taille = 0;
+
+    public CacheMessages() throws IOException {
+        Path fichier = Files.createTempFile("chat-messages-", ".cache");
+        // Au cas où le client s'arrête sans fermer le cache
+        fichier.toFile().deleteOnExit();
+        this.canal = FileChannel.open(fichier, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Ajoute des lignes à la suite du fichier
+     */
+    public void ajouter(List<LigneMessage> lignes) throws IOException {
+        if (lignes.isEmpty()) return;
+
+        List<byte[][]> champs = new ArrayList<>(lignes.size());
+        int octets = 0;
+        for (LigneMessage ligne : lignes) {
+            byte[][] chaines = {
+                    utf8(ligne.expediteur()), utf8(ligne.contenu()), utf8(ligne.salon()), utf8(ligne.destinataire())
+            };
+            champs.add(chaines);
+            octets += tailleEnregistrement(chaines);
+        }
+
+        ByteBuffer tampon = ByteBuffer.allocate(octets);
+        for (int i = 0; i < lignes.size(); i++) {
+            byte[][] chaines = champs.get(i);
+            if (nombre % INTERVALLE_INDEX == 0) {
+                int entree = nombre / INTERVALLE_INDEX;
+                if (entree == index.length) {
+                    index = Arrays.copyOf(index, entree * 2);
+                }
+                index[entree] = taille + tampon.position();
+            }
+            tampon.putInt(tailleEnregistrement(chaines) - Integer.BYTES);
+            tampon.putLong(lignes.get(i).horodatageMillis());
+            for (byte[] chaine : chaines) {
+                ecrireChaine(tampon, chaine);
+            }
+            nombre++;
+        }
+
+        tampon.flip();
+        while (tampon.hasRemaining()) {
+            taille += canal.write(tampon, taille);
+        }
+    }
+
+    /**
+     * Relit les lignes de rang compris dans [debut, fin[
+     */
+    public List<LigneMessage> lire(int debut, int fin) throws IOException {
+        fin = Math.min(fin, nombre);
+        List<LigneMessage> lignes = new ArrayList<>(Math.max(0, fin - debut));
+        if (debut >= fin) return lignes;
+
+        // Lire d'un bloc depuis l'entrée d'index précédant debut jusqu'à celle qui suit fin
+        int entreeDebut = debut / INTERVALLE_INDEX;
+        int entreeFin = (fin + INTERVALLE_INDEX - 1) / INTERVALLE_INDEX;
+        long positionDebut = index[entreeDebut];
+        long positionFin = entreeFin * INTERVALLE_INDEX < nombre ? index[entreeFin] : taille;
+
+        ByteBuffer tampon = ByteBuffer.allocate((int) (positionFin - positionDebut));
+        while (tampon.hasRemaining()) {
+            if (canal.read(tampon, positionDebut + tampon.position()) < 0) {
+                throw new IOException("Cache des messages tronqué");
+            }
+        }
+        tampon.flip();
+
+        for (int rang = entreeDebut * INTERVALLE_INDEX; rang < fin; rang++) {
+            int longueur = tampon.getInt();
+            if (rang < debut) {
+                tampon.position(tampon.position() + longueur);
+                continue;
+            }
+            long horodatage = tampon.getLong();
+            lignes.add(new LigneMessage(horodatage, lireChaine(tampon), lireChaine(tampon),
+                    lireChaine(tampon), lireChaine(tampon)));
+        }
+        return lignes;
+    }
+
+    /**
+     * Nombre de lignes écrites
+     */
+    public int getNombre() {
+        return nombre;
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+
+    private static byte[] utf8(String chaine) {
+        return chaine == null ? null : chaine.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int tailleEnregistrement(byte[][] chaines) {
+        int taille = TAILLE_ENTETE;
+        for (byte[] chaine : chaines) {
+            taille += Integer.BYTES + (chaine == null ? 0 : chaine.length);
+        }
+        return taille;
+    }
+
+    private static void ecrireChaine(ByteBuffer tampon, byte[] chaine) {
+        if (chaine == null) {
+            tampon.putInt(ABSENT);
+            return;
+        }
+        tampon.putInt(chaine.length);
+        tampon.put(chaine);
+    }
+
+    private static String lireChaine(ByteBuffer tampon) {
+        int longueur = tampon.getInt();
+        if (longueur == ABSENT) return null;
+
+        String chaine = new String(tampon.array(), tampon.arrayOffset() + tampon.position(), longueur,
+                StandardCharsets.UTF_8);
+        tampon.position(tampon.position() + longueur);
+        return chaine;
+    }
+}
@@ -1,13 +1,29 @@
 package com.chatapp.client;
 
+import com.chatapp.model.CodecMessage;
+import com.chatapp.model.EtapeTrace;
 import com.chatapp.model.Message;
+import com.chatapp.model.StatistiquesTrace;
+import com.chatapp.model.TrameInvalideException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -17,84 +33,308 @@ import java.util.logging.Logger;
  */
 public class Client {
     private static final Logger LOGGER = Logger.getLogger(Client.class.getName());
+    // Battements sans réponse au-delà desquels le serveur est considéré comme perdu
+    private static final int BATTEMENTS_MANQUES_MAX = 3;
+    // Reconnexion après une coupure : attente tirée au hasard sous un plafond qui double
+    // à chaque échec, pour étaler les clients d'un serveur qui redémarre
+    private static final long ATTENTE_RECONNEXION_BASE_MS = 500;
+    private static final long ATTENTE_RECONNEXION_MAX_MS = 30_000;
+    private static final int TENTATIVES_RECONNEXION_MAX = 12;
+    private static final int DELAI_CONNEXION_MS = 5_000;
+    // Délai de réponse à une REPRISE, qu'un serveur antérieur à la version 6 ignore
+    private static final long DELAI_REPRISE_S = 10;
+    // Séquences retenues pour reconnaître les doublons
+    private static final int FENETRE_SEQUENCES = 64;
+
+    // Planificateur partagé des envois différés de tous les clients du processus
+    private static final ScheduledExecutorService PLANIFICATEUR = Executors.newSingleThreadScheduledExecutor(tache -> {
+        Thread thread = new Thread(tache, "client-envois-differes");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     private final String hostname;
     private final int port;
     private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private DataOutputStream out;
+    private DataInputStream in;
     private final String nomUtilisateur;
+    private final ThreadFactory fabriqueThreads;
+    // Un message texte sur N est tracé de bout en bout (0 : aucun)
+    private volatile int traceUnSur = Integer.getInteger("chatapp.traceUnSur", 100);
+    private volatile StatistiquesTrace statistiquesTrace;
     private boolean isConnected = false;
+    private volatile int versionProtocole = CodecMessage.VERSION_SERIALISEE;
     private Thread lectureThread;
+    private long delaiRegroupementMicros = 0;
+    private boolean envoiProgramme = false;
+    // Version de la liste de présence reçue (thread de lecture uniquement)
+    private long versionPresence = 0;
+    // Intervalle des battements envoyés à un serveur de version 5 (0 : aucun)
+    private volatile long intervalleBattementMs = Long.getLong("chatapp.battementMs", 15_000);
+    private volatile ScheduledFuture<?> battements;
+    // Horloge de la dernière trame reçue, en nanosecondes
+    private volatile long derniereReception;
+    private volatile long allerRetourMicros = -1;
+    // Protège l'ouverture et la fermeture des connexions successives
+    private final Object verrouSession = new Object();
+    private volatile boolean reconnexionAutomatique = true;
+    // Thread des tentatives de reconnexion en cours (null : aucune)
+    private Thread threadReconnexion;
+    // Échecs consécutifs, remis à zéro quand le serveur accepte la session
+    private volatile int tentativesReconnexion = 0;
+    // Jeton remis par un serveur de version 6 à l'ouverture de la session, à présenter
+    // dans la REPRISE après une coupure (null : reconnexion par une CONNEXION ordinaire)
+    private volatile String jetonReprise;
+    // Le serveur a accepté la session en cours par la liste des utilisateurs
+    private volatile boolean sessionAcceptee = false;
+    // Le serveur a refusé la session par une ERREUR : inutile de se reconnecter
+    private volatile boolean sessionRefusee = false;
+    // Séquences des derniers messages reçus : les salons sont diffusés en parallèle et leurs
+    // messages peuvent arriver dans le désordre ; un doublon se reconnaît dans cette fenêtre
+    private final TreeSet<Long> sequencesRecues = new TreeSet<>();
+    // Salons rejoints confirmés par le serveur, redemandés dans la REPRISE
+    private final Set<String> salonsRejoints = ConcurrentHashMap.newKeySet();
 
     private final List<Consumer<Message>> observateursMessages = new ArrayList<>();
     private final List<Consumer<List<String>>> observateursUtilisateurs = new ArrayList<>();
     private final List<Consumer<Boolean>> observateursConnexion = new ArrayList<>();
+    private final List<Consumer<Message>> observateursPresence = new ArrayList<>();
+    private final List<Consumer<Long>> observateursLimite = new ArrayList<>();
+    private final List<Consumer<Integer>> observateursReconnexion = new ArrayList<>();
 
     public Client(String hostname, int port, String nomUtilisateur) {
+        this(hostname, port, nomUtilisateur, Thread::new);
+    }
+
+    /**
+     * Crée un client dont le thread de lecture vient de la fabrique donnée,
+     * par exemple des threads virtuels pour simuler beaucoup d'utilisateurs
+     */
+    public Client(String hostname, int port, String nomUtilisateur, ThreadFactory fabriqueThreads) {
         this.hostname = hostname;
         this.port = port;
         this.nomUtilisateur = nomUtilisateur;
+        this.fabriqueThreads = fabriqueThreads;
     }
 
     /**
      * Établit la connexion au serveur
      */
     public boolean connecter() {
-        try {
-            socket = new Socket(hostname, port);
-            out = new ObjectOutputStream(socket.getOutputStream());
-            in = new ObjectInputStream(socket.getInputStream());
-
-            isConnected = true;
-
-            // Démarrer le thread de lecture
-            lectureThread = new Thread(this::lireMessages);
-            lectureThread.setDaemon(true);
-            lectureThread.start();
+        synchronized (verrouSession) {
+            if (isConnected) return true;
+            synchronized (sequencesRecues) {
+                sequencesRecues.clear();
+            }
+            salonsRejoints.clear();
+            tentativesReconnexion = 0;
+            jetonReprise = null;
+            try {
+                ouvrir(new Socket(hostname, port), false);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Erreur lors de la connexion au serveur", e);
+                return false;
+            }
+        }
 
-            // Envoyer un message de connexion
-            Message messageConnexion = new Message(
-                    nomUtilisateur,
-                    "vient de rejoindre le chat",
-                    Message.TypeMessage.CONNEXION);
-            envoyerMessage(messageConnexion);
+        // Notifier les observateurs
+        notifierChangementConnexion(true);
+        return true;
+    }
 
-            // Notifier les observateurs
-            notifierChangementConnexion(true);
+    /**
+     * Ouvre une connexion et s'annonce par une CONNEXION, ou par une REPRISE
+     * qui demande au serveur les messages manqués depuis la dernière séquence reçue
+     */
+    private void ouvrir(Socket nouvelle, boolean reprise) throws IOException {
+        socket = nouvelle;
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        isConnected = true;
+        versionProtocole = CodecMessage.VERSION_SERIALISEE;
+        sessionAcceptee = false;
+        sessionRefusee = false;
+        derniereReception = System.nanoTime();
+
+        // Démarrer le thread de lecture
+        Socket session = socket;
+        DataInputStream flux = in;
+        lectureThread = fabriqueThreads.newThread(() -> lireMessages(session, flux));
+        lectureThread.setDaemon(true);
+        lectureThread.start();
+
+        if (reprise) {
+            // Au format binaire : le format sérialisé ne transporte pas la séquence
+            List<String> lignes = new ArrayList<>();
+            lignes.add(jetonReprise);
+            lignes.addAll(salonsRejoints);
+            Message messageReprise = new Message(nomUtilisateur, String.join("\n", lignes),
+                    Message.TypeMessage.REPRISE);
+            messageReprise.setSequence(sequenceReprise());
+            messageReprise.setVersionProtocole(CodecMessage.VERSION_COURANTE);
+            envoyerMessage(messageReprise, CodecMessage.VERSION_REPRISE);
+            PLANIFICATEUR.schedule(() -> verifierReprise(session), DELAI_REPRISE_S, TimeUnit.SECONDS);
+            return;
+        }
 
-            return true;
+        // Envoyer un message de connexion
+        Message messageConnexion = new Message(
+                nomUtilisateur,
+                "vient de rejoindre le chat",
+                Message.TypeMessage.CONNEXION);
+        // Un serveur d'avant les trames ne lit pas ce flux ; les autres négocient la version
+        messageConnexion.setVersionProtocole(CodecMessage.VERSION_COURANTE);
+        envoyerMessage(messageConnexion);
+    }
 
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Erreur lors de la connexion au serveur", e);
-            return false;
+    /**
+     * Un serveur qui n'a pas répondu à la REPRISE par sa version ne la comprend pas :
+     * la connexion est reprise par une CONNEXION ordinaire
+     */
+    private void verifierReprise(Socket session) {
+        synchronized (verrouSession) {
+            if (session != socket || !isConnected || sessionRefusee
+                    || versionProtocole != CodecMessage.VERSION_SERIALISEE) return;
+            jetonReprise = null;
         }
+        Thread.startVirtualThread(() -> connexionPerdue(session));
     }
 
     /**
      * Lit les messages entrants du serveur
      */
-    private void lireMessages() {
+    private void lireMessages(Socket session, DataInputStream flux) {
         try {
             while (isConnected) {
                 try {
-                    Message message = (Message) in.readObject();
+                    Message message = CodecMessage.lire(flux);
+                    derniereReception = System.nanoTime();
                     traiterMessage(message);
                 } catch (SocketException e) {
-                    if (isConnected) {
-                        LOGGER.log(Level.INFO, "Connexion au serveur perdue");
-                        deconnecter();
-                    }
+                    LOGGER.log(Level.FINE, "Connexion au serveur fermée", e);
+                    connexionPerdue(session);
                     break;
-                } catch (ClassNotFoundException e) {
-                    LOGGER.log(Level.WARNING, "Objet inconnu reçu", e);
+                } catch (TrameInvalideException e) {
+                    LOGGER.log(Level.WARNING, "Trame invalide reçue", e);
                 }
             }
         } catch (IOException e) {
-            if (isConnected) {
-                LOGGER.log(Level.SEVERE, "Erreur lors de la lecture des messages", e);
-                deconnecter();
+            LOGGER.log(Level.FINE, "Erreur lors de la lecture des messages", e);
+            connexionPerdue(session);
+        }
+    }
+
+    /**
+     * Ferme une connexion perdue puis tente de la rétablir en arrière-plan.
+     * Sans effet si la connexion a déjà été fermée ou remplacée.
+     */
+    private void connexionPerdue(Socket session) {
+        synchronized (verrouSession) {
+            if (!isConnected || session != socket) return;
+
+            LOGGER.log(Level.INFO, "Connexion au serveur perdue");
+            isConnected = false;
+            arreterBattements();
+            fermerFlux();
+            if (!reconnexionAutomatique || sessionRefusee) {
+                notifierChangementConnexion(false);
+                return;
+            }
+            boolean reprise = jetonReprise != null;
+            threadReconnexion = fabriqueThreads.newThread(() -> reconnecter(reprise));
+            threadReconnexion.setDaemon(true);
+            threadReconnexion.start();
+        }
+    }
+
+    /**
+     * Tente de rouvrir la connexion, en attendant avant chaque tentative un délai tiré
+     * entre 0 et un plafond qui double à chaque échec. Abandonne après
+     * {@value #TENTATIVES_RECONNEXION_MAX} échecs consécutifs ou sur appel de {@link #deconnecter()}.
+     */
+    private void reconnecter(boolean reprise) {
+        while (tentativesReconnexion < TENTATIVES_RECONNEXION_MAX) {
+            int tentative = ++tentativesReconnexion;
+            notifierReconnexion(tentative);
+            long plafond = Math.min(ATTENTE_RECONNEXION_MAX_MS, ATTENTE_RECONNEXION_BASE_MS << (tentative - 1));
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(plafond + 1));
+            } catch (InterruptedException e) {
+                return;
             }
+
+            // Hors du verrou : deconnecter() ne doit pas attendre un serveur injoignable
+            Socket nouvelle = new Socket();
+            try {
+                nouvelle.connect(new InetSocketAddress(hostname, port), DELAI_CONNEXION_MS);
+                synchronized (verrouSession) {
+                    if (threadReconnexion != Thread.currentThread()) {
+                        nouvelle.close();
+                        return;
+                    }
+                    ouvrir(nouvelle, reprise);
+                    threadReconnexion = null;
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Tentative de reconnexion échouée", e);
+                fermer(nouvelle);
+                continue;
+            }
+            notifierChangementConnexion(true);
+            return;
+        }
+
+        synchronized (verrouSession) {
+            if (threadReconnexion != Thread.currentThread()) return;
+            threadReconnexion = null;
+        }
+        LOGGER.log(Level.WARNING, "Reconnexion abandonnée après {0} tentatives", tentativesReconnexion);
+        tentativesReconnexion = 0;
+        notifierChangementConnexion(false);
+    }
+
+    private static void fermer(Socket nouvelle) {
+        try {
+            nouvelle.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Erreur lors de la fermeture d'une tentative de connexion", e);
+        }
+    }
+
+    private void fermerFlux() {
+        try {
+            if (in != null) in.close();
+            if (out != null) out.close();
+            if (socket != null) socket.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Erreur lors de la fermeture de la connexion", e);
+        }
+    }
+
+    /**
+     * Retient une séquence reçue ; retourne false si elle l'a déjà été. Une séquence plus
+     * ancienne que toute la fenêtre est tenue pour reçue.
+     */
+    private boolean accepterSequence(long sequence) {
+        synchronized (sequencesRecues) {
+            if (sequencesRecues.size() >= FENETRE_SEQUENCES && sequence < sequencesRecues.first()) return false;
+            if (!sequencesRecues.add(sequence)) return false;
+            if (sequencesRecues.size() > FENETRE_SEQUENCES) {
+                sequencesRecues.pollFirst();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Séquence annoncée dans la REPRISE : le serveur rejoue tout ce qui la suit, depuis le début
+     * de la fenêtre pour couvrir un message arrivé après de plus récents ; les doublons sont écartés
+     */
+    private long sequenceReprise() {
+        synchronized (sequencesRecues) {
+            return sequencesRecues.isEmpty() ? 0 : sequencesRecues.first() - 1;
         }
     }
 
@@ -102,8 +342,18 @@ public class Client {
      * Traite un message reçu selon son type
      */
     private void traiterMessage(Message message) {
+        long sequence = message.getSequence();
+        // Déjà reçu avant la coupure : les messages rejoués après une reprise peuvent le recouper
+        if (sequence != 0 && !accepterSequence(sequence)) return;
+        if (message.estTrace()) {
+            message.marquer(EtapeTrace.RECEPTION_CLIENT);
+            getStatistiquesTrace().enregistrer(message, EtapeTrace.RECEPTION_SERVEUR, EtapeTrace.RECEPTION_CLIENT);
+        }
         switch (message.getType()) {
             case LISTE_UTILISATEURS:
+                // Le serveur a accepté la session
+                tentativesReconnexion = 0;
+                sessionAcceptee = true;
                 // Traiter la liste des utilisateurs
                 String[] noms = message.getContenu().split(",");
                 List<String> listeUtilisateurs = new ArrayList<>();
@@ -112,9 +362,75 @@ public class Client {
                         listeUtilisateurs.add(nom);
                     }
                 }
+                versionPresence = message.getVersionPresence();
                 notifierChangementUtilisateurs(listeUtilisateurs);
                 break;
 
+            case UTILISATEUR_REJOINT:
+            case UTILISATEUR_PARTI:
+                // Les deltas déjà inclus dans la liste complète sont ignorés
+                if (message.getVersionPresence() > versionPresence) {
+                    versionPresence = message.getVersionPresence();
+                    notifierChangementPresence(message);
+                }
+                break;
+
+            case VERSION:
+                // Le serveur accepte un format plus récent pour nos envois
+                try {
+                    versionProtocole = Integer.parseInt(message.getContenu());
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "Version de protocole invalide: {0}", message.getContenu());
+                }
+                if (versionProtocole >= CodecMessage.VERSION_BATTEMENT) {
+                    demarrerBattements();
+                }
+                break;
+
+            case REPRISE:
+                // Jeton qui seul permettra de reprendre cette session après une coupure
+                jetonReprise = message.getContenu();
+                break;
+
+            case ERREUR:
+                if (!sessionAcceptee) {
+                    // Nom refusé : se reconnecter ne ferait que se faire refuser à nouveau
+                    sessionRefusee = true;
+                    jetonReprise = null;
+                }
+                notifierNouveauMessage(message);
+                break;
+
+            case PONG:
+                try {
+                    allerRetourMicros = (System.nanoTime() - Long.parseLong(message.getContenu())) / 1000;
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "Battement invalide: {0}", message.getContenu());
+                }
+                break;
+
+            case LIMITE:
+                // Envois trop rapides : le serveur ne nous lit plus pendant la pause
+                try {
+                    notifierLimite(Long.parseLong(message.getContenu()));
+                } catch (NumberFormatException e) {
+                    LOGGER.log(Level.WARNING, "Durée de limite invalide: {0}", message.getContenu());
+                }
+                break;
+
+            case REJOINDRE_SALON:
+            case QUITTER_SALON:
+                // Confirmation de nos propres changements : salons à redemander lors d'une reprise
+                if (nomUtilisateur.equals(message.getExpediteur())) {
+                    if (message.getType() == Message.TypeMessage.REJOINDRE_SALON) {
+                        salonsRejoints.add(message.getSalon());
+                    } else {
+                        salonsRejoints.remove(message.getSalon());
+                    }
+                }
+                notifierNouveauMessage(message);
+                break;
+
             default:
                 // Pour les messages normaux, notifier les observateurs
                 notifierNouveauMessage(message);
@@ -126,51 +442,263 @@ public class Client {
      * Envoie un message au serveur
      */
     public void envoyerMessage(Message message) {
+        envoyerMessage(message, versionProtocole);
+    }
+
+    private void envoyerMessage(Message message, int version) {
         if (!isConnected) return;
 
         try {
-            out.writeObject(message);
-            out.flush();
+            synchronized (out) {
+                out.write(CodecMessage.encoder(message, version));
+                if (delaiRegroupementMicros == 0) {
+                    out.flush();
+                } else if (!envoiProgramme) {
+                    // Les messages écrits d'ici l'échéance partiront dans le même envoi
+                    envoiProgramme = true;
+                    DataOutputStream flux = out;
+                    PLANIFICATEUR.schedule(() -> vider(flux), delaiRegroupementMicros, TimeUnit.MICROSECONDS);
+                }
+            }
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Erreur lors de l'envoi d'un message", e);
         }
     }
 
     /**
-     * Envoie un message texte au serveur
+     * Envoie les messages regroupés en attente dans le tampon
+     */
+    private void vider(DataOutputStream flux) {
+        synchronized (flux) {
+            envoiProgramme = false;
+            if (!isConnected) return;
+            try {
+                flux.flush();
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Erreur lors de l'envoi d'un message", e);
+            }
+        }
+    }
+
+    /**
+     * Règle le regroupement des envois : 0 envoie chaque message immédiatement,
+     * une valeur positive regroupe les messages écrits pendant ce délai
+     * (plus de débit, plus de latence)
+     */
+    public void setDelaiRegroupementMicros(long delaiRegroupementMicros) {
+        if (delaiRegroupementMicros < 0) {
+            throw new IllegalArgumentException("Le délai ne peut pas être négatif: " + delaiRegroupementMicros);
+        }
+        this.delaiRegroupementMicros = delaiRegroupementMicros;
+    }
+
+    /**
+     * Envoie un message texte au serveur, dans le salon par défaut
      */
     public void envoyerMessageTexte(String texte) {
+        envoyerMessageTexte(texte, Message.SALON_PAR_DEFAUT);
+    }
+
+    /**
+     * Envoie un message texte aux abonnés d'un salon
+     */
+    public void envoyerMessageTexte(String texte, String salon) {
         Message message = new Message(nomUtilisateur, texte, Message.TypeMessage.MESSAGE);
+        message.setSalon(salon);
+        echantillonner(message);
         envoyerMessage(message);
     }
 
+    /**
+     * Trace un message sur N ; les anciens serveurs ne transmettraient pas les marques
+     */
+    private void echantillonner(Message message) {
+        int unSur = traceUnSur;
+        if (unSur > 0 && versionProtocole >= CodecMessage.VERSION_BINAIRE
+                && ThreadLocalRandom.current().nextInt(unSur) == 0) {
+            message.demarrerTrace();
+        }
+    }
+
+    /**
+     * Règle l'échantillonnage des traces : un message texte sur N, 0 pour aucun
+     */
+    public void setTraceUnSur(int traceUnSur) {
+        if (traceUnSur < 0) {
+            throw new IllegalArgumentException("La fréquence de trace ne peut pas être négative: " + traceUnSur);
+        }
+        this.traceUnSur = traceUnSur;
+    }
+
+    /**
+     * Durées par étape des messages tracés reçus, créées au premier besoin
+     */
+    public StatistiquesTrace getStatistiquesTrace() {
+        StatistiquesTrace statistiques = statistiquesTrace;
+        if (statistiques == null) {
+            synchronized (this) {
+                statistiques = statistiquesTrace;
+                if (statistiques == null) {
+                    statistiques = new StatistiquesTrace();
+                    statistiquesTrace = statistiques;
+                }
+            }
+        }
+        return statistiques;
+    }
+
+    /**
+     * Partage les mêmes statistiques entre plusieurs clients, par exemple ceux d'un générateur de charge
+     */
+    public void setStatistiquesTrace(StatistiquesTrace statistiquesTrace) {
+        if (statistiquesTrace == null) {
+            throw new IllegalArgumentException("Les statistiques de trace sont obligatoires");
+        }
+        this.statistiquesTrace = statistiquesTrace;
+    }
+
+    /**
+     * Envoie un message privé à un seul utilisateur.
+     * Retourne false si le serveur ne gère pas les messages directs.
+     */
+    public boolean envoyerMessagePrive(String destinataire, String texte) {
+        if (versionProtocole < Message.TypeMessage.DIRECT.getVersionMinimale()) return false;
+
+        Message message = new Message(nomUtilisateur, texte, Message.TypeMessage.DIRECT);
+        message.setDestinataire(destinataire);
+        envoyerMessage(message);
+        return true;
+    }
+
+    /**
+     * Demande l'abonnement à un salon, créé s'il n'existe pas.
+     * Retourne false si le serveur ne gère pas les salons.
+     */
+    public boolean rejoindreSalon(String salon) {
+        return envoyerChangementSalon(salon, "a rejoint le salon", Message.TypeMessage.REJOINDRE_SALON);
+    }
+
+    /**
+     * Quitte un salon
+     */
+    public boolean quitterSalon(String salon) {
+        return envoyerChangementSalon(salon, "a quitté le salon", Message.TypeMessage.QUITTER_SALON);
+    }
+
+    private boolean envoyerChangementSalon(String salon, String texte, Message.TypeMessage type) {
+        // Un serveur de version 1 ne saurait pas décoder ce type
+        if (versionProtocole < type.getVersionMinimale()) return false;
+
+        Message message = new Message(nomUtilisateur, texte, type);
+        message.setSalon(salon);
+        envoyerMessage(message);
+        return true;
+    }
+
     /**
      * Déconnecte le client du serveur
      */
     public void deconnecter() {
-        if (!isConnected) return;
+        synchronized (verrouSession) {
+            Thread reconnexion = threadReconnexion;
+            if (reconnexion != null) {
+                // Abandonne les tentatives de reconnexion en cours
+                threadReconnexion = null;
+                tentativesReconnexion = 0;
+                reconnexion.interrupt();
+            } else if (!isConnected) {
+                return;
+            }
 
-        try {
-            // Envoyer un message de déconnexion
-            Message messageDeconnexion = new Message(
-                    nomUtilisateur,
-                    "a quitté le chat",
-                    Message.TypeMessage.DECONNEXION);
-            envoyerMessage(messageDeconnexion);
+            if (isConnected) {
+                arreterBattements();
+                // Envoyer un message de déconnexion
+                Message messageDeconnexion = new Message(
+                        nomUtilisateur,
+                        "a quitté le chat",
+                        Message.TypeMessage.DECONNEXION);
+                envoyerMessage(messageDeconnexion);
+
+                isConnected = false;
+
+                // Fermer les flux et le socket
+                fermerFlux();
+            }
+        }
 
-            isConnected = false;
+        // Notifier les observateurs
+        notifierChangementConnexion(false);
+    }
 
-            // Fermer les flux et le socket
-            if (in != null) in.close();
-            if (out != null) out.close();
-            if (socket != null) socket.close();
+    /**
+     * Active ou non la reconnexion automatique après une coupure (activée par défaut) ;
+     * désactivée, une coupure déconnecte le client
+     */
+    public void setReconnexionAutomatique(boolean reconnexionAutomatique) {
+        this.reconnexionAutomatique = reconnexionAutomatique;
+    }
 
-            // Notifier les observateurs
-            notifierChangementConnexion(false);
+    /**
+     * Vérifie si le client tente de rétablir une connexion perdue
+     */
+    public boolean estEnReconnexion() {
+        synchronized (verrouSession) {
+            return threadReconnexion != null;
+        }
+    }
 
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Erreur lors de la déconnexion", e);
+    /**
+     * Envoie un battement à intervalle régulier, tant que la connexion est ouverte
+     */
+    private void demarrerBattements() {
+        long intervalle = intervalleBattementMs;
+        if (intervalle <= 0 || battements != null) return;
+
+        // Le planificateur est partagé : un envoi bloqué ne doit pas retarder les autres clients
+        battements = PLANIFICATEUR.scheduleAtFixedRate(() -> Thread.startVirtualThread(this::battre),
+                intervalle, intervalle, TimeUnit.MILLISECONDS);
+    }
+
+    private void arreterBattements() {
+        ScheduledFuture<?> actuels = battements;
+        if (actuels != null) {
+            actuels.cancel(false);
+            battements = null;
+        }
+    }
+
+    /**
+     * Envoie un PING, ou déconnecte si le serveur n'a rien envoyé depuis plusieurs battements
+     * (le serveur répond à chaque PING : un silence aussi long signale une connexion morte)
+     */
+    private void battre() {
+        if (!isConnected) return;
+
+        long silenceMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - derniereReception);
+        if (silenceMs > BATTEMENTS_MANQUES_MAX * intervalleBattementMs) {
+            LOGGER.log(Level.INFO, "Aucune réponse du serveur depuis {0} ms", silenceMs);
+            connexionPerdue(socket);
+            return;
+        }
+        envoyerMessage(new Message(nomUtilisateur, String.valueOf(System.nanoTime()), Message.TypeMessage.PING));
+    }
+
+    /**
+     * Règle l'intervalle des battements, pris en compte à la prochaine connexion ; 0 n'en envoie aucun.
+     * Il doit rester nettement inférieur au délai d'inactivité du serveur.
+     */
+    public void setIntervalleBattementMs(long intervalleBattementMs) {
+        if (intervalleBattementMs < 0) {
+            throw new IllegalArgumentException("L'intervalle ne peut pas être négatif: " + intervalleBattementMs);
         }
+        this.intervalleBattementMs = intervalleBattementMs;
+    }
+
+    /**
+     * Dernier aller-retour mesuré par un battement, en microsecondes (-1 avant le premier)
+     */
+    public long getAllerRetourMicros() {
+        return allerRetourMicros;
     }
 
     /**
@@ -194,6 +722,14 @@ public class Client {
         observateursUtilisateurs.add(observateur);
     }
 
+    /**
+     * Ajoute un observateur pour les arrivées et départs d'utilisateurs
+     * (messages UTILISATEUR_REJOINT et UTILISATEUR_PARTI, nom dans le contenu)
+     */
+    public void ajouterObservateurPresence(Consumer<Message> observateur) {
+        observateursPresence.add(observateur);
+    }
+
     /**
      * Ajoute un observateur pour les changements d'état de connexion
      */
@@ -201,6 +737,23 @@ public class Client {
         observateursConnexion.add(observateur);
     }
 
+    /**
+     * Ajoute un observateur prévenu lorsque le serveur suspend la lecture de nos messages
+     * (durée de la pause en millisecondes)
+     */
+    public void ajouterObservateurLimite(Consumer<Long> observateur) {
+        observateursLimite.add(observateur);
+    }
+
+    /**
+     * Ajoute un observateur prévenu à chaque tentative de reconnexion après une coupure
+     * (numéro de la tentative) ; l'observateur de connexion reçoit ensuite true en cas de succès,
+     * false si les tentatives sont abandonnées
+     */
+    public void ajouterObservateurReconnexion(Consumer<Integer> observateur) {
+        observateursReconnexion.add(observateur);
+    }
+
     /**
      * Notifie les observateurs d'un nouveau message
      */
@@ -219,6 +772,15 @@ public class Client {
         }
     }
 
+    /**
+     * Notifie les observateurs d'une arrivée ou d'un départ
+     */
+    private void notifierChangementPresence(Message changement) {
+        for (Consumer<Message> observateur : observateursPresence) {
+            observateur.accept(changement);
+        }
+    }
+
     /**
      * Notifie les observateurs d'un changement d'état de connexion
      */
@@ -228,6 +790,24 @@ public class Client {
         }
     }
 
+    /**
+     * Notifie les observateurs d'une suspension de lecture par le serveur
+     */
+    private void notifierLimite(long pauseMs) {
+        for (Consumer<Long> observateur : observateursLimite) {
+            observateur.accept(pauseMs);
+        }
+    }
+
+    /**
+     * Notifie les observateurs d'une tentative de reconnexion
+     */
+    private void notifierReconnexion(int tentative) {
+        for (Consumer<Integer> observateur : observateursReconnexion) {
+            observateur.accept(tentative);
+        }
+    }
+
     public String getNomUtilisateur() {
         return nomUtilisateur;
     }
@@ -1,9 +1,15 @@
 package com.chatapp.client;
 
+import com.chatapp.model.EtapeTrace;
 import com.chatapp.model.Message;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javafx.animation.AnimationTimer;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
@@ -12,34 +18,68 @@ import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.skin.VirtualFlow;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.paint.Color;
+import javafx.util.Duration;
 
 /**
  * Contrôleur de l'interface utilisateur du client
  */
 public class ClientController implements Initializable {
 
+    private static final String COMMANDE_STRESS = "/stress";
+    private static final String COMMANDE_TRACES = "/traces";
+    // Nombre de lignes gardées en mémoire, réglable par -Dchatapp.lignesEnMemoire=N
+    private static final int LIGNES_EN_MEMOIRE = Integer.getInteger("chatapp.lignesEnMemoire", 2000);
+
     @FXML private TextField txtNom;
     @FXML private TextField txtServeur;
     @FXML private TextField txtPort;
     @FXML private Button btnConnecter;
     @FXML private Button btnDeconnecter;
-    @FXML private ListView<String> lstMessages;
+    @FXML private ListView<LigneMessage> lstMessages;
     @FXML private ListView<String> lstUtilisateurs;
     @FXML private TextArea txtMessage;
     @FXML private Button btnEnvoyer;
+    @FXML private ComboBox<String> cmbSalon;
+    @FXML private Button btnQuitterSalon;
     @FXML private Label lblStatut;
 
     private Client client;
-    private final ObservableList<String> messages = FXCollections.observableArrayList();
+    private final ModeleMessages modeleMessages = new ModeleMessages(LIGNES_EN_MEMOIRE);
     private final ObservableList<String> utilisateurs = FXCollections.observableArrayList();
     private final BooleanProperty connecte = new SimpleBooleanProperty(false);
+    // Connexion perdue, le client tente de la rétablir
+    private final BooleanProperty enReconnexion = new SimpleBooleanProperty(false);
+
+    // Lignes reçues par le thread de lecture, affichées à la prochaine impulsion
+    private final Queue<LigneEnAttente> lignesEnAttente = new ConcurrentLinkedQueue<>();
+    private final List<LigneMessage> lot = new ArrayList<>();
+    private final List<Message> tracesDuLot = new ArrayList<>();
+    private VirtualFlow<?> fluxMessages;
+
+    // Mesure du mode stress (thread JavaFX uniquement)
+    private int stressRestant = 0;
+    private int stressTotal = 0;
+    private long stressDebut;
+    private long stressLatenceMax;
+    private int stressImpulsions;
+
+    // Une seule insertion et un seul défilement par impulsion, quel que soit le débit reçu
+    private final AnimationTimer rendu = new AnimationTimer() {
+        @Override
+        public void handle(long maintenant) {
+            afficherLignesEnAttente();
+        }
+    };
 
     /**
      * Initialise le contrôleur
@@ -47,13 +87,31 @@ public class ClientController implements Initializable {
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         // Initialiser les listes
-        lstMessages.setItems(messages);
+        lstMessages.setItems(modeleMessages.getLignes());
+        // Seules les cellules visibles mettent leur ligne en forme
+        lstMessages.setCellFactory(liste -> new ListCell<>() {
+            @Override
+            protected void updateItem(LigneMessage ligne, boolean vide) {
+                super.updateItem(ligne, vide);
+                setText(vide || ligne == null ? null : ligne.texte());
+            }
+        });
         lstUtilisateurs.setItems(utilisateurs);
 
         // Configurer l'état initial de l'interface
-        btnDeconnecter.disableProperty().bind(connecte.not());
+        // Pendant une reconnexion, Déconnecter abandonne les tentatives
+        btnDeconnecter.disableProperty().bind(connecte.not().and(enReconnexion.not()));
         btnEnvoyer.disableProperty().bind(connecte.not());
         txtMessage.disableProperty().bind(connecte.not());
+        cmbSalon.disableProperty().bind(connecte.not());
+        btnQuitterSalon.disableProperty().bind(connecte.not()
+                .or(cmbSalon.valueProperty().isEqualTo(Message.SALON_PAR_DEFAUT)));
+
+        // Le salon par défaut est toujours présent
+        cmbSalon.getItems().setAll(Message.SALON_PAR_DEFAUT);
+        cmbSalon.setValue(Message.SALON_PAR_DEFAUT);
+
+        rendu.start();
 
         // Par défaut
         txtServeur.setText("localhost");
@@ -93,7 +151,10 @@ public class ClientController implements Initializable {
             // Ajouter les observateurs
             client.ajouterObservateurMessages(this::afficherMessage);
             client.ajouterObservateurUtilisateurs(this::mettreAJourUtilisateurs);
+            client.ajouterObservateurPresence(this::mettreAJourUtilisateurs);
             client.ajouterObservateurConnexion(this::mettreAJourStatutConnexion);
+            client.ajouterObservateurLimite(this::signalerLimite);
+            client.ajouterObservateurReconnexion(this::signalerReconnexion);
 
             // Connecter
             boolean succes = client.connecter();
@@ -127,7 +188,7 @@ public class ClientController implements Initializable {
      * Déconnecte le client
      */
     public void deconnecter() {
-        if (client != null && client.estConnecte()) {
+        if (client != null) {
             client.deconnecter();
         }
     }
@@ -141,47 +202,297 @@ public class ClientController implements Initializable {
     }
 
     /**
-     * Envoie le message saisi
+     * Rejoint le salon choisi ou saisi dans la liste des salons
+     */
+    @FXML
+    private void handleChangerSalon() {
+        String salon = cmbSalon.getValue() == null ? "" : cmbSalon.getValue().trim();
+        if (salon.isEmpty() || client == null || !client.estConnecte()) return;
+        if (cmbSalon.getItems().contains(salon)) return;
+
+        if (client.rejoindreSalon(salon)) {
+            cmbSalon.getItems().add(salon);
+            cmbSalon.setValue(salon);
+        } else {
+            ajouterMessage("Système", "Le serveur ne gère pas les salons");
+            cmbSalon.setValue(Message.SALON_PAR_DEFAUT);
+        }
+    }
+
+    /**
+     * Quitte le salon sélectionné et revient au salon par défaut
+     */
+    @FXML
+    private void handleQuitterSalon() {
+        String salon = cmbSalon.getValue();
+        if (salon == null || Message.SALON_PAR_DEFAUT.equals(salon) || client == null) return;
+
+        client.quitterSalon(salon);
+        cmbSalon.getItems().remove(salon);
+        cmbSalon.setValue(Message.SALON_PAR_DEFAUT);
+    }
+
+    /**
+     * Envoie le message saisi dans le salon sélectionné,
+     * ou en privé s'il commence par "@nom "
      */
     private void envoyerMessage() {
         String texte = txtMessage.getText().trim();
-        if (!texte.isEmpty() && client != null && client.estConnecte()) {
-            client.envoyerMessageTexte(texte);
+        if (texte.startsWith(COMMANDE_STRESS + " ")) {
+            lancerStress(texte.substring(COMMANDE_STRESS.length()).trim());
             txtMessage.clear();
+            return;
+        }
+        if (texte.equals(COMMANDE_TRACES)) {
+            afficherTraces();
+            txtMessage.clear();
+            return;
+        }
+        if (texte.isEmpty() || client == null || !client.estConnecte()) return;
+
+        if (texte.startsWith("@")) {
+            int espace = texte.indexOf(' ');
+            if (espace < 2 || texte.substring(espace + 1).isBlank()) {
+                ajouterMessage("Système", "Message privé : @nom texte");
+                return;
+            }
+            if (!client.envoyerMessagePrive(texte.substring(1, espace), texte.substring(espace + 1).trim())) {
+                ajouterMessage("Système", "Le serveur ne gère pas les messages privés");
+                return;
+            }
+        } else {
+            client.envoyerMessageTexte(texte, cmbSalon.getValue());
         }
+        txtMessage.clear();
     }
 
     /**
-     * Affiche un nouveau message dans la liste
+     * Affiche un nouveau message dans la liste, à la prochaine impulsion d'affichage
      */
     private void afficherMessage(Message message) {
-        Platform.runLater(() -> {
-            messages.add(message.toString());
-            lstMessages.scrollTo(messages.size() - 1);
-        });
+        lignesEnAttente.add(new LigneEnAttente(LigneMessage.depuis(message), System.nanoTime(),
+                message.estTrace() ? message : null));
     }
 
     /**
      * Ajoute un message système dans la liste
      */
     private void ajouterMessage(String auteur, String contenu) {
-        Platform.runLater(() -> {
-            messages.add(String.format("[%s] %s: %s",
-                    java.time.LocalTime.now().format(
-                            java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss")),
-                    auteur,
-                    contenu));
-            lstMessages.scrollTo(messages.size() - 1);
-        });
+        lignesEnAttente.add(new LigneEnAttente(LigneMessage.systeme(auteur, contenu), System.nanoTime(), null));
+    }
+
+    /**
+     * Ajoute d'un bloc les lignes arrivées depuis la dernière impulsion,
+     * et relit une page si l'utilisateur a atteint le haut ou le bas de la fenêtre en mémoire
+     */
+    private void afficherLignesEnAttente() {
+        chargerPageSiNecessaire();
+
+        long maintenant = System.nanoTime();
+        long latenceMax = 0;
+        LigneEnAttente ligne;
+        while ((ligne = lignesEnAttente.poll()) != null) {
+            lot.add(ligne.ligne());
+            if (ligne.trace() != null) {
+                tracesDuLot.add(ligne.trace());
+            }
+            latenceMax = Math.max(latenceMax, maintenant - ligne.deposee());
+        }
+        if (lot.isEmpty()) return;
+
+        int nombre = lot.size();
+        // Ne suivre les nouveaux messages que si l'utilisateur ne consulte pas l'historique
+        boolean enBas = estEnBas();
+        int premiere = premiereLigneVisible();
+        int retirees = modeleMessages.ajouter(lot, enBas);
+        lot.clear();
+        if (enBas) {
+            lstMessages.scrollTo(modeleMessages.getLignes().size() - 1);
+        } else {
+            decalerVue(premiere, retirees);
+        }
+        marquerAffichage();
+
+        if (stressRestant > 0) {
+            mesurerStress(nombre, latenceMax);
+        }
+    }
+
+    /**
+     * Termine la trace des messages échantillonnés du lot qui vient d'être inséré
+     */
+    private void marquerAffichage() {
+        if (tracesDuLot.isEmpty()) return;
+
+        if (client != null) {
+            for (Message message : tracesDuLot) {
+                message.marquer(EtapeTrace.AFFICHAGE);
+                client.getStatistiquesTrace().enregistrer(message, EtapeTrace.AFFICHAGE, EtapeTrace.AFFICHAGE);
+            }
+        }
+        tracesDuLot.clear();
+    }
+
+    /**
+     * Affiche les durées par étape des messages tracés reçus : "/traces"
+     */
+    private void afficherTraces() {
+        if (client == null) {
+            ajouterMessage("Système", "Traces : aucune connexion");
+            return;
+        }
+        ajouterMessage("Système", "Traces : " + client.getStatistiquesTrace().resumer());
+    }
+
+    private void chargerPageSiNecessaire() {
+        VirtualFlow<?> flux = getFluxMessages();
+        if (flux == null || flux.getFirstVisibleCell() == null || flux.getLastVisibleCell() == null) return;
+
+        if (flux.getFirstVisibleCell().getIndex() == 0 && modeleMessages.aDesLignesPrecedentes()) {
+            int ajoutees = modeleMessages.chargerPagePrecedente();
+            // Garder en haut de la vue la ligne qui y était
+            lstMessages.scrollTo(ajoutees);
+        } else if (flux.getLastVisibleCell().getIndex() >= modeleMessages.getLignes().size() - 1
+                && modeleMessages.aDesLignesSuivantes()) {
+            int premiere = flux.getFirstVisibleCell().getIndex();
+            decalerVue(premiere, modeleMessages.chargerPageSuivante());
+        }
+    }
+
+    /**
+     * Garde en haut de la vue la ligne qui y était après le retrait de lignes en tête
+     */
+    private void decalerVue(int premiere, int retirees) {
+        if (retirees == 0 || premiere < 0) return;
+        lstMessages.scrollTo(Math.max(0, premiere - retirees));
+    }
+
+    /**
+     * Indice de la première ligne visible, lu avant de modifier la liste (-1 si inconnu)
+     */
+    private int premiereLigneVisible() {
+        VirtualFlow<?> flux = getFluxMessages();
+        if (flux == null || flux.getFirstVisibleCell() == null) return -1;
+        return flux.getFirstVisibleCell().getIndex();
+    }
+
+    private boolean estEnBas() {
+        VirtualFlow<?> flux = getFluxMessages();
+        if (flux == null || flux.getLastVisibleCell() == null) return true;
+        return flux.getLastVisibleCell().getIndex() >= modeleMessages.getLignes().size() - 1
+                && !modeleMessages.aDesLignesSuivantes();
+    }
+
+    /**
+     * Conteneur virtualisé de la liste, disponible une fois celle-ci affichée
+     */
+    private VirtualFlow<?> getFluxMessages() {
+        if (fluxMessages == null) {
+            fluxMessages = (VirtualFlow<?>) lstMessages.lookup(".virtual-flow");
+        }
+        return fluxMessages;
+    }
+
+    /**
+     * Simule une rafale de messages reçus pour vérifier que l'affichage suit :
+     * "/stress N" injecte N messages depuis un autre thread, aussi vite que possible
+     */
+    private void lancerStress(String argument) {
+        int nombre;
+        try {
+            nombre = Integer.parseInt(argument);
+        } catch (NumberFormatException e) {
+            nombre = 0;
+        }
+        if (nombre <= 0 || stressRestant > 0) {
+            ajouterMessage("Système", "Usage : " + COMMANDE_STRESS + " N (un seul à la fois)");
+            return;
+        }
+
+        stressRestant = nombre;
+        stressTotal = nombre;
+        stressDebut = System.nanoTime();
+        stressLatenceMax = 0;
+        stressImpulsions = 0;
+
+        int total = nombre;
+        Thread generateur = new Thread(() -> {
+            for (int i = 0; i < total; i++) {
+                afficherMessage(new Message("stress", "message " + i, Message.TypeMessage.MESSAGE));
+            }
+        }, "stress-affichage");
+        generateur.setDaemon(true);
+        generateur.start();
+    }
+
+    private void mesurerStress(int lignesAffichees, long latenceMax) {
+        stressImpulsions++;
+        stressLatenceMax = Math.max(stressLatenceMax, latenceMax);
+        stressRestant -= lignesAffichees;
+        if (stressRestant > 0) return;
+
+        stressRestant = 0;
+        ajouterMessage("Système", String.format(
+                "Stress : %d messages affichés en %d ms, %d impulsions, latence d'affichage max %.1f ms",
+                stressTotal,
+                (System.nanoTime() - stressDebut) / 1_000_000,
+                stressImpulsions,
+                stressLatenceMax / 1_000_000.0));
     }
 
     /**
      * Met à jour la liste des utilisateurs connectés
      */
     private void mettreAJourUtilisateurs(List<String> listeUtilisateurs) {
+        Platform.runLater(() -> utilisateurs.setAll(listeUtilisateurs));
+    }
+
+    /**
+     * Applique une arrivée ou un départ à la liste des utilisateurs, sans la reconstruire
+     */
+    private void mettreAJourUtilisateurs(Message changement) {
         Platform.runLater(() -> {
-            utilisateurs.clear();
-            utilisateurs.addAll(listeUtilisateurs);
+            if (changement.getType() == Message.TypeMessage.UTILISATEUR_REJOINT) {
+                utilisateurs.add(changement.getContenu());
+            } else {
+                utilisateurs.remove(changement.getContenu());
+            }
+        });
+    }
+
+    /**
+     * Signale que le serveur ne lit plus nos messages pendant la pause indiquée
+     */
+    private void signalerLimite(long pauseMs) {
+        ajouterMessage("Système", "Messages envoyés trop vite : le serveur les reprend dans " + pauseMs + " ms");
+        Platform.runLater(() -> {
+            if (!connecte.get()) return;
+            lblStatut.setText("Débit limité");
+            lblStatut.setTextFill(Color.ORANGE);
+
+            PauseTransition fin = new PauseTransition(Duration.millis(pauseMs));
+            fin.setOnFinished(event -> {
+                if (connecte.get()) {
+                    lblStatut.setText("Connecté");
+                    lblStatut.setTextFill(Color.GREEN);
+                }
+            });
+            fin.play();
+        });
+    }
+
+    /**
+     * Signale que la connexion est perdue et que le client tente de la rétablir
+     */
+    private void signalerReconnexion(int tentative) {
+        if (tentative == 1) {
+            ajouterMessage("Système", "Connexion perdue, reconnexion en cours");
+        }
+        Platform.runLater(() -> {
+            connecte.set(false);
+            enReconnexion.set(true);
+            lblStatut.setText("Reconnexion… (tentative " + tentative + ")");
+            lblStatut.setTextFill(Color.ORANGE);
         });
     }
 
@@ -191,6 +502,7 @@ public class ClientController implements Initializable {
     private void mettreAJourStatutConnexion(boolean estConnecte) {
         Platform.runLater(() -> {
             connecte.set(estConnecte);
+            enReconnexion.set(false);
 
             if (estConnecte) {
                 lblStatut.setText("Connecté");
@@ -207,6 +519,10 @@ public class ClientController implements Initializable {
 
                 // Vider la liste des utilisateurs
                 utilisateurs.clear();
+
+                // Les abonnements ne survivent pas à la déconnexion
+                cmbSalon.getItems().setAll(Message.SALON_PAR_DEFAUT);
+                cmbSalon.setValue(Message.SALON_PAR_DEFAUT);
             }
         });
     }
@@ -217,4 +533,11 @@ public class ClientController implements Initializable {
     public boolean estConnecte() {
         return client != null && client.estConnecte();
     }
-}
\ No newline at end of file
+
+    /**
+     * Ligne reçue en attente d'affichage, avec l'instant de sa réception
+     * et le message s'il est tracé
+     */
+    private record LigneEnAttente(LigneMessage ligne, long deposee, Message trace) {
+    }
+}
@@ -0,0 +1,322 @@
+package com.chatapp.client;
+
+import com.chatapp.model.Histogramme;
+import com.chatapp.model.StatistiquesTrace;
+import com.chatapp.model.Message;
+import com.chatapp.server.ConfigurationServeur;
+import com.chatapp.server.ModeServeur;
+import com.chatapp.server.RapportRessources;
+import com.chatapp.server.Server;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Générateur de charge : simule des utilisateurs sans interface graphique, chacun avec son {@link Client},
+ * et mesure la latence entre l'envoi d'un message et sa réception par chaque abonné du salon.
+ * <pre>java com.chatapp.client.GenerateurCharge NIO 2000 1 100 30 10 9000</pre>
+ * Arguments, tous facultatifs : mode du serveur local (BLOQUANT, VIRTUEL, NIO, ou AUCUN pour viser
+ * un serveur déjà lancé), utilisateurs, messages par seconde et par utilisateur, taille des messages
+ * en octets, durée de la mesure en secondes, nombre de salons, port.
+ * Plusieurs ports séparés par des virgules ({@code 9000,9001,9002}) forment une fédération :
+ * un serveur local par port, les utilisateurs répartis entre eux.
+ * La mesure commence après {@value #ECHAUFFEMENT_MS} ms d'échauffement.
+ */
+public class GenerateurCharge {
+
+    private static final long ECHAUFFEMENT_MS = 5_000;
+    private static final int CONNEXIONS_SIMULTANEES = 100;
+    private static final long DELAI_BIENVENUE_S = 30;
+    private static final long LATENCE_MAX_NANOS = TimeUnit.MINUTES.toNanos(1);
+    // Une trace par connexion fausserait la montée en charge
+    private static final Logger LOGGER_APPLICATION = Logger.getLogger("com.chatapp");
+
+    // Décalage entre le port des clients d'un nœud et son port de fédération
+    private static final int DECALAGE_PORT_FEDERATION = 1000;
+
+    private final int[] ports;
+    private final int utilisateurs;
+    private final double debit;
+    private final int taille;
+    private final int salons;
+
+    // Distingue nos messages de ceux rejoués depuis l'historique du serveur
+    private final String prefixe = "charge-" + Long.toHexString(System.nanoTime()) + ":";
+    private final ThreadFactory fabriqueThreads = Thread.ofVirtual().name("charge-", 0).factory();
+    private final Queue<Utilisateur> connectes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger echecs = new AtomicInteger();
+    private final Histogramme latences = new Histogramme(LATENCE_MAX_NANOS);
+    private final LongAdder envoyes = new LongAdder();
+    private final LongAdder recus = new LongAdder();
+    // Partagées par tous les utilisateurs simulés
+    private final StatistiquesTrace traces = new StatistiquesTrace();
+    private volatile boolean enCours = true;
+
+    /** Utilisateur simulé et le salon où il écrit */
+    private record Utilisateur(Client client, String salon) {
+    }
+
+    public GenerateurCharge(int port, int utilisateurs, double debit, int taille, int salons) {
+        this(new int[]{port}, utilisateurs, debit, taille, salons);
+    }
+
+    /**
+     * Répartit les utilisateurs entre les nœuds écoutant sur les ports donnés
+     */
+    public GenerateurCharge(int[] ports, int utilisateurs, double debit, int taille, int salons) {
+        if (utilisateurs <= 0 || debit <= 0 || salons <= 0 || ports.length == 0) {
+            throw new IllegalArgumentException("Utilisateurs, débit, salons et ports doivent être positifs");
+        }
+        this.ports = ports.clone();
+        this.utilisateurs = utilisateurs;
+        this.debit = debit;
+        this.taille = taille;
+        this.salons = salons;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : ModeServeur.NIO.name();
+        int utilisateurs = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        double debit = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+        int taille = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        int dureeS = args.length > 4 ? Integer.parseInt(args[4]) : 30;
+        int salons = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+        int[] ports = Arrays.stream((args.length > 6 ? args[6] : "9000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        LOGGER_APPLICATION.setLevel(Level.WARNING);
+
+        List<Server> serveurs = new ArrayList<>();
+        if (!mode.equals("AUCUN")) {
+            for (int i = 0; i < ports.length; i++) {
+                Server server = new Server(ports[i], ModeServeur.valueOf(mode), configurerNoeud(ports, i));
+                server.demarrer();
+                serveurs.add(server);
+            }
+            if (ports.length > 1) {
+                attendreFederation(serveurs);
+            }
+        }
+
+        GenerateurCharge generateur = new GenerateurCharge(ports, utilisateurs, debit, taille, salons);
+        long monteeMs = generateur.connecter();
+        generateur.demarrerEnvois();
+        Thread.sleep(ECHAUFFEMENT_MS);
+        generateur.reinitialiserMesures();
+        long debut = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(dureeS));
+        double dureeMesure = (System.nanoTime() - debut) / 1e9;
+
+        System.out.printf("mode=%s nœuds=%d utilisateurs=%d salons=%d débit=%s msg/s taille=%d o%n",
+                mode, ports.length, utilisateurs, salons, debit, taille);
+        System.out.println("  " + generateur.resumer(monteeMs, dureeMesure));
+        if (!serveurs.isEmpty()) {
+            System.out.println("  serveur: " + RapportRessources.resumer());
+        }
+
+        generateur.arreter();
+        for (Server server : serveurs) {
+            server.arreter();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Configuration du i-ème nœud local, sans limite de débit pour que la charge demandée
+     * soit celle mesurée ; en fédération, il se relie aux nœuds précédents et a son propre historique
+     */
+    private static ConfigurationServeur configurerNoeud(int[] ports, int i) {
+        ConfigurationServeur configuration = new ConfigurationServeur();
+        configuration.setMessagesParSeconde(0);
+        configuration.setOctetsParSeconde(0);
+        if (ports.length == 1) return configuration;
+
+        configuration.setRepertoireHistorique(
+                Path.of(System.getProperty("java.io.tmpdir"), "chatapp-historique", String.valueOf(ports[i])));
+        configuration.setPortFederation(ports[i] + DECALAGE_PORT_FEDERATION);
+        List<InetSocketAddress> pairs = new ArrayList<>();
+        for (int j = 0; j < i; j++) {
+            pairs.add(new InetSocketAddress("localhost", ports[j] + DECALAGE_PORT_FEDERATION));
+        }
+        configuration.setPairs(pairs);
+        return configuration;
+    }
+
+    /**
+     * Attend que chaque nœud soit relié à tous les autres
+     */
+    private static void attendreFederation(List<Server> serveurs) throws InterruptedException {
+        long echeance = System.nanoTime() + TimeUnit.SECONDS.toNanos(DELAI_BIENVENUE_S);
+        for (Server server : serveurs) {
+            while (server.getFederation() != null && server.getFederation().getNombrePairs() < serveurs.size() - 1
+                    && System.nanoTime() < echeance) {
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    /**
+     * Connecte tous les utilisateurs et retourne la durée de la montée en charge en millisecondes :
+     * un utilisateur compte quand le serveur lui a envoyé la liste des présents
+     */
+    public long connecter() throws InterruptedException {
+        Semaphore places = new Semaphore(CONNEXIONS_SIMULTANEES);
+        CountDownLatch termines = new CountDownLatch(utilisateurs);
+        long debut = System.nanoTime();
+        for (int i = 0; i < utilisateurs; i++) {
+            int numero = i;
+            fabriqueThreads.newThread(() -> {
+                try {
+                    places.acquire();
+                    try {
+                        connecterUtilisateur(numero);
+                    } finally {
+                        places.release();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    termines.countDown();
+                }
+            }).start();
+        }
+        termines.await();
+        return (System.nanoTime() - debut) / 1_000_000;
+    }
+
+    private void connecterUtilisateur(int numero) throws InterruptedException {
+        String nom = "bot" + numero;
+        CountDownLatch bienvenue = new CountDownLatch(1);
+        Client client = new Client("localhost", ports[numero % ports.length], nom, fabriqueThreads);
+        client.setStatistiquesTrace(traces);
+        // Un utilisateur perdu compte comme perdu : la mesure ne doit pas inclure de reprises
+        client.setReconnexionAutomatique(false);
+        // Une liste envoyée avant le traitement de notre CONNEXION ne nous contient pas encore
+        client.ajouterObservateurUtilisateurs(liste -> {
+            if (liste.contains(nom)) bienvenue.countDown();
+        });
+        client.ajouterObservateurMessages(this::recevoir);
+
+        if (!client.connecter() || !bienvenue.await(DELAI_BIENVENUE_S, TimeUnit.SECONDS)) {
+            echecs.incrementAndGet();
+            client.deconnecter();
+            return;
+        }
+        String salon = Message.SALON_PAR_DEFAUT;
+        if (salons > 1) {
+            salon = "charge-" + numero % salons;
+            if (!client.rejoindreSalon(salon)) {
+                echecs.incrementAndGet();
+                client.deconnecter();
+                return;
+            }
+        }
+        connectes.add(new Utilisateur(client, salon));
+    }
+
+    /**
+     * Lance un thread d'envoi par utilisateur connecté
+     */
+    public void demarrerEnvois() {
+        for (Utilisateur utilisateur : connectes) {
+            fabriqueThreads.newThread(() -> envoyer(utilisateur.client(), utilisateur.salon())).start();
+        }
+    }
+
+    /**
+     * Envoie au débit demandé. Chaque message porte l'instant où il devait partir et non celui
+     * où il est parti : un envoi retardé par un serveur saturé compte dans la latence.
+     */
+    private void envoyer(Client client, String salon) {
+        long intervalle = (long) (1e9 / debit);
+        // Étaler les premiers envois pour ne pas synchroniser les utilisateurs
+        long prochain = System.nanoTime() + ThreadLocalRandom.current().nextLong(intervalle);
+        try {
+            while (enCours) {
+                long attente = prochain - System.nanoTime();
+                if (attente > 0) {
+                    Thread.sleep(Duration.ofNanos(attente));
+                }
+                client.envoyerMessageTexte(contenu(prochain), salon);
+                envoyes.increment();
+                prochain += intervalle;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String contenu(long instantEnvoi) {
+        StringBuilder contenu = new StringBuilder(Math.max(taille, 40)).append(prefixe).append(instantEnvoi).append(':');
+        while (contenu.length() < taille) {
+            contenu.append('x');
+        }
+        return contenu.toString();
+    }
+
+    private void recevoir(Message message) {
+        if (message.getType() != Message.TypeMessage.MESSAGE) return;
+
+        String contenu = message.getContenu();
+        if (!contenu.startsWith(prefixe)) return;
+
+        int fin = contenu.indexOf(':', prefixe.length());
+        long instantEnvoi = Long.parseLong(contenu, prefixe.length(), fin, 10);
+        latences.enregistrer(System.nanoTime() - instantEnvoi);
+        recus.increment();
+    }
+
+    /**
+     * Oublie les mesures de l'échauffement
+     */
+    public void reinitialiserMesures() {
+        latences.reinitialiser();
+        traces.reinitialiser();
+        envoyes.reset();
+        recus.reset();
+    }
+
+    /**
+     * Résume les mesures depuis la dernière réinitialisation
+     */
+    public String resumer(long monteeMs, double dureeS) {
+        long nombreEnvoyes = envoyes.sum();
+        long nombreRecus = recus.sum();
+        return String.format("montée en charge: %d connectés en %d ms (%d échecs)%n"
+                        + "  envoyés: %d (%.0f msg/s), reçus: %d (%.0f msg/s)%n"
+                        + "  latence (ms): p50=%.2f p99=%.2f p999=%.2f max=%.2f moyenne=%.2f%n"
+                        + "  étapes des messages tracés: %s",
+                connectes.size(), monteeMs, echecs.get(),
+                nombreEnvoyes, nombreEnvoyes / dureeS, nombreRecus, nombreRecus / dureeS,
+                enMillis(latences.valeurAuCentile(50)), enMillis(latences.valeurAuCentile(99)),
+                enMillis(latences.valeurAuCentile(99.9)), enMillis(latences.getMax()),
+                latences.getMoyenne() / 1e6, traces.resumer());
+    }
+
+    private static double enMillis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * Arrête les envois et déconnecte tous les utilisateurs
+     */
+    public void arreter() {
+        enCours = false;
+        for (Utilisateur utilisateur : connectes) {
+            utilisateur.client().deconnecter();
+        }
+    }
+}
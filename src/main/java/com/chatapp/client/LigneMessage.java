@@ -0,0 +1,42 @@
+package com.chatapp.client;
+
+import com.chatapp.model.FormatHeure;
+import com.chatapp.model.Message;
+
+/**
+ * Ligne de la liste des messages : les seuls champs affichés, sans mise en forme.
+ * Le texte n'est construit qu'au moment où la ligne devient visible.
+ */
+public record LigneMessage(long horodatageMillis, String expediteur, String contenu,
+                           String salon, String destinataire) {
+
+    /**
+     * Extrait d'un message reçu les champs à afficher
+     */
+    public static LigneMessage depuis(Message message) {
+        return new LigneMessage(message.getHorodatageMillis(), message.getExpediteur(), message.getContenu(),
+                message.estDansSalonParDefaut() ? null : message.getSalon(),
+                message.getDestinataire());
+    }
+
+    /**
+     * Ligne produite localement par le client
+     */
+    public static LigneMessage systeme(String auteur, String contenu) {
+        return new LigneMessage(System.currentTimeMillis(), auteur, contenu, null, null);
+    }
+
+    /**
+     * Texte affiché, dans le même format que {@link Message#toString()}
+     */
+    public String texte() {
+        String heure = FormatHeure.formater(horodatageMillis);
+        if (destinataire != null) {
+            return "[" + heure + "] " + expediteur + " → " + destinataire + ": " + contenu;
+        }
+        if (salon != null) {
+            return "[" + heure + "] #" + salon + " " + expediteur + ": " + contenu;
+        }
+        return "[" + heure + "] " + expediteur + ": " + contenu;
+    }
+}
@@ -0,0 +1,184 @@
+package com.chatapp.client;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Lignes de la liste des messages, bornées en mémoire.
+ * Au-delà de la capacité, les lignes sorties de la mémoire sont écrites dans un {@link CacheMessages}
+ * et relues page par page quand l'utilisateur parcourt la liste.
+ * Les lignes en mémoire forment une fenêtre sur l'ensemble des lignes reçues :
+ * celles de rang inférieur à la fenêtre sont toutes sur disque, de même que celles
+ * qui la suivent quand l'utilisateur consulte l'historique.
+ * À utiliser depuis le thread JavaFX uniquement.
+ */
+public class ModeleMessages {
+    private static final Logger LOGGER = Logger.getLogger(ModeleMessages.class.getName());
+
+    /** Nombre de lignes relues à chaque page, au plus la moitié de la capacité */
+    public static final int TAILLE_PAGE = 200;
+
+    private final ObservableList<LigneMessage> lignes = FXCollections.observableArrayList();
+    private final int capacite;
+    private final int taillePage;
+    private CacheMessages cache;
+    // Rang de la première ligne en mémoire parmi toutes les lignes reçues
+    private int premierRang = 0;
+    // Rang de la première ligne du cache ; les précédentes ont été perdues sur une erreur d'écriture
+    private int premierRangCache = 0;
+
+    public ModeleMessages(int capacite) {
+        if (capacite <= 0) {
+            throw new IllegalArgumentException("La capacité doit être positive: " + capacite);
+        }
+        this.capacite = capacite;
+        // Une page relue ne doit pas chasser de la mémoire les lignes affichées
+        this.taillePage = Math.min(TAILLE_PAGE, Math.max(1, capacite / 2));
+    }
+
+    public ObservableList<LigneMessage> getLignes() {
+        return lignes;
+    }
+
+    /**
+     * Ajoute des lignes à la fin et retourne le nombre de lignes retirées en tête,
+     * dont la vue doit tenir compte pour ne pas sauter. Si l'utilisateur consulte
+     * l'historique, la mémoire est réduite par la fin, loin des lignes qu'il lit.
+     */
+    public int ajouter(List<LigneMessage> nouvelles, boolean enBas) {
+        if (aDesLignesSuivantes()) {
+            // La fin de la liste n'est pas en mémoire : les nouvelles lignes la suivent sur disque
+            try {
+                cache.ajouter(nouvelles);
+                return 0;
+            } catch (IOException e) {
+                // Les lignes qui suivaient la fenêtre sont perdues
+                LOGGER.log(Level.WARNING, "Impossible d'écrire le cache des messages", e);
+                fermerCache();
+            }
+        }
+
+        lignes.addAll(nouvelles);
+        int enTrop = lignes.size() - capacite;
+        if (enTrop <= 0) return 0;
+        if (!enBas && retirerPlusRecentes(enTrop)) return 0;
+        retirerPlusAnciennes(enTrop);
+        return enTrop;
+    }
+
+    /**
+     * Sort de la mémoire les lignes les plus anciennes, en écrivant sur disque
+     * celles qui n'y sont pas encore
+     */
+    private void retirerPlusAnciennes(int nombre) {
+        // En cas d'échec, la mémoire reste bornée : ces lignes sont perdues
+        ecrireSurDisque(nombre);
+        lignes.remove(0, nombre);
+        premierRang += nombre;
+    }
+
+    /**
+     * Sort de la mémoire les lignes les plus récentes, après avoir écrit sur disque
+     * toute la fenêtre : le cache reste contigu. Retourne false si le cache est perdu.
+     */
+    private boolean retirerPlusRecentes(int nombre) {
+        if (!ecrireSurDisque(lignes.size())) return false;
+        lignes.remove(lignes.size() - nombre, lignes.size());
+        return true;
+    }
+
+    /**
+     * Écrit sur disque les lignes en mémoire d'indice inférieur à fin qui n'y sont pas encore.
+     * Retourne false si le cache est perdu.
+     */
+    private boolean ecrireSurDisque(int fin) {
+        try {
+            if (cache == null) {
+                cache = new CacheMessages();
+                premierRangCache = premierRang;
+            }
+            // Les lignes relues depuis le disque y sont déjà
+            int dejaSurDisque = Math.max(0, Math.min(fin, premierRangCache + cache.getNombre() - premierRang));
+            cache.ajouter(lignes.subList(dejaSurDisque, fin));
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Impossible d'écrire le cache des messages", e);
+            fermerCache();
+            return false;
+        }
+    }
+
+    /**
+     * Relit la page précédant la première ligne en mémoire
+     * et retourne le nombre de lignes ajoutées en tête
+     */
+    public int chargerPagePrecedente() {
+        if (!aDesLignesPrecedentes()) return 0;
+
+        int debut = Math.max(premierRangCache, premierRang - taillePage);
+        List<LigneMessage> page;
+        try {
+            page = cache.lire(debut - premierRangCache, premierRang - premierRangCache);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Impossible de relire le cache des messages", e);
+            return 0;
+        }
+        lignes.addAll(0, page);
+        premierRang = debut;
+        int enTrop = lignes.size() - capacite;
+        if (enTrop > 0) {
+            retirerPlusRecentes(enTrop);
+        }
+        return page.size();
+    }
+
+    /**
+     * Relit la page suivant la dernière ligne en mémoire
+     * et retourne le nombre de lignes retirées en tête
+     */
+    public int chargerPageSuivante() {
+        if (!aDesLignesSuivantes()) return 0;
+
+        int debut = premierRang + lignes.size();
+        int fin = Math.min(premierRangCache + cache.getNombre(), debut + taillePage);
+        try {
+            lignes.addAll(cache.lire(debut - premierRangCache, fin - premierRangCache));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Impossible de relire le cache des messages", e);
+            return 0;
+        }
+        int enTrop = lignes.size() - capacite;
+        if (enTrop <= 0) return 0;
+        // Déjà sur disque : rien n'est écrit
+        retirerPlusAnciennes(enTrop);
+        return enTrop;
+    }
+
+    /**
+     * Indique s'il reste des lignes plus anciennes sur disque
+     */
+    public boolean aDesLignesPrecedentes() {
+        return cache != null && premierRang > premierRangCache;
+    }
+
+    /**
+     * Indique si des lignes plus récentes que la fenêtre attendent sur disque
+     */
+    public boolean aDesLignesSuivantes() {
+        return cache != null && premierRang + lignes.size() < premierRangCache + cache.getNombre();
+    }
+
+    private void fermerCache() {
+        if (cache == null) return;
+        try {
+            cache.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Erreur lors de la fermeture du cache des messages", e);
+        }
+        cache = null;
+    }
+}
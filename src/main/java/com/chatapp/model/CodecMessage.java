@@ -0,0 +1,697 @@
+package com.chatapp.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodage et décodage des messages sous forme de trames.
+ * Chaque trame est composée d'un entête de 4 octets (longueur de la charge utile)
+ * suivi de la charge utile. Ce découpage permet au serveur NIO de reconstituer
+ * les messages à partir de lectures partielles.
+ *
+ * <p>Trois formats de charge utile coexistent :
+ * <ul>
+ *   <li>version 1 : sérialisation Java du {@link Message} (anciens clients)</li>
+ *   <li>version 2 : format binaire compact
+ *       {@code [marqueur][type][drapeaux][horodatage 8 octets][expéditeur][contenu][champs optionnels]},
+ *       chaque chaîne étant préfixée par sa longueur UTF-8 en varint ;
+ *       chaque bit de drapeau annonce un champ optionnel, dans l'ordre des bits ;
+ *       le dernier porte les marques des messages échantillonnés (voir {@link EtapeTrace})</li>
+ *   <li>version 3 : au-delà d'un seuil, la charge utile binaire compressée par Deflate
+ *       avec un dictionnaire prédéfini : {@code [marqueur][taille décompressée en varint][flux zlib]} ;
+ *       les messages plus courts restent au format binaire</li>
+ * </ul>
+ * Les versions 4 à 6 gardent le format de la version 3 : elles annoncent un client
+ * qui comprend les messages de limite de débit, puis qui envoie des battements,
+ * puis qui reprend sa session à la dernière séquence reçue après une reconnexion.
+ * Le format est reconnu au premier octet de la charge utile ; seul l'encodage
+ * dépend de la version négociée lors de la CONNEXION.
+ *
+ * <p>Les clients d'avant le découpage en trames écrivent un flux ObjectOutputStream brut,
+ * reconnu à son entête {@link #ENTETE_FLUX_OBJETS} à la place de la première longueur ;
+ * le serveur leur répond par un flux brut construit à partir des trames de version 1.
+ */
+public final class CodecMessage {
+
+    /** Taille de l'entête contenant la longueur de la charge utile */
+    public static final int TAILLE_ENTETE = 4;
+
+    /** Taille maximale acceptée pour la charge utile d'une trame */
+    public static final int TAILLE_MAX_CHARGE = 1 << 20;
+
+    /** Charge utile sérialisée par ObjectOutputStream */
+    public static final int VERSION_SERIALISEE = 1;
+
+    /** Charge utile au format binaire compact */
+    public static final int VERSION_BINAIRE = 2;
+
+    /** Charge utile binaire, compressée quand elle est grande */
+    public static final int VERSION_COMPRESSEE = 3;
+
+    /** Même format que la version 3 ; le client comprend les messages de limite de débit */
+    public static final int VERSION_LIMITE = 4;
+
+    /** Même format ; le client envoie des battements PING auxquels le serveur répond PONG */
+    public static final int VERSION_BATTEMENT = 5;
+
+    /** Même format ; le client reconnecté demande les messages manqués par REPRISE */
+    public static final int VERSION_REPRISE = 6;
+
+    /** Entête d'un flux ObjectOutputStream brut, lu comme une longueur de trame */
+    public static final int ENTETE_FLUX_OBJETS = 0xACED0005;
+
+    /** Version la plus récente supportée par ce codec */
+    public static final int VERSION_COURANTE = VERSION_REPRISE;
+
+    // Premier octet d'un flux sérialisé (0xACED) : ne peut pas être confondu avec le marqueur binaire
+    private static final byte MARQUEUR_BINAIRE = 0x02;
+    private static final byte MARQUEUR_COMPRESSE = 0x03;
+
+    // Taille de charge utile binaire à partir de laquelle on compresse, réglable par -Dchatapp.seuilCompression=N
+    private static final int SEUIL_COMPRESSION = Integer.getInteger("chatapp.seuilCompression", 512);
+
+    /**
+     * Dictionnaire prédéfini : amorce la compression des journaux et piles d'appels collés
+     * dans les messages, les chaînes les plus probables en dernier.
+     * Fait partie du format de la version 3 : ne jamais le modifier.
+     */
+    private static final byte[] DICTIONNAIRE = (
+            "DEBUG INFO WARN WARNING ERROR SEVERE FINE null true false http://localhost:8080/ "
+                    + "java.util.concurrent. java.lang.IllegalStateException: java.lang.IllegalArgumentException: "
+                    + "java.lang.NullPointerException: java.io.IOException: Exception in thread \"main\" "
+                    + "\n\t... more\nCaused by: \n\tat java.base/java.lang.Thread.run(Thread.java:"
+                    + "\n\tat java.base/java.util.\n\tat java.base/jdk.internal.\n\tat org.\n\tat com.")
+            .getBytes(StandardCharsets.UTF_8);
+
+    // Compresseurs et décompresseurs libérés, réutilisés d'un message à l'autre : chacun retient
+    // de la mémoire native, le nombre conservé est borné par le nombre de cœurs
+    private static final int OUTILS_CONSERVES_MAX = 2 * Runtime.getRuntime().availableProcessors();
+    private static final int TAMPON_CONSERVE_MAX = 64 * 1024;
+    private static final Queue<Compresseur> COMPRESSEURS = new ConcurrentLinkedQueue<>();
+    private static final Queue<Inflater> DECOMPRESSEURS = new ConcurrentLinkedQueue<>();
+
+    // Marqueur, type, drapeaux et horodatage
+    private static final int TAILLE_ENTETE_BINAIRE = 3 + Long.BYTES;
+
+    // Champs optionnels du format binaire
+    private static final int DRAPEAU_VERSION_PRESENCE = 0x01;
+    private static final int DRAPEAU_SALON = 0x02;
+    private static final int DRAPEAU_DESTINATAIRE = 0x04;
+    // Nombre de marques en varint puis chaque marque en varlong (0 si absente)
+    private static final int DRAPEAU_TRACE = 0x08;
+    // Nœud d'origine puis numéro, en varlong : messages relayés entre serveurs fédérés
+    private static final int DRAPEAU_IDENTIFIANT = 0x10;
+    // Séquence attribuée par le serveur, en varlong
+    private static final int DRAPEAU_SEQUENCE = 0x20;
+    // Version du protocole du client, en varint : message REPRISE
+    private static final int DRAPEAU_VERSION_PROTOCOLE = 0x40;
+
+    // Seules les classes d'un Message peuvent être désérialisées depuis une trame de version 1
+    private static final ObjectInputFilter FILTRE_SERIALISATION = ObjectInputFilter.Config.createFilter(
+            "com.chatapp.model.Message;com.chatapp.model.Message$TypeMessage;java.lang.Enum;"
+                    + "java.time.Ser;java.time.LocalDateTime;java.lang.String;maxdepth=4;maxrefs=64;maxbytes=" + TAILLE_MAX_CHARGE + ";!*");
+
+    // Un flux brut n'est jamais remis à zéro par ces clients : ni références ni octets ne sont bornés
+    private static final ObjectInputFilter FILTRE_FLUX_OBJETS = ObjectInputFilter.Config.createFilter(
+            "com.chatapp.model.Message;com.chatapp.model.Message$TypeMessage;java.lang.Enum;"
+                    + "java.time.Ser;java.time.LocalDateTime;java.lang.String;maxdepth=4;!*");
+    private static final byte[] OCTETS_ENTETE_FLUX_OBJETS = {(byte) 0xAC, (byte) 0xED, 0x00, 0x05};
+    // TC_RESET : le lecteur oublie les objets déjà reçus, chaque objet se lit seul
+    private static final byte REMISE_A_ZERO_FLUX = 0x79;
+
+    private static final Message.TypeMessage[] TYPES = Message.TypeMessage.values();
+    private static final EtapeTrace[] ETAPES = EtapeTrace.values();
+
+    private CodecMessage() {
+    }
+
+    /**
+     * Encode un message en trame complète (entête inclus) au format de la version donnée
+     */
+    public static byte[] encoder(Message message, int version) {
+        if (version >= VERSION_COMPRESSEE) {
+            return compresser(encoderBinaire(message));
+        }
+        if (version >= VERSION_BINAIRE) {
+            return encoderBinaire(message);
+        }
+        return encoderSerialise(message);
+    }
+
+    /**
+     * Compresse une trame binaire pour les clients de version 3.
+     * Retourne la trame elle-même si elle est sous le seuil ou si la compression ne la réduit pas.
+     */
+    public static byte[] compresser(byte[] trameBinaire) {
+        int longueur = trameBinaire.length - TAILLE_ENTETE;
+        if (longueur < SEUIL_COMPRESSION) return trameBinaire;
+
+        Compresseur compresseur = COMPRESSEURS.poll();
+        if (compresseur == null) {
+            compresseur = new Compresseur();
+        }
+        try {
+            int compresse = compresseur.compresser(trameBinaire, TAILLE_ENTETE, longueur);
+            int entete = 1 + tailleVarLong(longueur);
+            if (compresse < 0 || entete + compresse >= longueur) return trameBinaire;
+
+            byte[] trame = new byte[TAILLE_ENTETE + entete + compresse];
+            int position = ecrireEntier(trame, 0, entete + compresse);
+            trame[position++] = MARQUEUR_COMPRESSE;
+            position = ecrireVarLong(trame, position, longueur);
+            System.arraycopy(compresseur.tampon, 0, trame, position, compresse);
+            return trame;
+        } finally {
+            rendre(compresseur);
+        }
+    }
+
+    private static void rendre(Compresseur compresseur) {
+        // Les très grands messages sont rares : leur tampon n'est pas conservé
+        if (compresseur.tampon.length > TAMPON_CONSERVE_MAX) {
+            compresseur.tampon = new byte[SEUIL_COMPRESSION];
+        }
+        if (COMPRESSEURS.size() < OUTILS_CONSERVES_MAX) {
+            COMPRESSEURS.add(compresseur);
+        } else {
+            compresseur.deflater.end();
+        }
+    }
+
+    private static byte[] encoderSerialise(Message message) {
+        try {
+            ByteArrayOutputStream tampon = new ByteArrayOutputStream(256);
+            tampon.write(new byte[TAILLE_ENTETE]);
+            try (ObjectOutputStream oos = new ObjectOutputStream(tampon)) {
+                oos.writeObject(message);
+            }
+            byte[] trame = tampon.toByteArray();
+            ecrireEntier(trame, 0, trame.length - TAILLE_ENTETE);
+            return trame;
+        } catch (IOException e) {
+            // Impossible avec un flux en mémoire
+            throw new IllegalStateException("Erreur lors de l'encodage du message", e);
+        }
+    }
+
+    /**
+     * Encode au format binaire avec une seule allocation : la trame finale
+     */
+    private static byte[] encoderBinaire(Message message) {
+        String expediteur = message.getExpediteur();
+        String contenu = message.getContenu();
+        int longueurExpediteur = longueurUtf8(expediteur);
+        int longueurContenu = longueurUtf8(contenu);
+
+        int drapeaux = 0;
+        int longueurCharge = TAILLE_ENTETE_BINAIRE
+                + tailleChaine(longueurExpediteur) + tailleChaine(longueurContenu);
+        if (message.getVersionPresence() != 0) {
+            drapeaux |= DRAPEAU_VERSION_PRESENCE;
+            longueurCharge += tailleVarLong(message.getVersionPresence());
+        }
+        String salon = message.estDansSalonParDefaut() ? null : message.getSalon();
+        int longueurSalon = longueurUtf8(salon);
+        if (salon != null) {
+            drapeaux |= DRAPEAU_SALON;
+            longueurCharge += tailleChaine(longueurSalon);
+        }
+        String destinataire = message.getDestinataire();
+        int longueurDestinataire = longueurUtf8(destinataire);
+        if (destinataire != null) {
+            drapeaux |= DRAPEAU_DESTINATAIRE;
+            longueurCharge += tailleChaine(longueurDestinataire);
+        }
+        long[] trace = message.getTrace();
+        if (trace != null) {
+            drapeaux |= DRAPEAU_TRACE;
+            longueurCharge += tailleVarLong(trace.length);
+            for (long marque : trace) {
+                longueurCharge += tailleVarLong(marque);
+            }
+        }
+        if (message.getOrigine() != 0) {
+            drapeaux |= DRAPEAU_IDENTIFIANT;
+            longueurCharge += tailleVarLong(message.getOrigine()) + tailleVarLong(message.getNumero());
+        }
+        if (message.getSequence() != 0) {
+            drapeaux |= DRAPEAU_SEQUENCE;
+            longueurCharge += tailleVarLong(message.getSequence());
+        }
+        if (message.getVersionProtocole() != 0) {
+            drapeaux |= DRAPEAU_VERSION_PROTOCOLE;
+            longueurCharge += tailleVarLong(message.getVersionProtocole());
+        }
+        byte[] trame = new byte[TAILLE_ENTETE + longueurCharge];
+
+        int position = ecrireEntier(trame, 0, longueurCharge);
+        trame[position++] = MARQUEUR_BINAIRE;
+        trame[position++] = (byte) message.getType().ordinal();
+        trame[position++] = (byte) drapeaux;
+        position = ecrireLong(trame, position, message.getHorodatageMillis());
+        position = ecrireChaine(trame, position, expediteur, longueurExpediteur);
+        position = ecrireChaine(trame, position, contenu, longueurContenu);
+        if ((drapeaux & DRAPEAU_VERSION_PRESENCE) != 0) {
+            position = ecrireVarLong(trame, position, message.getVersionPresence());
+        }
+        if ((drapeaux & DRAPEAU_SALON) != 0) {
+            position = ecrireChaine(trame, position, salon, longueurSalon);
+        }
+        if ((drapeaux & DRAPEAU_DESTINATAIRE) != 0) {
+            position = ecrireChaine(trame, position, destinataire, longueurDestinataire);
+        }
+        if ((drapeaux & DRAPEAU_TRACE) != 0) {
+            position = ecrireVarLong(trame, position, trace.length);
+            for (long marque : trace) {
+                position = ecrireVarLong(trame, position, marque);
+            }
+        }
+        if ((drapeaux & DRAPEAU_IDENTIFIANT) != 0) {
+            position = ecrireVarLong(trame, position, message.getOrigine());
+            position = ecrireVarLong(trame, position, message.getNumero());
+        }
+        if ((drapeaux & DRAPEAU_SEQUENCE) != 0) {
+            position = ecrireVarLong(trame, position, message.getSequence());
+        }
+        if ((drapeaux & DRAPEAU_VERSION_PROTOCOLE) != 0) {
+            ecrireVarLong(trame, position, message.getVersionProtocole());
+        }
+        return trame;
+    }
+
+    /**
+     * Décode la charge utile d'une trame, quel que soit son format
+     */
+    public static Message decoder(byte[] donnees, int debut, int longueur) throws TrameInvalideException {
+        if (longueur > 0 && donnees[debut] == MARQUEUR_BINAIRE) {
+            return decoderBinaire(donnees, debut, longueur);
+        }
+        if (longueur > 0 && donnees[debut] == MARQUEUR_COMPRESSE) {
+            return decoderCompresse(donnees, debut, longueur);
+        }
+        return decoderSerialise(donnees, debut, longueur);
+    }
+
+    /**
+     * Ouvre la lecture d'un flux d'objets brut dont l'entête vient d'être lu
+     */
+    public static ObjectInputStream ouvrirFluxObjets(InputStream suite) throws IOException {
+        ObjectInputStream flux = new ObjectInputStream(
+                new SequenceInputStream(new ByteArrayInputStream(OCTETS_ENTETE_FLUX_OBJETS), suite));
+        flux.setObjectInputFilter(FILTRE_FLUX_OBJETS);
+        return flux;
+    }
+
+    /**
+     * Lit le message suivant d'un flux d'objets brut. Après une TrameInvalideException,
+     * le flux est désynchronisé et doit être fermé.
+     */
+    public static Message lireObjet(ObjectInputStream flux) throws IOException, TrameInvalideException {
+        Object objet;
+        try {
+            objet = flux.readObject();
+        } catch (ClassNotFoundException | RuntimeException e) {
+            throw new TrameInvalideException("Objet inconnu reçu", e);
+        }
+        if (!(objet instanceof Message message) || message.getType() == null) {
+            throw new TrameInvalideException("Objet reçu qui n'est pas un message valide");
+        }
+        return message;
+    }
+
+    /**
+     * Entête à écrire en tête d'un flux d'objets brut, avant tout message
+     */
+    public static byte[] enteteFluxObjets() {
+        return OCTETS_ENTETE_FLUX_OBJETS.clone();
+    }
+
+    /**
+     * Convertit une trame de version 1 pour un flux d'objets brut : l'objet sans longueur
+     * ni entête de flux, précédé d'une remise à zéro puisqu'il a été sérialisé seul
+     */
+    public static byte[] versFluxObjets(byte[] trame) {
+        int debut = TAILLE_ENTETE + OCTETS_ENTETE_FLUX_OBJETS.length;
+        byte[] objet = new byte[1 + trame.length - debut];
+        objet[0] = REMISE_A_ZERO_FLUX;
+        System.arraycopy(trame, debut, objet, 1, trame.length - debut);
+        return objet;
+    }
+
+    private static Message decoderCompresse(byte[] donnees, int debut, int longueur) throws TrameInvalideException {
+        LecteurBinaire lecteur = new LecteurBinaire(donnees, debut + 1, debut + longueur);
+        long taille = lecteur.lireVarLong();
+        if (taille <= 0 || taille > TAILLE_MAX_CHARGE) {
+            throw new TrameInvalideException("Taille décompressée invalide: " + taille);
+        }
+        // Un octet de plus pour détecter un flux plus long qu'annoncé
+        byte[] charge = new byte[(int) taille + 1];
+        int lus = decompresser(donnees, lecteur.position, debut + longueur - lecteur.position, charge);
+        if (lus != taille || charge[0] != MARQUEUR_BINAIRE) {
+            throw new TrameInvalideException("Trame compressée invalide");
+        }
+        return decoderBinaire(charge, 0, lus);
+    }
+
+    private static int decompresser(byte[] donnees, int debut, int longueur, byte[] charge)
+            throws TrameInvalideException {
+        Inflater inflater = DECOMPRESSEURS.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        try {
+            inflater.setInput(donnees, debut, longueur);
+            int lus = 0;
+            boolean dictionnaireFourni = false;
+            while (!inflater.finished()) {
+                int n = inflater.inflate(charge, lus, charge.length - lus);
+                lus += n;
+                if (n > 0) continue;
+                if (!inflater.needsDictionary() || dictionnaireFourni) {
+                    // Flux tronqué, trop long ou corrompu
+                    throw new TrameInvalideException("Trame compressée invalide");
+                }
+                inflater.setDictionary(DICTIONNAIRE);
+                dictionnaireFourni = true;
+            }
+            return lus;
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new TrameInvalideException("Trame compressée invalide", e);
+        } finally {
+            inflater.reset();
+            if (DECOMPRESSEURS.size() < OUTILS_CONSERVES_MAX) {
+                DECOMPRESSEURS.add(inflater);
+            } else {
+                inflater.end();
+            }
+        }
+    }
+
+    private static Message decoderSerialise(byte[] donnees, int debut, int longueur) throws TrameInvalideException {
+        Message message;
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(donnees, debut, longueur))) {
+            ois.setObjectInputFilter(FILTRE_SERIALISATION);
+            message = (Message) ois.readObject();
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            // Un flux forgé peut aussi lever DateTimeException, ClassCastException...
+            throw new TrameInvalideException("Objet inconnu reçu", e);
+        }
+        if (message.getType() == null) {
+            throw new TrameInvalideException("Message sans type");
+        }
+        return message;
+    }
+
+    private static Message decoderBinaire(byte[] donnees, int debut, int longueur) throws TrameInvalideException {
+        if (longueur < TAILLE_ENTETE_BINAIRE) {
+            throw new TrameInvalideException("Trame binaire tronquée");
+        }
+        LecteurBinaire lecteur = new LecteurBinaire(donnees, debut + 1, debut + longueur);
+        int indiceType = lecteur.lireOctet();
+        if (indiceType >= TYPES.length) {
+            throw new TrameInvalideException("Type de message inconnu: " + indiceType);
+        }
+        int drapeaux = lecteur.lireOctet();
+        long horodatage = lecteur.lireLong();
+        String expediteur = lecteur.lireChaine();
+        String contenu = lecteur.lireChaine();
+        Message message = new Message(expediteur, contenu, TYPES[indiceType], horodatage);
+        if ((drapeaux & DRAPEAU_VERSION_PRESENCE) != 0) {
+            message.setVersionPresence(lecteur.lireVarLong());
+        }
+        if ((drapeaux & DRAPEAU_SALON) != 0) {
+            message.setSalon(lecteur.lireChaine());
+        }
+        if ((drapeaux & DRAPEAU_DESTINATAIRE) != 0) {
+            message.setDestinataire(lecteur.lireChaine());
+        }
+        if ((drapeaux & DRAPEAU_TRACE) != 0) {
+            message.setTrace(lireTrace(lecteur));
+        }
+        if ((drapeaux & DRAPEAU_IDENTIFIANT) != 0) {
+            message.setIdentifiant(lecteur.lireVarLong(), lecteur.lireVarLong());
+        }
+        if ((drapeaux & DRAPEAU_SEQUENCE) != 0) {
+            message.setSequence(lecteur.lireVarLong());
+        }
+        if ((drapeaux & DRAPEAU_VERSION_PROTOCOLE) != 0) {
+            message.setVersionProtocole((int) lecteur.lireVarLong());
+        }
+        return message;
+    }
+
+    /**
+     * Lit les marques de trace ; celles des étapes inconnues de cette version sont ignorées
+     */
+    private static long[] lireTrace(LecteurBinaire lecteur) throws TrameInvalideException {
+        long nombre = lecteur.lireVarLong();
+        if (nombre > TAILLE_MAX_CHARGE) {
+            throw new TrameInvalideException("Nombre de marques invalide: " + nombre);
+        }
+        long[] trace = new long[ETAPES.length];
+        for (int i = 0; i < nombre; i++) {
+            long marque = lecteur.lireVarLong();
+            if (i < trace.length) {
+                trace[i] = marque;
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Lit une trame complète depuis un flux bloquant et la décode
+     */
+    public static Message lire(DataInputStream in) throws IOException {
+        int longueur = in.readInt();
+        verifierLongueur(longueur);
+        byte[] charge = new byte[longueur];
+        in.readFully(charge);
+        return decoder(charge, 0, longueur);
+    }
+
+    /**
+     * Vérifie que la longueur annoncée par un entête est acceptable
+     */
+    public static void verifierLongueur(int longueur) throws IOException {
+        if (longueur <= 0 || longueur > TAILLE_MAX_CHARGE) {
+            // Le flux est désynchronisé : impossible de continuer la lecture
+            throw new IOException("Longueur de trame invalide: " + longueur);
+        }
+    }
+
+    private static int ecrireEntier(byte[] tampon, int position, int valeur) {
+        tampon[position] = (byte) (valeur >>> 24);
+        tampon[position + 1] = (byte) (valeur >>> 16);
+        tampon[position + 2] = (byte) (valeur >>> 8);
+        tampon[position + 3] = (byte) valeur;
+        return position + 4;
+    }
+
+    private static int ecrireLong(byte[] tampon, int position, long valeur) {
+        for (int decalage = 56; decalage >= 0; decalage -= 8) {
+            tampon[position++] = (byte) (valeur >>> decalage);
+        }
+        return position;
+    }
+
+    private static int tailleVarLong(long valeur) {
+        int taille = 1;
+        while ((valeur >>>= 7) != 0) {
+            taille++;
+        }
+        return taille;
+    }
+
+    private static int ecrireVarLong(byte[] tampon, int position, long valeur) {
+        while ((valeur & ~0x7FL) != 0) {
+            tampon[position++] = (byte) ((valeur & 0x7F) | 0x80);
+            valeur >>>= 7;
+        }
+        tampon[position++] = (byte) valeur;
+        return position;
+    }
+
+    /**
+     * Longueur d'une chaîne encodée en UTF-8, ou -1 pour null
+     */
+    private static int longueurUtf8(String chaine) {
+        if (chaine == null) return -1;
+
+        int longueur = 0;
+        for (int i = 0; i < chaine.length(); i++) {
+            char c = chaine.charAt(i);
+            if (c < 0x80) {
+                longueur++;
+            } else if (c < 0x800) {
+                longueur += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < chaine.length()
+                    && Character.isLowSurrogate(chaine.charAt(i + 1))) {
+                longueur += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                longueur++;
+            } else {
+                longueur += 3;
+            }
+        }
+        return longueur;
+    }
+
+    /**
+     * Taille occupée par une chaîne : varint (longueur + 1, 0 pour null) puis les octets
+     */
+    private static int tailleChaine(int longueurUtf8) {
+        int valeur = longueurUtf8 + 1;
+        int taille = 1;
+        while ((valeur >>>= 7) != 0) {
+            taille++;
+        }
+        return taille + Math.max(longueurUtf8, 0);
+    }
+
+    private static int ecrireChaine(byte[] tampon, int position, String chaine, int longueurUtf8) {
+        int valeur = longueurUtf8 + 1;
+        while ((valeur & ~0x7F) != 0) {
+            tampon[position++] = (byte) ((valeur & 0x7F) | 0x80);
+            valeur >>>= 7;
+        }
+        tampon[position++] = (byte) valeur;
+        if (chaine == null) return position;
+
+        for (int i = 0; i < chaine.length(); i++) {
+            char c = chaine.charAt(i);
+            if (c < 0x80) {
+                tampon[position++] = (byte) c;
+            } else if (c < 0x800) {
+                tampon[position++] = (byte) (0xC0 | (c >> 6));
+                tampon[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < chaine.length()
+                    && Character.isLowSurrogate(chaine.charAt(i + 1))) {
+                int point = Character.toCodePoint(c, chaine.charAt(++i));
+                tampon[position++] = (byte) (0xF0 | (point >> 18));
+                tampon[position++] = (byte) (0x80 | ((point >> 12) & 0x3F));
+                tampon[position++] = (byte) (0x80 | ((point >> 6) & 0x3F));
+                tampon[position++] = (byte) (0x80 | (point & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Surrogate isolé : remplacé par '?', comme String.getBytes
+                tampon[position++] = (byte) '?';
+            } else {
+                tampon[position++] = (byte) (0xE0 | (c >> 12));
+                tampon[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                tampon[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Deflater réutilisable et son tampon de sortie, agrandi au besoin
+     */
+    private static final class Compresseur {
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] tampon = new byte[SEUIL_COMPRESSION];
+
+        /**
+         * Compresse dans le tampon et retourne la taille obtenue,
+         * ou -1 si le résultat n'est pas plus court que l'entrée
+         */
+        int compresser(byte[] donnees, int debut, int longueur) {
+            if (tampon.length < longueur) {
+                tampon = new byte[longueur];
+            }
+            try {
+                deflater.setDictionary(DICTIONNAIRE);
+                deflater.setInput(donnees, debut, longueur);
+                deflater.finish();
+                int taille = 0;
+                while (!deflater.finished() && taille < longueur) {
+                    taille += deflater.deflate(tampon, taille, longueur - taille);
+                }
+                return deflater.finished() ? taille : -1;
+            } finally {
+                deflater.reset();
+            }
+        }
+    }
+
+    /**
+     * Curseur de lecture sur une charge utile binaire
+     */
+    private static final class LecteurBinaire {
+        private final byte[] donnees;
+        private final int fin;
+        private int position;
+
+        LecteurBinaire(byte[] donnees, int position, int fin) {
+            this.donnees = donnees;
+            this.position = position;
+            this.fin = fin;
+        }
+
+        int lireOctet() throws TrameInvalideException {
+            verifier(1);
+            return donnees[position++] & 0xFF;
+        }
+
+        long lireLong() throws TrameInvalideException {
+            verifier(Long.BYTES);
+            long valeur = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                valeur = (valeur << 8) | (donnees[position++] & 0xFF);
+            }
+            return valeur;
+        }
+
+        long lireVarLong() throws TrameInvalideException {
+            long valeur = 0;
+            int decalage = 0;
+            int octet;
+            do {
+                if (decalage > 63) throw new TrameInvalideException("Entier variable invalide");
+                octet = lireOctet();
+                valeur |= (long) (octet & 0x7F) << decalage;
+                decalage += 7;
+            } while ((octet & 0x80) != 0);
+            return valeur;
+        }
+
+        String lireChaine() throws TrameInvalideException {
+            int valeur = 0;
+            int decalage = 0;
+            int octet;
+            do {
+                if (decalage > 28) throw new TrameInvalideException("Longueur de chaîne invalide");
+                octet = lireOctet();
+                valeur |= (octet & 0x7F) << decalage;
+                decalage += 7;
+            } while ((octet & 0x80) != 0);
+
+            if (valeur == 0) return null;
+            int longueur = valeur - 1;
+            verifier(longueur);
+            String chaine = new String(donnees, position, longueur, StandardCharsets.UTF_8);
+            position += longueur;
+            return chaine;
+        }
+
+        private void verifier(int taille) throws TrameInvalideException {
+            if (taille < 0 || fin - position < taille) {
+                throw new TrameInvalideException("Trame binaire tronquée");
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.chatapp.model;
+
+import java.time.Instant;
+
+/**
+ * Étapes marquées sur un message échantillonné, de l'envoi par le client
+ * jusqu'à son affichage chez les destinataires. L'ordre des constantes fait
+ * partie du format binaire : ajouter les nouvelles étapes à la fin uniquement.
+ */
+public enum EtapeTrace {
+    ENVOI_CLIENT("envoi"),
+    RECEPTION_SERVEUR("client → serveur"),
+    DEBUT_DIFFUSION("file serveur"),
+    FIN_DIFFUSION("diffusion"),
+    RECEPTION_CLIENT("serveur → client"),
+    AFFICHAGE("affichage");
+
+    private final String libelle;
+
+    EtapeTrace(String libelle) {
+        this.libelle = libelle;
+    }
+
+    /**
+     * Nom de l'intervalle qui se termine à cette étape
+     */
+    public String getLibelle() {
+        return libelle;
+    }
+
+    /**
+     * Horloge murale en microsecondes depuis l'époque : seule horloge comparable
+     * entre processus, à condition que les machines soient synchronisées
+     */
+    public static long maintenantMicros() {
+        Instant maintenant = Instant.now();
+        return maintenant.getEpochSecond() * 1_000_000L + maintenant.getNano() / 1_000;
+    }
+}
@@ -0,0 +1,55 @@
+package com.chatapp.model;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+
+/**
+ * Mise en forme "HH:mm:ss" des horodatages en millisecondes.
+ * Le texte de la dernière seconde formatée est conservé : les messages
+ * d'une même seconde le réutilisent sans rien allouer.
+ * Le fuseau est celui du système au chargement de la classe.
+ */
+public final class FormatHeure {
+
+    private static final ZoneRules REGLES_FUSEAU = ZoneId.systemDefault().getRules();
+
+    /** Seconde formatée et son texte, remplacés ensemble */
+    private record SecondeFormatee(long seconde, String texte) {
+    }
+
+    private static volatile SecondeFormatee derniere = new SecondeFormatee(Long.MIN_VALUE, "");
+
+    private FormatHeure() {
+    }
+
+    /**
+     * Heure locale d'un horodatage, au format "HH:mm:ss"
+     */
+    public static String formater(long horodatageMillis) {
+        long seconde = Math.floorDiv(horodatageMillis, 1000);
+        SecondeFormatee courante = derniere;
+        if (courante.seconde() == seconde) {
+            return courante.texte();
+        }
+
+        // Calcul direct, sans formatteur ni LocalTime, à chaque changement de seconde
+        int decalage = REGLES_FUSEAU.getOffset(Instant.ofEpochSecond(seconde)).getTotalSeconds();
+        int secondeDuJour = (int) Math.floorMod(seconde + decalage, 86_400L);
+        char[] texte = new char[8];
+        ecrireDeuxChiffres(texte, 0, secondeDuJour / 3600);
+        texte[2] = ':';
+        ecrireDeuxChiffres(texte, 3, secondeDuJour / 60 % 60);
+        texte[5] = ':';
+        ecrireDeuxChiffres(texte, 6, secondeDuJour % 60);
+
+        courante = new SecondeFormatee(seconde, new String(texte));
+        derniere = courante;
+        return courante.texte();
+    }
+
+    private static void ecrireDeuxChiffres(char[] texte, int position, int valeur) {
+        texte[position] = (char) ('0' + valeur / 10);
+        texte[position + 1] = (char) ('0' + valeur % 10);
+    }
+}
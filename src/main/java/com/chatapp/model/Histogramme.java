@@ -0,0 +1,110 @@
+package com.chatapp.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de valeurs positives à précision relative constante, sur le principe de HdrHistogram :
+ * chaque puissance de deux est découpée en {@value #DEMI_SOUS_INTERVALLES} intervalles égaux,
+ * soit une erreur inférieure à 1,6 % quelle que soit la grandeur mesurée.
+ * L'enregistrement ne prend pas de verrou et peut se faire depuis plusieurs threads :
+ * le nombre, la somme et le maximum sont répartis par thread pour ne pas se disputer une même case.
+ */
+public class Histogramme {
+
+    private static final int BITS_SOUS_INTERVALLES = 7;
+    // Les valeurs inférieures à 128 ont chacune leur intervalle
+    private static final int SOUS_INTERVALLES = 1 << BITS_SOUS_INTERVALLES;
+    private static final int DEMI_SOUS_INTERVALLES = SOUS_INTERVALLES / 2;
+
+    private final long valeurMax;
+    private final AtomicLongArray compteurs;
+    private final LongAdder nombre = new LongAdder();
+    private final LongAdder somme = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Crée un histogramme pour des valeurs de 0 à valeurMax ;
+     * les valeurs plus grandes sont comptées dans le dernier intervalle
+     */
+    public Histogramme(long valeurMax) {
+        if (valeurMax <= 0) {
+            throw new IllegalArgumentException("La valeur maximale doit être positive: " + valeurMax);
+        }
+        this.valeurMax = valeurMax;
+        this.compteurs = new AtomicLongArray(indice(valeurMax) + 1);
+    }
+
+    /**
+     * Enregistre une valeur ; les valeurs négatives comptent pour 0
+     */
+    public void enregistrer(long valeur) {
+        valeur = Math.max(0, valeur);
+        compteurs.incrementAndGet(indice(Math.min(valeur, valeurMax)));
+        nombre.increment();
+        somme.add(valeur);
+        max.accumulate(valeur);
+    }
+
+    /**
+     * Valeur sous laquelle se trouvent le centile donné (entre 0 et 100) des valeurs enregistrées,
+     * arrondie à la borne haute de son intervalle
+     */
+    public long valeurAuCentile(double centile) {
+        long total = nombre.sum();
+        if (total == 0) return 0;
+
+        long rang = Math.max(1, (long) Math.ceil(Math.min(centile, 100.0) / 100.0 * total));
+        long cumul = 0;
+        for (int i = 0; i < compteurs.length(); i++) {
+            cumul += compteurs.get(i);
+            if (cumul >= rang) {
+                return Math.min(borneHaute(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getNombre() {
+        return nombre.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMoyenne() {
+        long total = nombre.sum();
+        return total == 0 ? 0 : (double) somme.sum() / total;
+    }
+
+    /**
+     * Remet l'histogramme à zéro. Les enregistrements concurrents
+     * peuvent être partiellement conservés.
+     */
+    public void reinitialiser() {
+        for (int i = 0; i < compteurs.length(); i++) {
+            compteurs.set(i, 0);
+        }
+        nombre.reset();
+        somme.reset();
+        max.reset();
+    }
+
+    private static int indice(long valeur) {
+        if (valeur < SOUS_INTERVALLES) return (int) valeur;
+
+        // Décalage qui ramène la valeur entre 64 et 127
+        int exposant = 63 - Long.numberOfLeadingZeros(valeur) - (BITS_SOUS_INTERVALLES - 1);
+        return exposant * DEMI_SOUS_INTERVALLES + (int) (valeur >>> exposant);
+    }
+
+    private static long borneHaute(int indice) {
+        if (indice < SOUS_INTERVALLES) return indice;
+
+        int exposant = indice / DEMI_SOUS_INTERVALLES - 1;
+        long mantisse = indice % DEMI_SOUS_INTERVALLES + DEMI_SOUS_INTERVALLES;
+        return ((mantisse + 1) << exposant) - 1;
+    }
+}
@@ -1,8 +1,13 @@
 package com.chatapp.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
 
 /**
  * Classe représentant un message envoyé entre le client et le serveur
@@ -10,29 +15,110 @@ import java.time.format.DateTimeFormatter;
 public class Message implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    /** Salon de tous les utilisateurs, seul salon des anciens clients */
+    public static final String SALON_PAR_DEFAUT = "général";
+
     private String expediteur;
     private String contenu;
-    private LocalDateTime horodatage;
+    // Millisecondes depuis l'époque ; sérialisé en LocalDateTime pour les anciens clients
+    private long horodatage;
     private TypeMessage type;
+    private int versionProtocole;
+    private long versionPresence;
+    // Absent (null) pour le salon par défaut et dans les messages des anciens clients
+    private String salon;
+    private String destinataire;
+    // Marques des messages échantillonnés (microsecondes, indexées par étape), null sinon ;
+    // absentes du format sérialisé
+    private transient long[] trace;
+    // Nœud de la fédération d'où vient le message et numéro attribué par ce nœud (0 hors fédération)
+    private transient long origine;
+    private transient long numero;
+    // Rang attribué par le serveur aux messages de salon et directs, croissant
+    // d'un redémarrage à l'autre (0 si absent)
+    private transient long sequence;
+
+    /**
+     * Champs du format sérialisé (version 1). La liste ne fait que s'allonger : les
+     * pairs plus anciens ignorent les champs qu'ils ne connaissent pas, et l'horodatage
+     * reste un LocalDateTime pour qu'un pair v1 puisse toujours le relire
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("expediteur", String.class),
+            new ObjectStreamField("contenu", String.class),
+            new ObjectStreamField("horodatage", LocalDateTime.class),
+            new ObjectStreamField("type", TypeMessage.class),
+            new ObjectStreamField("versionProtocole", int.class),
+            new ObjectStreamField("versionPresence", long.class),
+            new ObjectStreamField("salon", String.class),
+            new ObjectStreamField("destinataire", String.class)
+    };
 
+    /**
+     * Types de messages. L'ordre des constantes fait partie du format binaire :
+     * ajouter les nouveaux types à la fin uniquement.
+     */
     public enum TypeMessage {
-        CONNEXION,
-        DECONNEXION,
-        MESSAGE,
-        LISTE_UTILISATEURS
+        CONNEXION(1),
+        DECONNEXION(1),
+        MESSAGE(1),
+        LISTE_UTILISATEURS(1),
+        VERSION(2),
+        UTILISATEUR_REJOINT(2),
+        UTILISATEUR_PARTI(2),
+        REJOINDRE_SALON(2),
+        QUITTER_SALON(2),
+        DIRECT(2),
+        ERREUR(2),
+        // Présentation d'un serveur à un autre nœud de la fédération, jamais envoyée aux clients
+        NOEUD(3),
+        // Lecture du client suspendue par le serveur : contenu = durée de la pause en millisecondes
+        LIMITE(4),
+        // Battement du client (contenu : son horloge en nanosecondes), renvoyé tel quel par le serveur
+        PING(5),
+        PONG(5),
+        // Reconnexion d'un client : séquence = dernière reçue, contenu = ses salons séparés par '\n'
+        REPRISE(6);
+
+        private final int versionMinimale;
+
+        TypeMessage(int versionMinimale) {
+            this.versionMinimale = versionMinimale;
+        }
+
+        /**
+         * Version du protocole à partir de laquelle un client comprend ce type
+         */
+        public int getVersionMinimale() {
+            return versionMinimale;
+        }
     }
 
     public Message(String expediteur, String contenu, TypeMessage type) {
         this.expediteur = expediteur;
         this.contenu = contenu;
         this.type = type;
-        this.horodatage = LocalDateTime.now();
+        this.horodatage = System.currentTimeMillis();
+    }
+
+    public Message(String expediteur, String contenu, TypeMessage type, long horodatageMillis) {
+        this.expediteur = expediteur;
+        this.contenu = contenu;
+        this.type = type;
+        this.horodatage = horodatageMillis;
     }
 
     public String getExpediteur() {
         return expediteur;
     }
 
+    /**
+     * Remplace l'expéditeur annoncé par le client par celui de sa session
+     */
+    public void setExpediteur(String expediteur) {
+        this.expediteur = expediteur;
+    }
+
     public String getContenu() {
         return contenu;
     }
@@ -41,20 +127,195 @@ public class Message implements Serializable {
         return type;
     }
 
+    /**
+     * Horodatage en heure locale, construit à chaque appel
+     */
     public LocalDateTime getHorodatage() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(horodatage), ZoneId.systemDefault());
+    }
+
+    public long getHorodatageMillis() {
         return horodatage;
     }
 
+    /**
+     * Version du protocole annoncée par un client dans son message de CONNEXION
+     */
+    public int getVersionProtocole() {
+        return versionProtocole;
+    }
+
+    public void setVersionProtocole(int versionProtocole) {
+        this.versionProtocole = versionProtocole;
+    }
+
+    /**
+     * Version de la liste de présence portée par LISTE_UTILISATEURS,
+     * UTILISATEUR_REJOINT et UTILISATEUR_PARTI (0 si absente)
+     */
+    public long getVersionPresence() {
+        return versionPresence;
+    }
+
+    public void setVersionPresence(long versionPresence) {
+        this.versionPresence = versionPresence;
+    }
+
+    /**
+     * Salon d'un MESSAGE, REJOINDRE_SALON ou QUITTER_SALON
+     */
+    public String getSalon() {
+        return salon == null ? SALON_PAR_DEFAUT : salon;
+    }
+
+    public void setSalon(String salon) {
+        this.salon = SALON_PAR_DEFAUT.equals(salon) ? null : salon;
+    }
+
+    /**
+     * Vérifie si le message appartient au salon par défaut
+     */
+    public boolean estDansSalonParDefaut() {
+        return salon == null;
+    }
+
+    /**
+     * Nom de l'utilisateur auquel est adressé un message DIRECT
+     */
+    public String getDestinataire() {
+        return destinataire;
+    }
+
+    public void setDestinataire(String destinataire) {
+        this.destinataire = destinataire;
+    }
+
+    /**
+     * Identifiant du nœud de la fédération d'où vient le message, 0 s'il n'a pas été relayé
+     */
+    public long getOrigine() {
+        return origine;
+    }
+
+    /**
+     * Numéro du message, croissant pour un même nœud d'origine
+     */
+    public long getNumero() {
+        return numero;
+    }
+
+    public void setIdentifiant(long origine, long numero) {
+        this.origine = origine;
+        this.numero = numero;
+    }
+
+    /**
+     * Séquence attribuée par le serveur, 0 si le message n'en porte pas.
+     * Dans un message REPRISE, dernière séquence reçue par le client.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Échantillonne ce message : les étapes suivantes y seront marquées
+     */
+    public void demarrerTrace() {
+        trace = new long[EtapeTrace.values().length];
+        marquer(EtapeTrace.ENVOI_CLIENT);
+    }
+
+    public boolean estTrace() {
+        return trace != null;
+    }
+
+    /**
+     * Marque l'étape à l'instant présent ; sans effet si le message n'est pas tracé
+     */
+    public void marquer(EtapeTrace etape) {
+        if (trace != null) {
+            trace[etape.ordinal()] = EtapeTrace.maintenantMicros();
+        }
+    }
+
+    /**
+     * Instant de l'étape en microsecondes depuis l'époque, 0 si elle n'est pas marquée
+     */
+    public long getMarque(EtapeTrace etape) {
+        return trace == null ? 0 : trace[etape.ordinal()];
+    }
+
+    public void effacerTrace() {
+        trace = null;
+    }
+
+    long[] getTrace() {
+        return trace;
+    }
+
+    void setTrace(long[] trace) {
+        this.trace = trace;
+    }
+
+    /**
+     * Copie du message, marques comprises, modifiable sans toucher aux trames
+     * déjà encodées à partir de l'original
+     */
+    public Message copier() {
+        Message copie = new Message(expediteur, contenu, type, horodatage);
+        copie.versionProtocole = versionProtocole;
+        copie.versionPresence = versionPresence;
+        copie.salon = salon;
+        copie.destinataire = destinataire;
+        copie.trace = trace == null ? null : trace.clone();
+        copie.origine = origine;
+        copie.numero = numero;
+        copie.sequence = sequence;
+        return copie;
+    }
+
     public String getHorodatageFormate() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("HH:mm:ss");
-        return horodatage.format(formatter);
+        return FormatHeure.formater(horodatage);
     }
 
     @Override
     public String toString() {
-        return String.format("[%s] %s: %s",
-                getHorodatageFormate(),
-                expediteur,
-                contenu);
+        if (destinataire != null) {
+            return "[" + getHorodatageFormate() + "] " + expediteur + " → " + destinataire + ": " + contenu;
+        }
+        if (salon != null) {
+            return "[" + getHorodatageFormate() + "] #" + salon + " " + expediteur + ": " + contenu;
+        }
+        return "[" + getHorodatageFormate() + "] " + expediteur + ": " + contenu;
+    }
+
+    private void writeObject(ObjectOutputStream sortie) throws IOException {
+        ObjectOutputStream.PutField champs = sortie.putFields();
+        champs.put("expediteur", expediteur);
+        champs.put("contenu", contenu);
+        champs.put("horodatage", getHorodatage());
+        champs.put("type", type);
+        champs.put("versionProtocole", versionProtocole);
+        champs.put("versionPresence", versionPresence);
+        champs.put("salon", salon);
+        champs.put("destinataire", destinataire);
+        sortie.writeFields();
+    }
+
+    private void readObject(ObjectInputStream entree) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField champs = entree.readFields();
+        expediteur = (String) champs.get("expediteur", null);
+        contenu = (String) champs.get("contenu", null);
+        LocalDateTime date = (LocalDateTime) champs.get("horodatage", null);
+        horodatage = date == null ? 0 : date.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        type = (TypeMessage) champs.get("type", null);
+        versionProtocole = champs.get("versionProtocole", 0);
+        versionPresence = champs.get("versionPresence", 0L);
+        salon = (String) champs.get("salon", null);
+        destinataire = (String) champs.get("destinataire", null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,81 @@
+package com.chatapp.model;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durées par étape des messages échantillonnés, en microsecondes.
+ * La durée d'une étape est mesurée depuis la dernière étape précédente marquée :
+ * un message tracé par un ancien serveur donne directement l'aller-retour complet.
+ * Les étapes qui changent de processus supposent des horloges synchronisées ;
+ * un écart négatif compte pour 0.
+ */
+public class StatistiquesTrace {
+
+    private static final long DUREE_MAX_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final EtapeTrace[] ETAPES = EtapeTrace.values();
+
+    // Indice 0 inutilisé : l'envoi n'a pas d'étape précédente
+    private final Histogramme[] durees = new Histogramme[ETAPES.length];
+
+    public StatistiquesTrace() {
+        for (int i = 1; i < durees.length; i++) {
+            durees[i] = new Histogramme(DUREE_MAX_MICROS);
+        }
+    }
+
+    /**
+     * Enregistre les étapes de premiere à derniere (incluses) d'un message tracé
+     */
+    public void enregistrer(Message message, EtapeTrace premiere, EtapeTrace derniere) {
+        if (!message.estTrace()) return;
+
+        for (int i = Math.max(1, premiere.ordinal()); i <= derniere.ordinal(); i++) {
+            long fin = message.getMarque(ETAPES[i]);
+            if (fin == 0) continue;
+            for (int j = i - 1; j >= 0; j--) {
+                long debut = message.getMarque(ETAPES[j]);
+                if (debut != 0) {
+                    durees[i].enregistrer(fin - debut);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Durées de l'intervalle qui se termine à l'étape donnée
+     */
+    public Histogramme getDurees(EtapeTrace etape) {
+        if (etape.ordinal() == 0) {
+            throw new IllegalArgumentException("Aucune durée ne se termine à l'étape " + etape);
+        }
+        return durees[etape.ordinal()];
+    }
+
+    /**
+     * Résumé des étapes mesurées : médiane et 99e centile en millisecondes
+     */
+    public String resumer() {
+        StringBuilder resume = new StringBuilder();
+        for (int i = 1; i < durees.length; i++) {
+            Histogramme histogramme = durees[i];
+            if (histogramme.getNombre() == 0) continue;
+            if (resume.length() > 0) resume.append(" ; ");
+            resume.append(String.format("%s p50 %.2f ms, p99 %.2f ms (%d)",
+                    ETAPES[i].getLibelle(),
+                    histogramme.valeurAuCentile(50) / 1e3,
+                    histogramme.valeurAuCentile(99) / 1e3,
+                    histogramme.getNombre()));
+        }
+        return resume.length() == 0 ? "aucun message tracé" : resume.toString();
+    }
+
+    /**
+     * Efface toutes les durées enregistrées
+     */
+    public void reinitialiser() {
+        for (int i = 1; i < durees.length; i++) {
+            durees[i].reinitialiser();
+        }
+    }
+}
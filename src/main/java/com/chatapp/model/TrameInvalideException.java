@@ -0,0 +1,19 @@
+package com.chatapp.model;
+
+import java.io.IOException;
+
+/**
+ * Exception levée lorsqu'une trame reçue ne peut pas être décodée.
+ * Le découpage des trames reste intact : la lecture peut continuer.
+ */
+public class TrameInvalideException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public TrameInvalideException(String message) {
+        super(message);
+    }
+
+    public TrameInvalideException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,102 @@
+package com.chatapp.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Tampon circulaire de capacité fixe, sans verrou, dont chaque élément
+ * reçoit un numéro de séquence croissant.
+ * Les écrivains réservent une case par incrément atomique et ne se bloquent jamais ;
+ * les lecteurs relisent à partir d'une séquence et ignorent les cases écrasées.
+ * La capacité doit rester grande devant le nombre d'écrivains simultanés.
+ */
+public class AnneauCirculaire<T> {
+
+    // Séquence d'une case en cours d'écriture
+    private static final long EN_ECRITURE = -1;
+
+    private final int masque;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong prochaineSequence = new AtomicLong(0);
+
+    public AnneauCirculaire(int capacite) {
+        if (capacite <= 0) {
+            throw new IllegalArgumentException("La capacité doit être positive: " + capacite);
+        }
+        // Arrondi à la puissance de deux supérieure pour indexer par masque
+        int taille = Integer.highestOneBit(capacite);
+        if (taille < capacite) taille <<= 1;
+
+        this.masque = taille - 1;
+        this.elements = new AtomicReferenceArray<>(taille);
+        this.sequences = new AtomicLongArray(taille);
+        for (int i = 0; i < taille; i++) {
+            sequences.set(i, EN_ECRITURE);
+        }
+    }
+
+    /**
+     * Ajoute un élément et retourne sa séquence
+     */
+    public long ajouter(T element) {
+        long sequence = prochaineSequence.getAndIncrement();
+        int indice = (int) (sequence & masque);
+        // Invalider la case avant d'y écrire pour qu'un lecteur ne puisse pas
+        // associer l'ancienne séquence au nouvel élément
+        sequences.set(indice, EN_ECRITURE);
+        elements.set(indice, element);
+        sequences.set(indice, sequence);
+        return sequence;
+    }
+
+    /**
+     * Transmet au consommateur les éléments publiés à partir de la séquence donnée,
+     * dans l'ordre, et retourne la séquence à demander lors de la lecture suivante.
+     * Les éléments déjà écrasés sont sautés.
+     */
+    public long lireDepuis(long sequence, Consumer<? super T> consommateur) {
+        long fin = prochaineSequence.get();
+        long courante = Math.max(sequence, fin - capacite());
+
+        while (courante < fin) {
+            int indice = (int) (courante & masque);
+            long publiee = sequences.get(indice);
+            if (publiee == courante) {
+                T element = elements.get(indice);
+                if (sequences.get(indice) == courante) {
+                    consommateur.accept(element);
+                }
+            } else if (publiee < courante) {
+                // Écriture pas encore terminée : reprendre ici la prochaine fois
+                break;
+            }
+            courante++;
+        }
+        return courante;
+    }
+
+    /**
+     * Retourne les éléments encore présents à partir de la séquence donnée
+     */
+    public List<T> depuis(long sequence) {
+        List<T> resultat = new ArrayList<>();
+        lireDepuis(sequence, resultat::add);
+        return resultat;
+    }
+
+    /**
+     * Séquence qui sera attribuée au prochain élément ajouté
+     */
+    public long getProchaineSequence() {
+        return prochaineSequence.get();
+    }
+
+    public int capacite() {
+        return masque + 1;
+    }
+}
@@ -0,0 +1,53 @@
+package com.chatapp.server;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Banc d'essai : ouvre N connexions inactives sur un serveur local
+ * et rapporte le nombre de threads et la mémoire résidente.
+ * Lancer une fois par mode pour comparer, chaque mesure dans sa propre JVM :
+ * <pre>java com.chatapp.server.BancConnexionsInactives VIRTUEL 50000</pre>
+ * Le nombre de descripteurs de fichiers (ulimit -n) doit dépasser 2 x N.
+ */
+public class BancConnexionsInactives {
+
+    public static void main(String[] args) throws Exception {
+        ModeServeur mode = args.length > 0 ? ModeServeur.valueOf(args[0]) : ModeServeur.VIRTUEL;
+        int nombre = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int port = args.length > 2 ? Integer.parseInt(args[2]) : 9000;
+
+        Server server = new Server(port, mode);
+        server.demarrer();
+        String avant = RapportRessources.resumer();
+
+        List<Socket> sockets = new ArrayList<>(nombre);
+        long debut = System.nanoTime();
+        try {
+            for (int i = 0; i < nombre; i++) {
+                sockets.add(new Socket("localhost", port));
+            }
+        } catch (IOException e) {
+            System.out.println("Arrêt après " + sockets.size() + " connexions: " + e.getMessage());
+        }
+        long dureeMs = (System.nanoTime() - debut) / 1_000_000;
+
+        // Laisser le serveur accepter et démarrer tous les handlers
+        while (server.getNombreClients() < sockets.size()) {
+            Thread.sleep(100);
+        }
+        Thread.sleep(1000);
+
+        System.out.printf("mode=%s connexions=%d ouverture=%d ms%n", mode.name(), sockets.size(), dureeMs);
+        System.out.println("  avant: " + avant);
+        System.out.println("  après: " + RapportRessources.resumer());
+
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        server.arreter();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,204 @@
+package com.chatapp.server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Boucle d'événements NIO : un thread et un sélecteur servent plusieurs connexions
+ */
+public class BoucleEvenements implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(BoucleEvenements.class.getName());
+
+    private final Server server;
+    private final Selector selecteur;
+    private final Queue<Runnable> taches = new ConcurrentLinkedQueue<>();
+    // Accédée uniquement depuis le thread de la boucle
+    private final PriorityQueue<TachePlanifiee> tachesPlanifiees =
+            new PriorityQueue<>(Comparator.comparingLong(TachePlanifiee::echeance));
+    // Tâches qui attendent que la prochaine sélection retire les clés annulées (thread de la boucle)
+    private final Queue<Runnable> apresDesinscription = new ArrayDeque<>();
+    private final Thread thread;
+    private volatile boolean isRunning = true;
+
+    public BoucleEvenements(Server server, int numero) throws IOException {
+        this.server = server;
+        this.selecteur = Selector.open();
+        this.thread = new Thread(this, "boucle-nio-" + numero);
+    }
+
+    /**
+     * Démarre le thread de la boucle
+     */
+    public void demarrer() {
+        thread.start();
+    }
+
+    /**
+     * Confie une nouvelle connexion acceptée à cette boucle
+     */
+    public void enregistrer(SocketChannel canal) {
+        executer(() -> {
+            try {
+                ConnexionNio connexion = new ConnexionNio(server, this, canal);
+                connexion.enregistrer(selecteur);
+                server.ajouterClient(connexion.getHandler());
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Erreur lors de l'enregistrement d'une connexion", e);
+                try {
+                    canal.close();
+                } catch (IOException ignored) {
+                    // Déjà en erreur
+                }
+            }
+        });
+    }
+
+    /**
+     * Exécute une tâche sur le thread de la boucle
+     */
+    public void executer(Runnable tache) {
+        taches.add(tache);
+        if (Thread.currentThread() != thread) {
+            selecteur.wakeup();
+        }
+    }
+
+    /**
+     * Exécute une tâche sur le thread de la boucle après un délai.
+     * La précision est celle du sélecteur : une milliseconde.
+     */
+    public void executerApres(Runnable tache, long delaiNanos) {
+        long echeance = System.nanoTime() + delaiNanos;
+        executer(() -> tachesPlanifiees.add(new TachePlanifiee(echeance, tache)));
+    }
+
+    /**
+     * Exécute une tâche après la prochaine sélection, une fois retirées du sélecteur les clés
+     * annulées : un canal ne peut repasser en mode bloquant qu'ensuite (thread de la boucle)
+     */
+    void executerApresDesinscription(Runnable tache) {
+        apresDesinscription.add(tache);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (isRunning) {
+                attendreEvenements();
+                for (int i = apresDesinscription.size(); i > 0; i--) {
+                    executerSansPropager(apresDesinscription.poll());
+                }
+                traiterCles();
+                // Les écritures demandées pendant le traitement des clés sont regroupées ici
+                executerTaches();
+                executerTachesPlanifiees();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (isRunning) {
+                LOGGER.log(Level.SEVERE, "Erreur dans la boucle d'événements", e);
+            }
+        } finally {
+            fermerConnexions();
+        }
+    }
+
+    private void attendreEvenements() throws IOException {
+        if (!taches.isEmpty() || !apresDesinscription.isEmpty()) {
+            selecteur.selectNow();
+            return;
+        }
+        TachePlanifiee prochaine = tachesPlanifiees.peek();
+        if (prochaine == null) {
+            selecteur.select();
+            return;
+        }
+        long restantNanos = prochaine.echeance() - System.nanoTime();
+        if (restantNanos <= 0) {
+            selecteur.selectNow();
+        } else {
+            selecteur.select(Math.max(1, restantNanos / 1_000_000));
+        }
+    }
+
+    private void executerTachesPlanifiees() {
+        long maintenant = System.nanoTime();
+        TachePlanifiee tache;
+        while ((tache = tachesPlanifiees.peek()) != null && tache.echeance() - maintenant <= 0) {
+            tachesPlanifiees.poll();
+            executerSansPropager(tache.tache());
+        }
+    }
+
+    private void executerTaches() {
+        Runnable tache;
+        while ((tache = taches.poll()) != null) {
+            executerSansPropager(tache);
+        }
+    }
+
+    /**
+     * Une exception dans une tâche ne doit pas arrêter la boucle et toutes ses connexions
+     */
+    private static void executerSansPropager(Runnable tache) {
+        try {
+            tache.run();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Erreur dans une tâche de la boucle d'événements", e);
+        }
+    }
+
+    private void traiterCles() {
+        Iterator<SelectionKey> iterateur = selecteur.selectedKeys().iterator();
+        while (iterateur.hasNext()) {
+            SelectionKey cle = iterateur.next();
+            iterateur.remove();
+
+            ConnexionNio connexion = (ConnexionNio) cle.attachment();
+            try {
+                if (cle.isValid() && cle.isReadable()) {
+                    connexion.lire();
+                }
+                if (cle.isValid() && cle.isWritable()) {
+                    connexion.ecrire();
+                }
+            } catch (RuntimeException e) {
+                // Seule la connexion fautive est fermée, pas la boucle
+                LOGGER.log(Level.SEVERE, "Erreur sur une connexion, fermée", e);
+                connexion.getHandler().fermer(RaisonDeconnexion.CONNEXION_PERDUE);
+            }
+        }
+    }
+
+    private void fermerConnexions() {
+        try {
+            for (SelectionKey cle : selecteur.keys()) {
+                ((ConnexionNio) cle.attachment()).getHandler().fermer(RaisonDeconnexion.ARRET_SERVEUR);
+            }
+            selecteur.close();
+        } catch (IOException | ClosedSelectorException e) {
+            LOGGER.log(Level.WARNING, "Erreur lors de la fermeture du sélecteur", e);
+        }
+    }
+
+    /**
+     * Arrête la boucle et ferme toutes ses connexions
+     */
+    public void arreter() {
+        isRunning = false;
+        selecteur.wakeup();
+    }
+
+    private record TachePlanifiee(long echeance, Runnable tache) {
+    }
+}
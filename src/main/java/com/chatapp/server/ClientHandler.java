@@ -1,76 +1,175 @@
 package com.chatapp.server;
 
+import com.chatapp.model.CodecMessage;
+import com.chatapp.model.EtapeTrace;
 import com.chatapp.model.Message;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Classe gérant la connexion avec un client
+ * Classe représentant l'état d'un client connecté.
+ * Les entrées/sorties sont déléguées à une {@link Connexion} fournie par le moteur.
  */
-public class ClientHandler implements Runnable {
-    private static final Logger LOGGER = Logger.getLogger(ClientHandler.class.getName());
+public class ClientHandler {
+
+    private static final int LONGUEUR_MAX_SALON = 64;
 
     private final Server server;
-    private final Socket clientSocket;
-    private ObjectInputStream in;
-    private ObjectOutputStream out;
-    private String nomUtilisateur;
-    private boolean isRunning = true;
+    private final Connexion connexion;
+    private volatile String nomUtilisateur;
+    private volatile int versionProtocole = CodecMessage.VERSION_SERIALISEE;
+    private final AtomicBoolean isRunning = new AtomicBoolean(true);
+    // Connexion refusée : plus rien n'est traité en attendant la fermeture
+    private volatile boolean refuse = false;
+    // Salons auxquels le client est abonné
+    private final Set<String> salons = ConcurrentHashMap.newKeySet();
+    // Débit du client, décompté par le thread qui lit la connexion (null : illimité)
+    private final LimiteurDebit limiteur;
+    private boolean limite = false;
+    // Suivi de la dernière trame reçue par la roue d'inactivité du serveur (null : non suivi)
+    private volatile RoueInactivite.Suivi<ClientHandler> suiviInactivite;
+    // Messages en direct retenus pendant un rattrapage, envoyés à sa suite (null hors rattrapage)
+    private final ReentrantLock verrouRattrapage = new ReentrantLock();
+    private List<MessageEncode> retenus;
+    private volatile boolean enRattrapage = false;
+    // Plus haute séquence couverte par le dernier rattrapage : une diffusion en retard
+    // de ces messages ne doit pas les livrer une seconde fois
+    private volatile long sequenceRattrapee = 0;
 
-    public ClientHandler(Server server, Socket clientSocket) {
+    public ClientHandler(Server server, Connexion connexion) {
         this.server = server;
-        this.clientSocket = clientSocket;
+        this.connexion = connexion;
+        ConfigurationServeur configuration = server.getConfiguration();
+        LimiteurDebit limiteurClient = new LimiteurDebit(configuration.getMessagesParSeconde(),
+                configuration.getOctetsParSeconde());
+        this.limiteur = limiteurClient.estActif() ? limiteurClient : null;
     }
 
-    @Override
-    public void run() {
-        try {
-            // Initialisation des flux d'entrée/sortie
-            out = new ObjectOutputStream(clientSocket.getOutputStream());
-            in = new ObjectInputStream(clientSocket.getInputStream());
-
-            // Boucle principale pour recevoir les messages
-            while (isRunning) {
-                try {
-                    Message message = (Message) in.readObject();
-                    traiterMessage(message);
-                } catch (ClassNotFoundException e) {
-                    LOGGER.log(Level.WARNING, "Objet inconnu reçu", e);
-                }
-            }
-        } catch (IOException e) {
-            if (isRunning) {
-                LOGGER.log(Level.INFO, "Client déconnecté: {0}",
-                        (nomUtilisateur != null ? nomUtilisateur : "Inconnu"));
-            }
-        } finally {
-            fermer();
+    /**
+     * Confie la connexion à la roue d'inactivité du serveur
+     */
+    void suivreInactivite(RoueInactivite.Suivi<ClientHandler> suivi) {
+        this.suiviInactivite = suivi;
+    }
+
+    /**
+     * Retire la connexion de la roue d'inactivité
+     */
+    void arreterSuiviInactivite() {
+        RoueInactivite.Suivi<ClientHandler> suivi = suiviInactivite;
+        if (suivi != null) {
+            suivi.annuler();
+            suiviInactivite = null;
+        }
+    }
+
+    /**
+     * Décompte une trame reçue et retourne la pause, en nanosecondes, pendant laquelle
+     * la connexion ne doit plus être lue. Appelée uniquement par le thread de lecture ;
+     * le client est prévenu au début de chaque période de limitation.
+     */
+    long decompterLecture(int octets, long maintenant) {
+        if (limiteur == null) return 0;
+
+        long pause = limiteur.consommer(octets, maintenant);
+        if (pause == 0) {
+            limite = false;
+            return 0;
+        }
+        server.getMetriques().lectureSuspendue();
+        if (!limite) {
+            limite = true;
+            signalerLimite(pause);
+        }
+        return pause;
+    }
+
+    /**
+     * Prévient le client que ses messages ne sont plus lus pendant la pause ;
+     * un client antérieur à la version 4 le reçoit comme une erreur
+     */
+    private void signalerLimite(long pauseNanos) {
+        long pauseMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(pauseNanos));
+        if (versionProtocole >= Message.TypeMessage.LIMITE.getVersionMinimale()) {
+            envoyerMessage(new Message("Serveur", String.valueOf(pauseMs), Message.TypeMessage.LIMITE));
+        } else {
+            envoyerErreur("Messages trop rapides : envoi suspendu pendant " + pauseMs + " ms");
         }
     }
 
     /**
      * Traite un message reçu selon son type
      */
-    private void traiterMessage(Message message) {
+    void traiterMessage(Message message) {
+        RoueInactivite.Suivi<ClientHandler> suivi = suiviInactivite;
+        if (suivi != null) {
+            suivi.marquerActivite();
+        }
+        if (refuse) return;
+        message.marquer(EtapeTrace.RECEPTION_SERVEUR);
+        // Seul le serveur numérote : la séquence envoyée par un client est la dernière qu'il a reçue
+        long derniereSequence = message.getSequence();
+        message.setSequence(0);
+        // De même, l'expéditeur est celui de la session et non celui annoncé par le client
+        if (nomUtilisateur != null) {
+            message.setExpediteur(nomUtilisateur);
+        }
+
         switch (message.getType()) {
             case CONNEXION:
-                nomUtilisateur = message.getExpediteur();
-                server.ajouterAuJournal("Nouvel utilisateur connecté: " + nomUtilisateur);
-                server.diffuser(message);
-                server.envoyerListeUtilisateurs();
+            case REPRISE:
+                if (nomUtilisateur == null) {
+                    ouvrirSession(message, derniereSequence);
+                }
                 break;
 
             case DECONNEXION:
-                server.diffuser(message);
-                fermer();
+                // Avant la CONNEXION, il n'y a personne dont annoncer le départ
+                if (nomUtilisateur != null) {
+                    server.diffuser(message);
+                    server.relayer(message);
+                }
+                fermer(RaisonDeconnexion.DEMANDEE);
                 break;
 
             case MESSAGE:
-                server.diffuser(message);
+                // Seuls les abonnés d'un salon peuvent y écrire
+                if (salons.contains(message.getSalon())) {
+                    server.diffuserDansSalon(message);
+                    server.relayer(message);
+                }
+                break;
+
+            case REJOINDRE_SALON:
+                if (nomUtilisateur != null && estNomSalonValide(message.getSalon())
+                        && server.rejoindreSalon(this, message.getSalon())) {
+                    // Annoncé à tout le salon, nouvel abonné compris
+                    server.diffuserDansSalon(message);
+                }
+                break;
+
+            case DIRECT:
+                if (nomUtilisateur != null && message.getDestinataire() != null) {
+                    server.envoyerDirect(this, message);
+                }
+                break;
+
+            case PING:
+                // Renvoyé tel quel : le client mesure l'aller-retour et sait que le serveur répond
+                envoyerMessage(new Message("Serveur", message.getContenu(), Message.TypeMessage.PONG));
+                break;
+
+            case QUITTER_SALON:
+                if (salons.contains(message.getSalon())) {
+                    // Annoncé avant de partir pour que le client reçoive la confirmation
+                    server.diffuserDansSalon(message);
+                    server.quitterSalon(this, message.getSalon());
+                }
                 break;
 
             default:
@@ -79,38 +178,257 @@ public class ClientHandler implements Runnable {
     }
 
     /**
-     * Envoie un message au client
+     * Réserve le nom, annonce la version négociée puis abonne le client et annonce son arrivée.
+     * Seule une REPRISE qui présente le dernier jeton remis pour ce nom reprend la session :
+     * elle réabonne le client aux salons qu'il liste et ne rejoue que les messages postérieurs
+     * à sa dernière séquence. Sans jeton valide, elle vaut une simple connexion.
+     */
+    private void ouvrirSession(Message message, long derniereSequence) {
+        // La version n'est annoncée qu'une fois le nom réservé : un client refusé ne doit
+        // pas se croire accepté, mais le refus part déjà dans le format qu'il comprend
+        versionProtocole = Math.max(CodecMessage.VERSION_SERIALISEE,
+                Math.min(message.getVersionProtocole(), CodecMessage.VERSION_COURANTE));
+        if (versionProtocole < CodecMessage.VERSION_BATTEMENT) {
+            // Un ancien client n'envoie pas de battement : son silence ne prouve rien
+            arreterSuiviInactivite();
+        }
+        List<String> lignes = lireLignes(message.getType() == Message.TypeMessage.REPRISE
+                ? message.getContenu() : null);
+        boolean reprise = !lignes.isEmpty()
+                && server.verifierJeton(message.getExpediteur(), lignes.get(0));
+        if (!reserverNom(message.getExpediteur(), reprise)) {
+            refuserConnexion("Nom d'utilisateur indisponible: " + message.getExpediteur());
+            return;
+        }
+        annoncerVersion();
+        envoyerMessage(new Message("Serveur", server.emettreJeton(nomUtilisateur), Message.TypeMessage.REPRISE));
+
+        Message annonce = message;
+        if (reprise) {
+            int rejoues = server.reprendre(this, derniereSequence, lireSalons(lignes.subList(1, lignes.size())));
+            server.ajouterAuJournal("Utilisateur reconnecté: " + nomUtilisateur
+                    + (rejoues < 0 ? " (historique rejoué)" : " (" + rejoues + " messages rejoués)"));
+            annonce = new Message(nomUtilisateur, "s'est reconnecté", Message.TypeMessage.CONNEXION);
+        } else {
+            server.accueillir(this);
+            server.ajouterAuJournal("Nouvel utilisateur connecté: " + nomUtilisateur);
+            if (message.getType() == Message.TypeMessage.REPRISE) {
+                annonce = new Message(nomUtilisateur, "vient de rejoindre le chat", Message.TypeMessage.CONNEXION);
+            }
+        }
+        server.diffuser(annonce);
+        server.relayer(annonce);
+        server.annoncerArrivee(this);
+    }
+
+    /**
+     * Lignes d'une REPRISE : le jeton de reprise puis les salons, un par ligne
+     */
+    private static List<String> lireLignes(String contenu) {
+        if (contenu == null || contenu.isEmpty()) return List.of();
+        return List.of(contenu.split("\n"));
+    }
+
+    /**
+     * Salons valides listés dans une REPRISE
+     */
+    private static List<String> lireSalons(List<String> lignes) {
+        List<String> salonsRepris = new ArrayList<>();
+        for (String salon : lignes) {
+            if (estNomSalonValide(salon)) {
+                salonsRepris.add(salon);
+            }
+        }
+        return salonsRepris;
+    }
+
+    /**
+     * Réserve le nom demandé dans l'index des utilisateurs du serveur ; une reprise
+     * au jeton vérifié ferme l'ancienne connexion qui le détiendrait encore
+     */
+    private boolean reserverNom(String nom, boolean reprise) {
+        if (nom == null || nom.isBlank()) return false;
+        boolean reserve = reprise ? server.reprendreNom(this, nom) : server.reserverNom(this, nom);
+        if (!reserve) return false;
+
+        nomUtilisateur = nom;
+        // Fermé entre-temps : supprimerClient a pu passer avant que le nom soit connu
+        if (!estActif()) {
+            server.libererNom(this);
+        }
+        return true;
+    }
+
+    /**
+     * Explique au client le refus de sa connexion puis ferme celle-ci
+     */
+    private void refuserConnexion(String raison) {
+        refuse = true;
+        server.ajouterAuJournal("Connexion refusée: " + raison);
+        envoyerErreur(raison);
+        connexion.fermerApresEnvoi();
+    }
+
+    /**
+     * Ferme la session après lui avoir signalé pourquoi, par exemple un nom
+     * découvert en double sur un autre nœud de la fédération
+     */
+    void evincer(String raison) {
+        server.ajouterAuJournal("Session fermée: " + raison);
+        envoyerErreur(raison);
+        connexion.fermerApresEnvoi();
+    }
+
+    /**
+     * Signale une erreur au client ; un client de version 1 la reçoit comme un message du serveur
+     */
+    public void envoyerErreur(String texte) {
+        Message.TypeMessage type = versionProtocole >= Message.TypeMessage.ERREUR.getVersionMinimale()
+                ? Message.TypeMessage.ERREUR
+                : Message.TypeMessage.MESSAGE;
+        envoyerMessage(new Message("Serveur", texte, type));
+    }
+
+    private static boolean estNomSalonValide(String salon) {
+        // Sans saut de ligne : il sépare les salons d'une REPRISE
+        return !salon.isBlank() && salon.length() <= LONGUEUR_MAX_SALON && salon.equals(salon.strip())
+                && salon.indexOf('\n') < 0;
+    }
+
+    /**
+     * Annonce au client la plus haute version commune, une fois son nom réservé.
+     * Les anciens clients n'annoncent aucune version et restent en version 1.
+     */
+    private void annoncerVersion() {
+        if (versionProtocole <= CodecMessage.VERSION_SERIALISEE) return;
+        envoyerMessage(new Message("Serveur", String.valueOf(versionProtocole), Message.TypeMessage.VERSION));
+    }
+
+    /**
+     * Envoie un message au client, encodé selon la version négociée
      */
     public void envoyerMessage(Message message) {
+        envoyerMessage(new MessageEncode(message));
+    }
+
+    /**
+     * Envoie un message déjà encodé, partagé entre plusieurs destinataires
+     */
+    public void envoyerMessage(MessageEncode message) {
+        long sequence = message.getMessage().getSequence();
+        if (sequence != 0 && sequence <= sequenceRattrapee) return;
+        if (enRattrapage && retenir(message)) return;
+        envoyerTrame(message);
+    }
+
+    /**
+     * Envoie un message rejoué pendant le rattrapage, avant les messages retenus
+     */
+    void envoyerRattrapage(MessageEncode message) {
+        envoyerTrame(message);
+    }
+
+    private void envoyerTrame(MessageEncode message) {
+        if (!isRunning.get()) return;
+        // Un client ne peut pas décoder un type plus récent que sa version
+        if (message.getMessage().getType().getVersionMinimale() > versionProtocole) return;
+
+        connexion.envoyer(message.trame(versionProtocole));
+    }
+
+    /**
+     * Retient les messages en direct jusqu'à la fin du rattrapage. Appelée sous le verrou
+     * des séquences avec la dernière séquence attribuée : les messages jusqu'à celle-ci sont
+     * rejoués ou antérieurs à l'arrivée, leur diffusion encore en cours n'est pas livrée.
+     */
+    void commencerRattrapage(long sequenceRattrapee) {
+        this.sequenceRattrapee = sequenceRattrapee;
+        verrouRattrapage.lock();
         try {
-            out.writeObject(message);
-            out.flush();
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Erreur lors de l'envoi d'un message à " + nomUtilisateur, e);
-            fermer();
+            retenus = new ArrayList<>();
+            enRattrapage = true;
+        } finally {
+            verrouRattrapage.unlock();
+        }
+    }
+
+    /**
+     * Envoie les messages retenus, dans leur ordre d'arrivée, puis reprend les envois directs.
+     * Les envois se font hors du verrou : un client lent fermé en chemin annonce son départ
+     * aux autres clients, dont certains peuvent être en rattrapage.
+     */
+    void terminerRattrapage() {
+        while (true) {
+            List<MessageEncode> lot;
+            verrouRattrapage.lock();
+            try {
+                lot = retenus;
+                if (lot.isEmpty()) {
+                    retenus = null;
+                    enRattrapage = false;
+                    return;
+                }
+                retenus = new ArrayList<>();
+            } finally {
+                verrouRattrapage.unlock();
+            }
+            for (MessageEncode message : lot) {
+                envoyerTrame(message);
+            }
+        }
+    }
+
+    private boolean retenir(MessageEncode message) {
+        verrouRattrapage.lock();
+        try {
+            if (retenus == null) return false;
+            retenus.add(message);
+            return true;
+        } finally {
+            verrouRattrapage.unlock();
         }
     }
 
     /**
      * Ferme la connexion avec le client
      */
-    public void fermer() {
-        if (!isRunning) return;
+    public void fermer(RaisonDeconnexion raison) {
+        if (!isRunning.compareAndSet(true, false)) return;
 
-        isRunning = false;
+        // Une connexion refusée se ferme d'elle-même une fois l'erreur envoyée
+        server.getMetriques().deconnexion(refuse ? RaisonDeconnexion.REFUSEE : raison);
+        arreterSuiviInactivite();
 
         try {
-            if (out != null) out.close();
-            if (in != null) in.close();
-            if (clientSocket != null && !clientSocket.isClosed()) clientSocket.close();
-        } catch (IOException e) {
-            LOGGER.log(Level.SEVERE, "Erreur lors de la fermeture de la connexion", e);
+            connexion.fermer();
         } finally {
             server.supprimerClient(this);
         }
     }
 
+    /**
+     * Vérifie si la connexion avec le client est active
+     */
+    public boolean estActif() {
+        return isRunning.get();
+    }
+
+    /**
+     * Nombre de trames en attente d'envoi vers ce client
+     */
+    public int getProfondeurFile() {
+        return connexion.getProfondeurFile();
+    }
+
+    Set<String> getSalons() {
+        return salons;
+    }
+
+    public int getVersionProtocole() {
+        return versionProtocole;
+    }
+
     public String getNomUtilisateur() {
         return nomUtilisateur;
     }
-}
\ No newline at end of file
+}
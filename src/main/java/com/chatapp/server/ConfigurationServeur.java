@@ -0,0 +1,274 @@
+package com.chatapp.server;
+
+import com.chatapp.model.CodecMessage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Paramètres de fonctionnement du serveur
+ */
+public class ConfigurationServeur {
+
+    private int capaciteFileSortante = 1024;
+    private PolitiqueConsommateurLent politiqueConsommateurLent = PolitiqueConsommateurLent.SUPPRIMER_PLUS_ANCIEN;
+    private long delaiRegroupementMicros = 0;
+    private int tailleLotOctets = 64 * 1024;
+    private int capaciteJournal = 4096;
+    private Path repertoireHistorique = null;
+    private int tailleSegmentHistorique = 16 * 1024 * 1024;
+    private int segmentsHistoriqueConserves = 8;
+    private int messagesRejoues = 50;
+    private int portFederation = 0;
+    private InetAddress interfaceFederation = InetAddress.getLoopbackAddress();
+    private Set<InetAddress> pairsAutorises = Set.of();
+    private List<InetSocketAddress> pairs = List.of();
+    private int messagesParSeconde = 50;
+    private int octetsParSeconde = 256 * 1024;
+    private long delaiInactiviteMs = 60_000;
+    private int capaciteReprise = 4096;
+
+    /**
+     * Nombre maximal de trames en attente d'envoi pour un client
+     */
+    public int getCapaciteFileSortante() {
+        return capaciteFileSortante;
+    }
+
+    public void setCapaciteFileSortante(int capaciteFileSortante) {
+        if (capaciteFileSortante <= 0) {
+            throw new IllegalArgumentException("La capacité doit être positive: " + capaciteFileSortante);
+        }
+        this.capaciteFileSortante = capaciteFileSortante;
+    }
+
+    public PolitiqueConsommateurLent getPolitiqueConsommateurLent() {
+        return politiqueConsommateurLent;
+    }
+
+    public void setPolitiqueConsommateurLent(PolitiqueConsommateurLent politiqueConsommateurLent) {
+        this.politiqueConsommateurLent = politiqueConsommateurLent;
+    }
+
+    /**
+     * Délai maximal pendant lequel une trame peut attendre d'autres trames
+     * avant d'être envoyée. 0 envoie dès que la file sortante est vide :
+     * seules les rafales déjà en file sont regroupées.
+     * Une valeur plus grande favorise le débit au détriment de la latence.
+     */
+    public long getDelaiRegroupementMicros() {
+        return delaiRegroupementMicros;
+    }
+
+    public void setDelaiRegroupementMicros(long delaiRegroupementMicros) {
+        if (delaiRegroupementMicros < 0) {
+            throw new IllegalArgumentException("Le délai ne peut pas être négatif: " + delaiRegroupementMicros);
+        }
+        this.delaiRegroupementMicros = delaiRegroupementMicros;
+    }
+
+    /**
+     * Nombre d'octets regroupés au-delà duquel l'envoi est forcé.
+     * 0 envoie chaque trame séparément.
+     */
+    public int getTailleLotOctets() {
+        return tailleLotOctets;
+    }
+
+    public void setTailleLotOctets(int tailleLotOctets) {
+        if (tailleLotOctets < 0) {
+            throw new IllegalArgumentException("La taille de lot ne peut pas être négative: " + tailleLotOctets);
+        }
+        this.tailleLotOctets = tailleLotOctets;
+    }
+
+    /**
+     * Nombre d'entrées conservées par le journal du serveur
+     */
+    public int getCapaciteJournal() {
+        return capaciteJournal;
+    }
+
+    public void setCapaciteJournal(int capaciteJournal) {
+        if (capaciteJournal <= 0) {
+            throw new IllegalArgumentException("La capacité doit être positive: " + capaciteJournal);
+        }
+        this.capaciteJournal = capaciteJournal;
+    }
+
+    /**
+     * Répertoire de l'historique des messages sur disque, null pour ne rien conserver.
+     * Aucun par défaut : un répertoire relatif au répertoire courant serait partagé
+     * par des serveurs lancés au même endroit sur des ports différents.
+     */
+    public Path getRepertoireHistorique() {
+        return repertoireHistorique;
+    }
+
+    public void setRepertoireHistorique(Path repertoireHistorique) {
+        this.repertoireHistorique = repertoireHistorique;
+    }
+
+    /**
+     * Taille d'un fichier de l'historique ; doit pouvoir contenir le plus grand message
+     */
+    public int getTailleSegmentHistorique() {
+        return tailleSegmentHistorique;
+    }
+
+    public void setTailleSegmentHistorique(int tailleSegmentHistorique) {
+        if (tailleSegmentHistorique < 2 * CodecMessage.TAILLE_MAX_CHARGE) {
+            throw new IllegalArgumentException("Segment plus petit que deux messages maximaux: " + tailleSegmentHistorique);
+        }
+        this.tailleSegmentHistorique = tailleSegmentHistorique;
+    }
+
+    /**
+     * Nombre de fichiers conservés ; les plus anciens sont supprimés au-delà
+     */
+    public int getSegmentsHistoriqueConserves() {
+        return segmentsHistoriqueConserves;
+    }
+
+    public void setSegmentsHistoriqueConserves(int segmentsHistoriqueConserves) {
+        if (segmentsHistoriqueConserves <= 0) {
+            throw new IllegalArgumentException("Le nombre de segments doit être positif: " + segmentsHistoriqueConserves);
+        }
+        this.segmentsHistoriqueConserves = segmentsHistoriqueConserves;
+    }
+
+    /**
+     * Nombre de messages de l'historique envoyés à un utilisateur qui se connecte
+     */
+    public int getMessagesRejoues() {
+        return messagesRejoues;
+    }
+
+    public void setMessagesRejoues(int messagesRejoues) {
+        if (messagesRejoues < 0) {
+            throw new IllegalArgumentException("Le nombre de messages ne peut pas être négatif: " + messagesRejoues);
+        }
+        this.messagesRejoues = messagesRejoues;
+    }
+
+    /**
+     * Port sur lequel les autres nœuds de la fédération se connectent, 0 pour n'en accepter aucun
+     */
+    public int getPortFederation() {
+        return portFederation;
+    }
+
+    public void setPortFederation(int portFederation) {
+        if (portFederation < 0 || portFederation > 65535) {
+            throw new IllegalArgumentException("Port de fédération invalide: " + portFederation);
+        }
+        this.portFederation = portFederation;
+    }
+
+    /**
+     * Interface sur laquelle écoute le port de fédération, la boucle locale par défaut.
+     * Les pairs ne s'authentifient pas : n'ouvrir le port à d'autres machines
+     * que sur un réseau de confiance, de préférence avec {@link #setPairsAutorises}.
+     */
+    public InetAddress getInterfaceFederation() {
+        return interfaceFederation;
+    }
+
+    public void setInterfaceFederation(InetAddress interfaceFederation) {
+        if (interfaceFederation == null) {
+            throw new IllegalArgumentException("L'interface de fédération est obligatoire");
+        }
+        this.interfaceFederation = interfaceFederation;
+    }
+
+    /**
+     * Adresses dont le port de fédération accepte les liaisons, vide pour toutes
+     */
+    public Set<InetAddress> getPairsAutorises() {
+        return pairsAutorises;
+    }
+
+    public void setPairsAutorises(Set<InetAddress> pairsAutorises) {
+        if (pairsAutorises == null) {
+            throw new IllegalArgumentException("La liste des pairs autorisés est obligatoire");
+        }
+        this.pairsAutorises = Set.copyOf(pairsAutorises);
+    }
+
+    /**
+     * Nœuds auxquels ce serveur se connecte ; chaque paire de nœuds ne doit être
+     * déclarée que d'un seul côté pour n'ouvrir qu'une liaison
+     */
+    public List<InetSocketAddress> getPairs() {
+        return pairs;
+    }
+
+    public void setPairs(List<InetSocketAddress> pairs) {
+        if (pairs == null) {
+            throw new IllegalArgumentException("La liste des pairs est obligatoire");
+        }
+        this.pairs = List.copyOf(pairs);
+    }
+
+    /**
+     * Débit maximal d'un client en messages par seconde, 0 pour ne pas limiter.
+     * Un client plus rapide n'est plus lu le temps de revenir sous la limite.
+     */
+    public int getMessagesParSeconde() {
+        return messagesParSeconde;
+    }
+
+    public void setMessagesParSeconde(int messagesParSeconde) {
+        if (messagesParSeconde < 0) {
+            throw new IllegalArgumentException("Le débit ne peut pas être négatif: " + messagesParSeconde);
+        }
+        this.messagesParSeconde = messagesParSeconde;
+    }
+
+    /**
+     * Débit maximal d'un client en octets par seconde, 0 pour ne pas limiter
+     */
+    public int getOctetsParSeconde() {
+        return octetsParSeconde;
+    }
+
+    public void setOctetsParSeconde(int octetsParSeconde) {
+        if (octetsParSeconde < 0) {
+            throw new IllegalArgumentException("Le débit ne peut pas être négatif: " + octetsParSeconde);
+        }
+        this.octetsParSeconde = octetsParSeconde;
+    }
+
+    /**
+     * Durée sans aucune trame reçue après laquelle une connexion est fermée, 0 pour ne jamais fermer.
+     * Les clients de version 5 envoient un battement bien plus souvent ; les plus anciens,
+     * qui n'en envoient pas, ne sont suivis que jusqu'à leur CONNEXION.
+     */
+    public long getDelaiInactiviteMs() {
+        return delaiInactiviteMs;
+    }
+
+    public void setDelaiInactiviteMs(long delaiInactiviteMs) {
+        if (delaiInactiviteMs < 0) {
+            throw new IllegalArgumentException("Le délai ne peut pas être négatif: " + delaiInactiviteMs);
+        }
+        this.delaiInactiviteMs = delaiInactiviteMs;
+    }
+
+    /**
+     * Nombre de messages de salon et directs gardés en mémoire pour les clients qui reprennent
+     * leur session après une coupure ; au-delà, ils reçoivent l'historique sur disque
+     */
+    public int getCapaciteReprise() {
+        return capaciteReprise;
+    }
+
+    public void setCapaciteReprise(int capaciteReprise) {
+        if (capaciteReprise <= 0) {
+            throw new IllegalArgumentException("La capacité doit être positive: " + capaciteReprise);
+        }
+        this.capaciteReprise = capaciteReprise;
+    }
+}
@@ -0,0 +1,27 @@
+package com.chatapp.server;
+
+/**
+ * Transport réseau d'un client, indépendant du moteur d'entrées/sorties
+ */
+public interface Connexion {
+
+    /**
+     * Dépose une trame déjà encodée dans la file sortante du client, sans bloquer
+     */
+    void envoyer(byte[] trame);
+
+    /**
+     * Nombre de trames en attente d'envoi
+     */
+    int getProfondeurFile();
+
+    /**
+     * Ferme le transport une fois envoyées les trames déjà déposées
+     */
+    void fermerApresEnvoi();
+
+    /**
+     * Ferme le transport sous-jacent
+     */
+    void fermer();
+}
@@ -0,0 +1,236 @@
+package com.chatapp.server;
+
+import com.chatapp.model.CodecMessage;
+import com.chatapp.model.Message;
+import com.chatapp.model.TrameInvalideException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.SequenceInputStream;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Connexion bloquante : un thread dédié lit les trames du client
+ * et un second vide sa file sortante.
+ * Elle sert aussi les clients d'avant le découpage en trames, par un flux d'objets brut.
+ */
+public class ConnexionBloquante implements Connexion, Runnable {
+    private static final Logger LOGGER = Logger.getLogger(ConnexionBloquante.class.getName());
+    private static final int TAILLE_TAMPON_ECRITURE = 64 * 1024;
+
+    private final Socket clientSocket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Server server;
+    private final ClientHandler handler;
+    private final FileSortante fileSortante;
+    private volatile Thread threadLecture;
+    private volatile Thread threadEcriture;
+    // Client d'avant le découpage en trames : ses trames lui sont écrites en flux d'objets brut
+    private volatile boolean fluxObjets = false;
+
+    public ConnexionBloquante(Server server, Socket clientSocket) throws IOException {
+        this(server, clientSocket, clientSocket.getInputStream());
+    }
+
+    /**
+     * Connexion dont les premiers octets ont déjà été lus par un autre moteur
+     */
+    public ConnexionBloquante(Server server, Socket clientSocket, byte[] dejaLus) throws IOException {
+        this(server, clientSocket, new SequenceInputStream(new ByteArrayInputStream(dejaLus),
+                clientSocket.getInputStream()));
+    }
+
+    private ConnexionBloquante(Server server, Socket clientSocket, InputStream entree) throws IOException {
+        this.clientSocket = clientSocket;
+        this.in = new DataInputStream(new BufferedInputStream(entree));
+        this.out = new DataOutputStream(new BufferedOutputStream(clientSocket.getOutputStream(), TAILLE_TAMPON_ECRITURE));
+        this.server = server;
+        this.handler = new ClientHandler(server, this);
+        this.fileSortante = server.creerFileSortante();
+    }
+
+    @Override
+    public void run() {
+        threadLecture = Thread.currentThread();
+        try {
+            // Boucle principale pour recevoir les messages
+            while (handler.estActif()) {
+                int longueur = in.readInt();
+                if (longueur == CodecMessage.ENTETE_FLUX_OBJETS) {
+                    lireFluxObjets();
+                    return;
+                }
+                CodecMessage.verifierLongueur(longueur);
+                byte[] charge = new byte[longueur];
+                in.readFully(charge);
+                server.getMetriques().messageRecu(CodecMessage.TAILLE_ENTETE + longueur);
+                try {
+                    Message message = CodecMessage.decoder(charge, 0, longueur);
+                    handler.traiterMessage(message);
+                } catch (TrameInvalideException e) {
+                    LOGGER.log(Level.WARNING, "Trame invalide reçue", e);
+                }
+
+                // Client trop rapide : ne plus le lire, TCP le ralentit au lieu que le serveur accumule
+                long pause = handler.decompterLecture(CodecMessage.TAILLE_ENTETE + longueur, System.nanoTime());
+                if (pause > 0) {
+                    TimeUnit.NANOSECONDS.sleep(pause);
+                }
+            }
+        } catch (IOException e) {
+            if (handler.estActif()) {
+                LOGGER.log(Level.INFO, "Client déconnecté: {0}",
+                        (handler.getNomUtilisateur() != null ? handler.getNomUtilisateur() : "Inconnu"));
+            }
+        } catch (InterruptedException e) {
+            // Connexion fermée pendant la pause
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Erreur lors du traitement d'un message de " + handler.getNomUtilisateur(), e);
+        } finally {
+            handler.fermer(RaisonDeconnexion.CONNEXION_PERDUE);
+        }
+    }
+
+    /**
+     * Boucle de lecture d'un client d'avant le découpage en trames, qui écrit un flux
+     * ObjectOutputStream brut et attend l'entête du flux du serveur avant sa CONNEXION.
+     * Un objet invalide désynchronise le flux : la connexion est alors fermée.
+     */
+    private void lireFluxObjets() throws IOException, InterruptedException {
+        fileSortante.deposer(CodecMessage.enteteFluxObjets());
+        fluxObjets = true;
+        ObjectInputStream flux = CodecMessage.ouvrirFluxObjets(in);
+        while (handler.estActif()) {
+            Message message;
+            try {
+                message = CodecMessage.lireObjet(flux);
+            } catch (TrameInvalideException e) {
+                LOGGER.log(Level.WARNING, "Objet invalide reçu d'un client en flux d'objets", e);
+                return;
+            }
+            // La taille d'un objet n'est pas connue : seul le nombre de messages est limité
+            server.getMetriques().messageRecu(0);
+            handler.traiterMessage(message);
+            long pause = handler.decompterLecture(0, System.nanoTime());
+            if (pause > 0) {
+                TimeUnit.NANOSECONDS.sleep(pause);
+            }
+        }
+    }
+
+    /**
+     * Boucle d'écriture : envoie les trames de la file sortante au client.
+     * Les trames disponibles sont regroupées dans le tampon et envoyées en un seul
+     * flush, dès que la file est vide (après le délai de regroupement éventuel)
+     * ou que la taille de lot est atteinte.
+     */
+    public void ecrire() {
+        threadEcriture = Thread.currentThread();
+        ConfigurationServeur configuration = server.getConfiguration();
+        long delaiNanos = TimeUnit.MICROSECONDS.toNanos(configuration.getDelaiRegroupementMicros());
+        int tailleLot = configuration.getTailleLotOctets();
+        try {
+            while (handler.estActif()) {
+                byte[] trame = fileSortante.prendre();
+                int enAttente = 0;
+                int tramesEnAttente = 0;
+                long echeance = System.nanoTime() + delaiNanos;
+
+                while (trame != null) {
+                    if (trame == FileSortante.FIN) {
+                        vider(tramesEnAttente, enAttente);
+                        return;
+                    }
+                    out.write(trame);
+                    enAttente += trame.length;
+                    tramesEnAttente++;
+                    if (enAttente >= tailleLot) {
+                        vider(tramesEnAttente, enAttente);
+                        enAttente = 0;
+                        tramesEnAttente = 0;
+                        echeance = System.nanoTime() + delaiNanos;
+                    }
+
+                    trame = fileSortante.retirer();
+                    if (trame == null && enAttente > 0 && delaiNanos > 0) {
+                        long restant = echeance - System.nanoTime();
+                        if (restant > 0) {
+                            trame = fileSortante.prendre(restant);
+                        }
+                    }
+                }
+                if (enAttente > 0) {
+                    vider(tramesEnAttente, enAttente);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Connexion fermée pendant l'attente
+        } catch (IOException e) {
+            if (handler.estActif()) {
+                LOGGER.log(Level.SEVERE, "Erreur lors de l'envoi d'un message à " + handler.getNomUtilisateur(), e);
+            }
+        } finally {
+            handler.fermer(RaisonDeconnexion.CONNEXION_PERDUE);
+        }
+    }
+
+    /**
+     * Envoie les trames écrites dans le tampon et les compte
+     */
+    private void vider(int trames, int octets) throws IOException {
+        out.flush();
+        server.getMetriques().tramesEnvoyees(trames, octets);
+    }
+
+    @Override
+    public void envoyer(byte[] trame) {
+        if (fluxObjets && trame != FileSortante.FIN) {
+            trame = CodecMessage.versFluxObjets(trame);
+        }
+        if (!fileSortante.deposer(trame)) {
+            server.deconnecterClientLent(handler);
+        }
+    }
+
+    @Override
+    public void fermerApresEnvoi() {
+        envoyer(FileSortante.FIN);
+    }
+
+    @Override
+    public int getProfondeurFile() {
+        return fileSortante.getProfondeur();
+    }
+
+    @Override
+    public void fermer() {
+        fileSortante.vider();
+        Thread ecrivain = threadEcriture;
+        if (ecrivain != null) {
+            ecrivain.interrupt();
+        }
+        // Réveille le lecteur s'il observe une pause de limitation
+        Thread lecteur = threadLecture;
+        if (lecteur != null && lecteur != Thread.currentThread()) {
+            lecteur.interrupt();
+        }
+        try {
+            if (!clientSocket.isClosed()) clientSocket.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Erreur lors de la fermeture de la connexion", e);
+        }
+    }
+
+    public ClientHandler getHandler() {
+        return handler;
+    }
+}
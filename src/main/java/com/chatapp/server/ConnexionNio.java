@@ -0,0 +1,304 @@
+package com.chatapp.server;
+
+import com.chatapp.model.CodecMessage;
+import com.chatapp.model.Message;
+import com.chatapp.model.TrameInvalideException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Connexion non bloquante servie par une {@link BoucleEvenements}.
+ * Les lectures et écritures ont lieu exclusivement sur le thread de la boucle ;
+ * les autres threads déposent leurs trames dans la file sortante.
+ */
+public class ConnexionNio implements Connexion {
+    private static final Logger LOGGER = Logger.getLogger(ConnexionNio.class.getName());
+    private static final int TAILLE_TAMPON_LECTURE = 8 * 1024;
+    private static final int TRAMES_MAX_PAR_ECRITURE = 64;
+
+    private final SocketChannel canal;
+    private final BoucleEvenements boucle;
+    private final Server server;
+    private final ClientHandler handler;
+    private SelectionKey cle;
+    private ByteBuffer tamponLecture = ByteBuffer.allocate(TAILLE_TAMPON_LECTURE);
+    private final FileSortante fileSortante;
+    // Lot de trames envoyé par une écriture groupée ; [debutLot, finLot) reste à écrire
+    private final ByteBuffer[] lot = new ByteBuffer[TRAMES_MAX_PAR_ECRITURE];
+    private int debutLot = 0;
+    private int finLot = 0;
+    private final long delaiRegroupementNanos;
+    private final int tailleLotOctets;
+    private final AtomicBoolean ecritureProgrammee = new AtomicBoolean(false);
+    private boolean fermetureDemandee = false;
+    // Client au-delà de son débit : OP_READ retiré jusqu'à la fin de la pause
+    private boolean lectureSuspendue = false;
+
+    public ConnexionNio(Server server, BoucleEvenements boucle, SocketChannel canal) throws IOException {
+        this.canal = canal;
+        this.boucle = boucle;
+        this.server = server;
+        this.handler = new ClientHandler(server, this);
+        this.fileSortante = server.creerFileSortante();
+        this.delaiRegroupementNanos = TimeUnit.MICROSECONDS.toNanos(
+                server.getConfiguration().getDelaiRegroupementMicros());
+        this.tailleLotOctets = server.getConfiguration().getTailleLotOctets();
+        canal.configureBlocking(false);
+    }
+
+    void enregistrer(Selector selecteur) throws IOException {
+        cle = canal.register(selecteur, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Lit les octets disponibles et traite chaque trame complète
+     */
+    void lire() {
+        try {
+            int lus = canal.read(tamponLecture);
+            if (lus < 0) {
+                handler.fermer(RaisonDeconnexion.CONNEXION_PERDUE);
+                return;
+            }
+            traiterTrames();
+
+        } catch (IOException e) {
+            if (handler.estActif()) {
+                LOGGER.log(Level.INFO, "Client déconnecté: {0}",
+                        (handler.getNomUtilisateur() != null ? handler.getNomUtilisateur() : "Inconnu"));
+            }
+            handler.fermer(RaisonDeconnexion.CONNEXION_PERDUE);
+        }
+    }
+
+    /**
+     * Traite les trames complètes du tampon de lecture. Si le client dépasse son débit,
+     * les trames restantes attendent dans le tampon et le canal n'est plus lu
+     * jusqu'à la fin de la pause : le client est ralenti par TCP.
+     */
+    private void traiterTrames() throws IOException {
+        long maintenant = System.nanoTime();
+        long pause = 0;
+        tamponLecture.flip();
+        while (pause == 0 && tamponLecture.remaining() >= CodecMessage.TAILLE_ENTETE && handler.estActif()) {
+            int position = tamponLecture.position();
+            int longueur = tamponLecture.getInt(position);
+            if (longueur == CodecMessage.ENTETE_FLUX_OBJETS) {
+                byte[] dejaLus = new byte[tamponLecture.remaining()];
+                tamponLecture.get(dejaLus);
+                transfererFluxObjets(dejaLus);
+                return;
+            }
+            CodecMessage.verifierLongueur(longueur);
+
+            int tailleTrame = CodecMessage.TAILLE_ENTETE + longueur;
+            if (tamponLecture.remaining() < tailleTrame) {
+                agrandirSiNecessaire(tailleTrame);
+                break;
+            }
+
+            tamponLecture.position(position + tailleTrame);
+            server.getMetriques().messageRecu(tailleTrame);
+            try {
+                Message message = CodecMessage.decoder(tamponLecture.array(),
+                        position + CodecMessage.TAILLE_ENTETE, longueur);
+                handler.traiterMessage(message);
+            } catch (TrameInvalideException e) {
+                LOGGER.log(Level.WARNING, "Trame invalide reçue", e);
+            } catch (RuntimeException e) {
+                // Seul le client fautif est fermé : la boucle sert aussi les autres connexions
+                LOGGER.log(Level.SEVERE, "Erreur lors du traitement d'un message de " + handler.getNomUtilisateur(), e);
+                handler.fermer(RaisonDeconnexion.CONNEXION_PERDUE);
+                break;
+            }
+            pause = handler.decompterLecture(tailleTrame, maintenant);
+        }
+        tamponLecture.compact();
+        reduireSiPossible();
+
+        if (pause > 0 && handler.estActif()) {
+            lectureSuspendue = true;
+            cle.interestOps(cle.interestOps() & ~SelectionKey.OP_READ);
+            boucle.executerApres(this::reprendreLecture, pause);
+        }
+    }
+
+    /**
+     * Confie un client d'avant le découpage en trames à une connexion bloquante :
+     * son flux d'objets ne se découpe pas sans être lu. Le canal quitte le sélecteur
+     * puis repasse en mode bloquant, avec les octets déjà lus.
+     */
+    private void transfererFluxObjets(byte[] dejaLus) {
+        cle.cancel();
+        boucle.executerApresDesinscription(() -> {
+            try {
+                canal.configureBlocking(true);
+                server.transfererClient(handler, new ConnexionBloquante(server, canal.socket(), dejaLus));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Client en flux d'objets non transféré", e);
+                handler.fermer(RaisonDeconnexion.CONNEXION_PERDUE);
+            }
+        });
+    }
+
+    /**
+     * Fin de la pause : traite les trames restées dans le tampon puis lit à nouveau le canal
+     */
+    private void reprendreLecture() {
+        lectureSuspendue = false;
+        if (!handler.estActif()) return;
+        try {
+            traiterTrames();
+            if (!lectureSuspendue) {
+                cle.interestOps(cle.interestOps() | SelectionKey.OP_READ);
+            }
+        } catch (IOException | CancelledKeyException e) {
+            // Trame invalide ou connexion fermée pendant la pause
+            handler.fermer(RaisonDeconnexion.CONNEXION_PERDUE);
+        }
+    }
+
+    /**
+     * Complète le lot avec les trames en file, dans la limite de la taille de lot.
+     * Retourne false s'il n'y a rien à écrire.
+     */
+    private boolean remplirLot() {
+        int octets = 0;
+        for (int i = debutLot; i < finLot; i++) {
+            octets += lot[i].remaining();
+        }
+        while (finLot < lot.length && (finLot == debutLot || octets < tailleLotOctets)) {
+            byte[] trame = fileSortante.retirer();
+            if (trame == null) break;
+            if (trame == FileSortante.FIN) {
+                fermetureDemandee = true;
+                break;
+            }
+            lot[finLot++] = ByteBuffer.wrap(trame);
+            octets += trame.length;
+        }
+        return debutLot < finLot;
+    }
+
+    /**
+     * Agrandit le tampon de lecture lorsqu'une trame ne peut pas y tenir
+     */
+    private void agrandirSiNecessaire(int tailleTrame) {
+        if (tailleTrame > tamponLecture.capacity()) {
+            ByteBuffer nouveau = ByteBuffer.allocate(tailleTrame);
+            nouveau.put(tamponLecture);
+            nouveau.flip();
+            tamponLecture = nouveau;
+        }
+    }
+
+    /**
+     * Revient au tampon de lecture ordinaire une fois la grande trame consommée,
+     * sauf si la suivante, déjà commencée, ne tiendrait pas non plus
+     */
+    private void reduireSiPossible() {
+        int restants = tamponLecture.position();
+        if (tamponLecture.capacity() == TAILLE_TAMPON_LECTURE || restants > TAILLE_TAMPON_LECTURE) return;
+        if (restants >= CodecMessage.TAILLE_ENTETE
+                && CodecMessage.TAILLE_ENTETE + tamponLecture.getInt(0) > TAILLE_TAMPON_LECTURE) return;
+
+        ByteBuffer ordinaire = ByteBuffer.allocate(TAILLE_TAMPON_LECTURE);
+        tamponLecture.flip();
+        ordinaire.put(tamponLecture);
+        tamponLecture = ordinaire;
+    }
+
+    @Override
+    public void envoyer(byte[] trame) {
+        if (!canal.isOpen()) return;
+
+        if (!fileSortante.deposer(trame)) {
+            server.deconnecterClientLent(handler);
+            return;
+        }
+        if (ecritureProgrammee.compareAndSet(false, true)) {
+            // Écriture différée : toutes les trames déposées d'ici là partiront ensemble
+            if (delaiRegroupementNanos > 0) {
+                boucle.executerApres(this::ecrire, delaiRegroupementNanos);
+            } else {
+                boucle.executer(this::ecrire);
+            }
+        }
+    }
+
+    /**
+     * Écrit autant de trames que le canal l'accepte sans bloquer,
+     * par écritures groupées de plusieurs trames
+     */
+    void ecrire() {
+        try {
+            while (remplirLot()) {
+                long ecrits = canal.write(lot, debutLot, finLot - debutLot);
+                int trames = 0;
+                while (debutLot < finLot && !lot[debutLot].hasRemaining()) {
+                    lot[debutLot++] = null;
+                    trames++;
+                }
+                server.getMetriques().tramesEnvoyees(trames, ecrits);
+                if (debutLot < finLot) {
+                    // Le tampon système est plein : attendre OP_WRITE
+                    cle.interestOps(cle.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                debutLot = 0;
+                finLot = 0;
+            }
+
+            if (fermetureDemandee) {
+                handler.fermer(RaisonDeconnexion.CONNEXION_PERDUE);
+                return;
+            }
+
+            cle.interestOps(cle.interestOps() & ~SelectionKey.OP_WRITE);
+            ecritureProgrammee.set(false);
+
+            // Une trame a pu être déposée entre le dernier retrait et la remise à zéro
+            if (fileSortante.getProfondeur() > 0 && ecritureProgrammee.compareAndSet(false, true)) {
+                ecrire();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Erreur lors de l'envoi d'un message à " + handler.getNomUtilisateur(), e);
+            handler.fermer(RaisonDeconnexion.CONNEXION_PERDUE);
+        } catch (CancelledKeyException e) {
+            // Connexion fermée pendant l'écriture
+            handler.fermer(RaisonDeconnexion.CONNEXION_PERDUE);
+        }
+    }
+
+    @Override
+    public void fermerApresEnvoi() {
+        envoyer(FileSortante.FIN);
+    }
+
+    @Override
+    public int getProfondeurFile() {
+        return fileSortante.getProfondeur();
+    }
+
+    @Override
+    public void fermer() {
+        fileSortante.vider();
+        try {
+            canal.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Erreur lors de la fermeture de la connexion", e);
+        }
+    }
+
+    public ClientHandler getHandler() {
+        return handler;
+    }
+}
@@ -0,0 +1,324 @@
+package com.chatapp.server;
+
+import com.chatapp.model.CodecMessage;
+import com.chatapp.model.Message;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fédération de plusieurs serveurs reliés en TCP. Chaque nœud relaie à tous ses pairs
+ * les messages de ses propres clients, une seule fois : un message reçu d'un pair
+ * n'est jamais relayé à nouveau, le maillage doit donc être complet.
+ * Les messages relayés portent l'identifiant du nœud d'origine et un numéro croissant,
+ * qui permettent d'écarter les doublons (deux liaisons vers le même pair, par exemple).
+ * Un message privé ne part que vers le nœud où son destinataire est connecté.
+ * La présence de chaque pair est fusionnée dans la liste des utilisateurs du serveur ;
+ * un nom ne peut être porté que sur un seul nœud.
+ * Les pairs ne s'authentifient pas : le port n'écoute que sur l'interface configurée
+ * et, si une liste est donnée, n'accepte que les adresses qui y figurent.
+ */
+public class Federation {
+    private static final Logger LOGGER = Logger.getLogger(Federation.class.getName());
+    private static final int DELAI_CONNEXION_MS = 2_000;
+    private static final long DELAI_RECONNEXION_MS = 2_000;
+
+    private final Server server;
+    private final long identifiant;
+    private final AtomicLong numeros = new AtomicLong();
+    private final FiltreDoublons filtre = new FiltreDoublons();
+    private final List<LiaisonPair> liaisons = new CopyOnWriteArrayList<>();
+    // Numéro de la dernière présentation appliquée pour chaque nœud (protégé par this) :
+    // les changements de présence plus anciens sont déjà inclus dans sa liste
+    private final Map<Long, Long> presentations = new ConcurrentHashMap<>();
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private ServerSocket serverSocket;
+    // Adresses dont les liaisons entrantes sont acceptées (vide : toutes)
+    private Set<InetAddress> pairsAutorises = Set.of();
+    private volatile boolean isRunning = false;
+
+    public Federation(Server server) {
+        this.server = server;
+        // Nouvel identifiant à chaque démarrage : les numéros d'un nœud redémarré ne se confondent pas
+        long tirage;
+        do {
+            tirage = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        } while (tirage == 0);
+        this.identifiant = tirage;
+    }
+
+    /**
+     * Écoute les pairs sur le port et l'interface donnés (port 0 : aucun), en n'acceptant
+     * que les adresses autorisées (vide : toutes), et se connecte à chacun des pairs indiqués
+     */
+    public void demarrer(int port, InetAddress interfaceEcoute, Set<InetAddress> autorises,
+                         List<InetSocketAddress> pairs) throws IOException {
+        isRunning = true;
+        pairsAutorises = Set.copyOf(autorises);
+        if (port > 0) {
+            serverSocket = new ServerSocket(port, 0, interfaceEcoute);
+            threads.execute(this::accepterPairs);
+        }
+        for (InetSocketAddress adresse : pairs) {
+            threads.execute(() -> composer(adresse));
+        }
+    }
+
+    private void accepterPairs() {
+        while (isRunning) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (!pairsAutorises.isEmpty() && !pairsAutorises.contains(socket.getInetAddress())) {
+                    LOGGER.log(Level.WARNING, "Liaison refusée depuis une adresse non autorisée: {0}",
+                            socket.getInetAddress());
+                    fermerSocket(socket);
+                    continue;
+                }
+                threads.execute(() -> {
+                    try {
+                        ouvrir(socket).lire();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "Erreur lors de l'ouverture d'une liaison", e);
+                        fermerSocket(socket);
+                    }
+                });
+            } catch (IOException e) {
+                if (isRunning) {
+                    LOGGER.log(Level.SEVERE, "Erreur lors de l'acceptation d'un pair", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Se connecte à un pair et rétablit la liaison tant que le serveur tourne
+     */
+    private void composer(InetSocketAddress adresse) {
+        while (isRunning) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(adresse, DELAI_CONNEXION_MS);
+                ouvrir(socket).lire();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Pair injoignable: " + adresse, e);
+                fermerSocket(socket);
+            }
+            if (!isRunning) return;
+            try {
+                Thread.sleep(DELAI_RECONNEXION_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static void fermerSocket(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Déjà en erreur
+        }
+    }
+
+    /**
+     * Crée la liaison et se présente au pair avec la liste des utilisateurs locaux.
+     * La présentation est numérotée et déposée sous le verrou de présence du serveur :
+     * aucun changement de présence ne peut s'intercaler ou manquer au pair.
+     */
+    private LiaisonPair ouvrir(Socket socket) throws IOException {
+        LiaisonPair liaison = new LiaisonPair(this, socket);
+        server.avecPresenceLocale(utilisateurs -> {
+            Message presentation = new Message("Serveur", utilisateurs, Message.TypeMessage.NOEUD);
+            presentation.setIdentifiant(identifiant, numeros.incrementAndGet());
+            liaison.envoyer(presentation);
+            liaisons.add(liaison);
+        });
+        threads.execute(liaison::ecrire);
+        return liaison;
+    }
+
+    /**
+     * Relaie aux pairs un message diffusé par un client local.
+     * Le message est encodé une seule fois pour toutes les liaisons.
+     */
+    public void relayer(Message message) {
+        if (liaisons.isEmpty()) return;
+
+        // L'original est partagé avec les trames déjà encodées pour les clients et les reprises
+        Message relais = message.copier();
+        relais.setIdentifiant(identifiant, numeros.incrementAndGet());
+        byte[] trame = CodecMessage.encoder(relais, CodecMessage.VERSION_COURANTE);
+        for (LiaisonPair liaison : liaisons) {
+            liaison.envoyer(trame);
+        }
+        server.getMetriques().messageRelaye();
+    }
+
+    /**
+     * Transmet un message DIRECT au seul nœud où son destinataire est connecté
+     */
+    void relayerDirect(Message message, long noeud) {
+        Message relais = message.copier();
+        relais.setIdentifiant(identifiant, numeros.incrementAndGet());
+        byte[] trame = CodecMessage.encoder(relais, CodecMessage.VERSION_COURANTE);
+        for (LiaisonPair liaison : liaisons) {
+            if (liaison.getNoeud() == noeud) {
+                liaison.envoyer(trame);
+            }
+        }
+        server.getMetriques().messageRelaye();
+    }
+
+    /**
+     * Relaie l'arrivée ou le départ d'un utilisateur local (appelée sous le verrou de présence du serveur)
+     */
+    void relayerPresence(String nom, Message.TypeMessage type) {
+        if (liaisons.isEmpty()) return;
+
+        Message changement = new Message("Serveur", nom, type);
+        changement.setIdentifiant(identifiant, numeros.incrementAndGet());
+        byte[] trame = CodecMessage.encoder(changement, CodecMessage.VERSION_COURANTE);
+        for (LiaisonPair liaison : liaisons) {
+            liaison.envoyer(trame);
+        }
+    }
+
+    /**
+     * Traite un message reçu d'un pair (thread de lecture de la liaison)
+     */
+    void recevoir(LiaisonPair liaison, Message message) {
+        long origine = message.getOrigine();
+        if (origine == 0 || origine == identifiant) return;
+
+        switch (message.getType()) {
+            case NOEUD:
+                appliquerPresentation(liaison, message);
+                break;
+
+            case UTILISATEUR_REJOINT:
+            case UTILISATEUR_PARTI:
+                appliquerChangementPresence(message);
+                break;
+
+            case MESSAGE:
+            case DIRECT:
+            case CONNEXION:
+            case DECONNEXION:
+                if (!filtre.accepter(origine, message.getNumero())) {
+                    server.getMetriques().doublonEcarte();
+                    return;
+                }
+                server.getMetriques().messageFedere();
+                // Les clients locaux n'ont pas besoin de l'identifiant de fédération ;
+                // la séquence du nœud d'origine n'a pas de sens ici
+                message.setIdentifiant(0, 0);
+                message.setSequence(0);
+                if (message.getType() == Message.TypeMessage.MESSAGE) {
+                    server.diffuserDansSalon(message);
+                } else if (message.getType() == Message.TypeMessage.DIRECT) {
+                    server.livrerDirect(message);
+                } else {
+                    server.diffuser(message);
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private synchronized void appliquerPresentation(LiaisonPair liaison, Message presentation) {
+        long noeud = presentation.getOrigine();
+        if (liaison.getNoeud() == 0) {
+            liaison.setNoeud(noeud);
+            server.ajouterAuJournal("Liaison établie avec le nœud " + Long.toHexString(noeud)
+                    + " (" + liaison.getAdresse() + ")");
+        }
+        Long precedente = presentations.get(noeud);
+        // Une présentation plus ancienne, reçue par une autre liaison, est dépassée
+        if (precedente != null && precedente >= presentation.getNumero()) return;
+
+        presentations.put(noeud, presentation.getNumero());
+        List<String> noms = new ArrayList<>();
+        for (String nom : presentation.getContenu().split(",")) {
+            if (!nom.isEmpty()) {
+                noms.add(nom);
+            }
+        }
+        server.remplacerPresenceDistante(noeud, noms);
+    }
+
+    private synchronized void appliquerChangementPresence(Message changement) {
+        long noeud = changement.getOrigine();
+        Long presentation = presentations.get(noeud);
+        if (presentation == null || changement.getNumero() <= presentation) return;
+        if (!filtre.accepter(noeud, changement.getNumero())) return;
+
+        server.presenceDistante(noeud, changement.getContenu(), changement.getType());
+    }
+
+    /**
+     * Oublie un nœud dont la dernière liaison vient de se fermer, et ses utilisateurs
+     */
+    void liaisonFermee(LiaisonPair liaison) {
+        liaisons.remove(liaison);
+        long noeud = liaison.getNoeud();
+        if (noeud == 0 || !isRunning) return;
+
+        synchronized (this) {
+            for (LiaisonPair autre : liaisons) {
+                if (autre.getNoeud() == noeud) return;
+            }
+            presentations.remove(noeud);
+            filtre.oublier(noeud);
+            server.remplacerPresenceDistante(noeud, List.of());
+        }
+        server.ajouterAuJournal("Liaison perdue avec le nœud " + Long.toHexString(noeud));
+    }
+
+    /**
+     * Ferme toutes les liaisons et cesse de se reconnecter
+     */
+    public void arreter() {
+        isRunning = false;
+        try {
+            if (serverSocket != null && !serverSocket.isClosed()) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Erreur lors de la fermeture du port de fédération", e);
+        }
+        for (LiaisonPair liaison : liaisons) {
+            liaison.fermer();
+        }
+        threads.shutdownNow();
+    }
+
+    /**
+     * Identifiant de ce nœud, tiré au hasard à chaque démarrage
+     */
+    public long getIdentifiant() {
+        return identifiant;
+    }
+
+    /**
+     * Nombre de nœuds distincts actuellement reliés
+     */
+    public int getNombrePairs() {
+        return (int) liaisons.stream().mapToLong(LiaisonPair::getNoeud).filter(noeud -> noeud != 0).distinct().count();
+    }
+}
@@ -0,0 +1,74 @@
+package com.chatapp.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * File bornée des trames en attente d'envoi vers un client.
+ * Les diffusions y déposent leurs trames sans jamais bloquer ;
+ * un écrivain propre au client la vide à son rythme.
+ */
+public class FileSortante {
+
+    /** Trame fictive : la connexion est fermée une fois les trames précédentes envoyées */
+    static final byte[] FIN = new byte[0];
+
+    private final ArrayBlockingQueue<byte[]> file;
+    private final PolitiqueConsommateurLent politique;
+    private final LongAdder tramesSupprimees;
+
+    public FileSortante(int capacite, PolitiqueConsommateurLent politique, LongAdder tramesSupprimees) {
+        this.file = new ArrayBlockingQueue<>(capacite);
+        this.politique = politique;
+        this.tramesSupprimees = tramesSupprimees;
+    }
+
+    /**
+     * Dépose une trame sans bloquer.
+     * Retourne false si la file est pleine et que le client doit être déconnecté.
+     */
+    public boolean deposer(byte[] trame) {
+        while (!file.offer(trame)) {
+            if (politique == PolitiqueConsommateurLent.DECONNECTER) {
+                return false;
+            }
+            if (file.poll() != null) {
+                tramesSupprimees.increment();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retire la prochaine trame, ou null si la file est vide
+     */
+    public byte[] retirer() {
+        return file.poll();
+    }
+
+    /**
+     * Attend et retire la prochaine trame
+     */
+    public byte[] prendre() throws InterruptedException {
+        return file.take();
+    }
+
+    /**
+     * Attend au plus le délai donné la prochaine trame, ou retourne null
+     */
+    public byte[] prendre(long delaiNanos) throws InterruptedException {
+        return file.poll(delaiNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Nombre de trames en attente d'envoi
+     */
+    public int getProfondeur() {
+        return file.size();
+    }
+
+    public void vider() {
+        file.clear();
+    }
+}
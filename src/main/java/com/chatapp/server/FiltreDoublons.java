@@ -0,0 +1,77 @@
+package com.chatapp.server;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Écarte les messages fédérés déjà reçus. Pour chaque nœud d'origine, une fenêtre glissante
+ * retient les {@value #TAILLE_FENETRE} derniers numéros sous forme de bits : accepter un
+ * numéro coûte O(1) en moyenne et la mémoire reste constante quel que soit le nombre de messages.
+ * Un numéro plus ancien que la fenêtre est considéré comme déjà reçu.
+ */
+public class FiltreDoublons {
+
+    static final int TAILLE_FENETRE = 1024;
+
+    private final Map<Long, Fenetre> fenetres = new ConcurrentHashMap<>();
+
+    /**
+     * Retourne true si le message (origine, numéro) n'a pas encore été vu, et le retient
+     */
+    public boolean accepter(long origine, long numero) {
+        return fenetres.computeIfAbsent(origine, cle -> new Fenetre()).accepter(numero);
+    }
+
+    /**
+     * Oublie un nœud qui a quitté la fédération
+     */
+    public void oublier(long origine) {
+        fenetres.remove(origine);
+    }
+
+    /**
+     * Numéros vus d'un nœud : le plus grand et les bits des précédents, en anneau
+     */
+    private static final class Fenetre {
+        private final long[] bits = new long[TAILLE_FENETRE / Long.SIZE];
+        private long plusGrand = 0;
+
+        synchronized boolean accepter(long numero) {
+            if (numero <= 0) return false;
+
+            if (numero > plusGrand) {
+                long avance = numero - plusGrand;
+                if (avance >= TAILLE_FENETRE) {
+                    Arrays.fill(bits, 0);
+                } else {
+                    for (long n = plusGrand + 1; n < numero; n++) {
+                        effacer(n);
+                    }
+                }
+                plusGrand = numero;
+                marquer(numero);
+                return true;
+            }
+            if (plusGrand - numero >= TAILLE_FENETRE || estMarque(numero)) return false;
+
+            marquer(numero);
+            return true;
+        }
+
+        private void marquer(long numero) {
+            int indice = (int) (numero % TAILLE_FENETRE);
+            bits[indice >>> 6] |= 1L << indice;
+        }
+
+        private void effacer(long numero) {
+            int indice = (int) (numero % TAILLE_FENETRE);
+            bits[indice >>> 6] &= ~(1L << indice);
+        }
+
+        private boolean estMarque(long numero) {
+            int indice = (int) (numero % TAILLE_FENETRE);
+            return (bits[indice >>> 6] & (1L << indice)) != 0;
+        }
+    }
+}
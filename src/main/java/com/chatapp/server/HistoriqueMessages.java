@@ -0,0 +1,417 @@
+package com.chatapp.server;
+
+import com.chatapp.model.CodecMessage;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Historique des messages sur disque, en ajout seul.
+ * Les trames binaires sont écrites dans des segments projetés en mémoire ;
+ * un index clairsemé retient la position d'un message sur {@value #INTERVALLE_INDEX}
+ * pour retrouver les derniers messages sans parcourir tout un segment.
+ * La diffusion ne fait que déposer la trame : un thread dédié l'écrit
+ * et synchronise le disque une seule fois pour tout le lot en attente.
+ * Jusqu'à cette publication, les lecteurs trouvent la trame en mémoire.
+ */
+public class HistoriqueMessages implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(HistoriqueMessages.class.getName());
+
+    // Un message sur INTERVALLE_INDEX a sa position dans l'index
+    private static final int INTERVALLE_INDEX = 32;
+    // Longueur de la charge puis somme de contrôle CRC32C
+    private static final int TAILLE_ENTETE_ENREGISTREMENT = 8;
+    private static final int TAILLE_LOT_MAX = 4096;
+    private static final String EXTENSION = ".log";
+    private static final String FICHIER_VERROU = "verrou";
+    // Marque la fin des écritures
+    private static final byte[] FIN = new byte[0];
+
+    private final Path repertoire;
+    private final int tailleSegment;
+    private final int segmentsConserves;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final LinkedTransferQueue<byte[]> aEcrire = new LinkedTransferQueue<>();
+    // Trames déposées mais pas encore publiées, par offset ; retirées après chaque validation
+    private final ConcurrentSkipListMap<Long, byte[]> enAttente = new ConcurrentSkipListMap<>();
+    private final AtomicLong prochainOffset = new AtomicLong();
+    private final FileChannel canalVerrou;
+    private final Thread thread;
+    private volatile boolean isRunning = true;
+
+    public HistoriqueMessages(Path repertoire, int tailleSegment, int segmentsConserves) throws IOException {
+        this.repertoire = repertoire;
+        this.tailleSegment = tailleSegment;
+        this.segmentsConserves = segmentsConserves;
+        this.thread = new Thread(this, "historique-disque");
+        // Les octets projetés survivent à l'arrêt du processus, seule la synchronisation en cours est perdue
+        this.thread.setDaemon(true);
+
+        Files.createDirectories(repertoire);
+        this.canalVerrou = FileChannel.open(repertoire.resolve(FICHIER_VERROU),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (canalVerrou.tryLock() == null) {
+                throw new IOException("Historique déjà utilisé par un autre serveur: " + repertoire);
+            }
+            recupererSegments();
+        } catch (IOException | OverlappingFileLockException e) {
+            canalVerrou.close();
+            throw e instanceof IOException ? (IOException) e
+                    : new IOException("Historique déjà utilisé par ce processus: " + repertoire, e);
+        }
+    }
+
+    /**
+     * Relit les segments existants et reprend la numérotation là où elle s'était arrêtée
+     */
+    private void recupererSegments() throws IOException {
+        List<Path> fichiers;
+        try (Stream<Path> contenu = Files.list(repertoire)) {
+            fichiers = contenu.filter(f -> f.getFileName().toString().endsWith(EXTENSION))
+                    .sorted()
+                    .toList();
+        }
+
+        for (Path fichier : fichiers) {
+            String nom = fichier.getFileName().toString();
+            long offsetBase;
+            try {
+                offsetBase = Long.parseLong(nom.substring(0, nom.length() - EXTENSION.length()));
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.WARNING, "Fichier ignoré dans l''historique: {0}", nom);
+                continue;
+            }
+            Segment segment = new Segment(fichier, offsetBase, tailleSegment);
+            segment.recuperer();
+            segments.add(segment);
+        }
+
+        if (segments.isEmpty()) {
+            segments.add(creerSegment(0));
+        }
+        Segment dernier = segments.get(segments.size() - 1);
+        prochainOffset.set(dernier.offsetBase + dernier.nombrePublie);
+        LOGGER.log(Level.INFO, "Historique ouvert: {0} messages dans {1} segments",
+                new Object[]{prochainOffset.get(), segments.size()});
+    }
+
+    private Segment creerSegment(long offsetBase) throws IOException {
+        Path fichier = repertoire.resolve(String.format("%020d%s", offsetBase, EXTENSION));
+        return new Segment(fichier, offsetBase, tailleSegment);
+    }
+
+    /**
+     * Démarre le thread d'écriture
+     */
+    public void demarrer() {
+        thread.start();
+    }
+
+    /**
+     * Dépose une trame binaire à écrire, sans attendre le disque.
+     * Les dépôts doivent être sérialisés par l'appelant, qui lit aussi la limite
+     * de {@link #lireDerniers} sous ce même ordre.
+     */
+    public void ajouter(byte[] trame) {
+        if (!isRunning) return;
+        // Refusée avant de recevoir un offset : les offsets restent ceux des segments
+        int longueur = trame.length - CodecMessage.TAILLE_ENTETE;
+        if (TAILLE_ENTETE_ENREGISTREMENT + longueur > tailleSegment) {
+            LOGGER.log(Level.WARNING, "Message trop grand pour l''historique: {0} octets", longueur);
+            return;
+        }
+        enAttente.put(prochainOffset.getAndIncrement(), trame);
+        aEcrire.add(trame);
+    }
+
+    /**
+     * Offset qui sera attribué au prochain message déposé
+     */
+    public long getProchainOffset() {
+        return prochainOffset.get();
+    }
+
+    /**
+     * Transmet au consommateur, dans l'ordre, les n derniers messages retenus par le lecteur
+     * parmi ceux dont l'offset est inférieur à la limite donnée. Le lecteur reçoit chaque trame
+     * complète et retourne null pour l'écarter ; l'historique est remonté par blocs jusqu'à
+     * en avoir retenu n, les messages publiés depuis les segments, les suivants depuis la mémoire.
+     */
+    public <T> void lireDerniers(int n, long limite, Function<byte[], T> lecteur, Consumer<T> consommateur) {
+        if (n <= 0) return;
+
+        // Copiés avant de lire les segments : un message retiré entre-temps a été publié
+        NavigableMap<Long, byte[]> nonPublies = new TreeMap<>(enAttente.headMap(limite));
+        Segment[] instantane = segments.toArray(new Segment[0]);
+        Segment dernier = instantane[instantane.length - 1];
+        long publies = dernier.offsetBase + dernier.nombrePublie;
+        long premier = instantane[0].offsetBase;
+
+        // Blocs lus du plus récent au plus ancien : le premier de la pile est le plus ancien
+        Deque<List<T>> blocs = new ArrayDeque<>();
+        int trouves = 0;
+        long fin = limite;
+        long taille = n;
+        while (trouves < n && fin > premier) {
+            long debut = Math.max(premier, fin - taille);
+            List<T> retenus = new ArrayList<>();
+            Consumer<byte[]> lire = trame -> {
+                T lu = lecteur.apply(trame);
+                if (lu != null) {
+                    retenus.add(lu);
+                }
+            };
+            long finPubliee = Math.min(fin, publies);
+            for (Segment segment : instantane) {
+                if (segment.offsetBase >= finPubliee) break;
+                segment.lire(debut, finPubliee, lire);
+            }
+            if (fin > publies) {
+                nonPublies.subMap(Math.max(debut, publies), fin).values().forEach(lire);
+            }
+            blocs.push(retenus);
+            trouves += retenus.size();
+            fin = debut;
+            // Un salon peu actif est loin dans l'historique : les blocs doublent à chaque passe
+            taille *= 2;
+        }
+
+        int ignores = Math.max(0, trouves - n);
+        for (List<T> retenus : blocs) {
+            for (T lu : retenus) {
+                if (ignores > 0) {
+                    ignores--;
+                } else {
+                    consommateur.accept(lu);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        List<byte[]> lot = new ArrayList<>();
+        Segment actif = segments.get(segments.size() - 1);
+        boolean fin = false;
+
+        try {
+            while (!fin) {
+                lot.add(aEcrire.take());
+                aEcrire.drainTo(lot, TAILLE_LOT_MAX - 1);
+
+                for (byte[] trame : lot) {
+                    if (trame == FIN) {
+                        fin = true;
+                    } else {
+                        actif = ecrire(actif, trame);
+                    }
+                }
+                lot.clear();
+                // Validation groupée : un seul passage sur le disque pour tout le lot
+                actif.valider();
+                enAttente.headMap(actif.offsetBase + actif.nombre).clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Erreur d'écriture de l'historique, historique arrêté", e);
+            isRunning = false;
+        } catch (RuntimeException e) {
+            // Sans ce thread plus rien n'est écrit : les dépôts suivants sont refusés
+            LOGGER.log(Level.SEVERE, "Erreur inattendue de l'historique, historique arrêté", e);
+            isRunning = false;
+        } finally {
+            try {
+                canalVerrou.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Erreur lors de la libération de l'historique", e);
+            }
+        }
+    }
+
+    /**
+     * Écrit une trame dans le segment actif, en ouvrant un nouveau segment s'il est plein
+     */
+    private Segment ecrire(Segment actif, byte[] trame) throws IOException {
+        int longueur = trame.length - CodecMessage.TAILLE_ENTETE;
+        if (!actif.peutContenir(longueur)) {
+            actif.valider();
+            actif = creerSegment(actif.offsetBase + actif.nombre);
+            segments.add(actif);
+            supprimerAnciensSegments();
+        }
+        actif.ajouter(trame, longueur);
+        return actif;
+    }
+
+    private void supprimerAnciensSegments() {
+        while (segments.size() > segmentsConserves) {
+            Segment ancien = segments.remove(0);
+            try {
+                // Les lectures en cours gardent la projection valide
+                Files.deleteIfExists(ancien.fichier);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Impossible de supprimer le segment " + ancien.fichier, e);
+            }
+        }
+    }
+
+    /**
+     * Écrit les messages en attente puis arrête le thread d'écriture
+     */
+    public void arreter() {
+        if (!isRunning) return;
+        isRunning = false;
+        aEcrire.add(FIN);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Fichier de l'historique projeté en mémoire. Seul le thread d'écriture le modifie ;
+     * les lecteurs ne voient que ce qui a été publié après synchronisation.
+     */
+    private static final class Segment {
+        private final Path fichier;
+        private final long offsetBase;
+        private final MappedByteBuffer tampon;
+        private final CRC32C crc = new CRC32C();
+        // Position de chaque INTERVALLE_INDEX-ième message ; remplacé en bloc quand il grandit,
+        // toujours avant la publication qui le rend visible
+        private int[] index = new int[64];
+        private int position;
+        private int nombre;
+        private int positionValidee;
+        private volatile int nombrePublie;
+
+        Segment(Path fichier, long offsetBase, int taille) throws IOException {
+            this.fichier = fichier;
+            this.offsetBase = offsetBase;
+            try (FileChannel canal = FileChannel.open(fichier, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // La projection reste valide après la fermeture du canal
+                long tailleFichier = Math.max(canal.size(), taille);
+                this.tampon = canal.map(FileChannel.MapMode.READ_WRITE, 0, tailleFichier);
+            }
+        }
+
+        /**
+         * Parcourt les enregistrements intacts et s'arrête au premier vide ou corrompu
+         */
+        void recuperer() {
+            while (position + TAILLE_ENTETE_ENREGISTREMENT <= tampon.capacity()) {
+                int longueur = tampon.getInt(position);
+                if (longueur <= 0 || longueur > tampon.capacity() - position - TAILLE_ENTETE_ENREGISTREMENT) break;
+
+                crc.reset();
+                crc.update(tampon.slice(position + TAILLE_ENTETE_ENREGISTREMENT, longueur));
+                if ((int) crc.getValue() != tampon.getInt(position + Integer.BYTES)) {
+                    LOGGER.log(Level.WARNING, "Historique tronqué après {0} messages dans {1}",
+                            new Object[]{nombre, fichier});
+                    break;
+                }
+                indexer();
+                position += TAILLE_ENTETE_ENREGISTREMENT + longueur;
+            }
+            // Effacer un éventuel enregistrement partiel pour ne pas le relire au prochain démarrage
+            if (position + Integer.BYTES <= tampon.capacity()) {
+                tampon.putInt(position, 0);
+            }
+            positionValidee = position;
+            nombrePublie = nombre;
+        }
+
+        boolean peutContenir(int longueur) {
+            // Garder la place d'une longueur nulle qui marque la fin
+            return position + TAILLE_ENTETE_ENREGISTREMENT + longueur + Integer.BYTES <= tampon.capacity();
+        }
+
+        void ajouter(byte[] trame, int longueur) {
+            crc.reset();
+            crc.update(trame, CodecMessage.TAILLE_ENTETE, longueur);
+
+            // La longueur est écrite en dernier : un enregistrement inachevé reste invisible
+            tampon.put(position + TAILLE_ENTETE_ENREGISTREMENT, trame, CodecMessage.TAILLE_ENTETE, longueur);
+            tampon.putInt(position + Integer.BYTES, (int) crc.getValue());
+            tampon.putInt(position, longueur);
+            indexer();
+            position += TAILLE_ENTETE_ENREGISTREMENT + longueur;
+        }
+
+        private void indexer() {
+            if (nombre % INTERVALLE_INDEX == 0) {
+                int entree = nombre / INTERVALLE_INDEX;
+                if (entree == index.length) {
+                    index = Arrays.copyOf(index, entree * 2);
+                }
+                index[entree] = position;
+            }
+            nombre++;
+        }
+
+        /**
+         * Synchronise les enregistrements ajoutés depuis la dernière validation
+         * puis les rend visibles aux lecteurs
+         */
+        void valider() {
+            if (position == positionValidee) return;
+            tampon.force(positionValidee, position - positionValidee);
+            positionValidee = position;
+            nombrePublie = nombre;
+        }
+
+        /**
+         * Transmet les enregistrements publiés dont l'offset est compris dans [debut, fin[
+         */
+        void lire(long debut, long fin, Consumer<byte[]> consommateur) {
+            int publies = nombrePublie;
+            int[] positions = index;
+            int premier = (int) Math.max(0, debut - offsetBase);
+            int dernier = (int) Math.min(publies, fin - offsetBase);
+            if (premier >= dernier) return;
+
+            // Partir de l'entrée d'index la plus proche puis avancer enregistrement par enregistrement
+            int rang = premier - premier % INTERVALLE_INDEX;
+            int pos = positions[rang / INTERVALLE_INDEX];
+            while (rang < dernier) {
+                int longueur = tampon.getInt(pos);
+                if (rang >= premier) {
+                    byte[] trame = new byte[CodecMessage.TAILLE_ENTETE + longueur];
+                    trame[0] = (byte) (longueur >>> 24);
+                    trame[1] = (byte) (longueur >>> 16);
+                    trame[2] = (byte) (longueur >>> 8);
+                    trame[3] = (byte) longueur;
+                    tampon.get(pos + TAILLE_ENTETE_ENREGISTREMENT, trame, CodecMessage.TAILLE_ENTETE, longueur);
+                    consommateur.accept(trame);
+                }
+                pos += TAILLE_ENTETE_ENREGISTREMENT + longueur;
+                rang++;
+            }
+        }
+    }
+}
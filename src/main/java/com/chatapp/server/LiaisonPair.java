@@ -0,0 +1,146 @@
+package com.chatapp.server;
+
+import com.chatapp.model.CodecMessage;
+import com.chatapp.model.Message;
+import com.chatapp.model.TrameInvalideException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Liaison TCP avec un autre nœud de la fédération : un thread lit les trames du pair,
+ * un second vide la file sortante. Un pair trop lent pour suivre est déconnecté ;
+ * la liaison est alors rétablie et la présence resynchronisée.
+ */
+public class LiaisonPair {
+    private static final Logger LOGGER = Logger.getLogger(LiaisonPair.class.getName());
+    private static final int TAILLE_TAMPON_ECRITURE = 64 * 1024;
+    private static final int CAPACITE_FILE = 64 * 1024;
+
+    private final Federation federation;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final FileSortante fileSortante =
+            new FileSortante(CAPACITE_FILE, PolitiqueConsommateurLent.DECONNECTER, new LongAdder());
+    private final AtomicBoolean active = new AtomicBoolean(true);
+    private volatile Thread threadEcriture;
+    // Nœud distant, connu une fois sa présentation reçue (0 avant)
+    private volatile long noeud;
+
+    public LiaisonPair(Federation federation, Socket socket) throws IOException {
+        this.federation = federation;
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), TAILLE_TAMPON_ECRITURE));
+    }
+
+    /**
+     * Boucle de lecture : transmet chaque message du pair à la fédération jusqu'à la fermeture
+     */
+    public void lire() {
+        try {
+            while (active.get()) {
+                try {
+                    federation.recevoir(this, CodecMessage.lire(in));
+                } catch (TrameInvalideException e) {
+                    LOGGER.log(Level.WARNING, "Trame invalide reçue d'un pair", e);
+                }
+            }
+        } catch (IOException e) {
+            if (active.get()) {
+                LOGGER.log(Level.INFO, "Liaison perdue avec le nœud {0}", Long.toHexString(noeud));
+            }
+        } finally {
+            fermer();
+        }
+    }
+
+    /**
+     * Boucle d'écriture : les trames disponibles partent dans le même envoi
+     */
+    public void ecrire() {
+        threadEcriture = Thread.currentThread();
+        try {
+            while (active.get()) {
+                byte[] trame = fileSortante.prendre();
+                do {
+                    out.write(trame);
+                    trame = fileSortante.retirer();
+                } while (trame != null);
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            // Liaison fermée pendant l'attente
+        } catch (IOException e) {
+            if (active.get()) {
+                LOGGER.log(Level.WARNING, "Erreur d'écriture vers le nœud " + Long.toHexString(noeud), e);
+            }
+        } finally {
+            fermer();
+        }
+    }
+
+    /**
+     * Dépose une trame sans bloquer ; ferme la liaison si le pair ne suit plus
+     */
+    public void envoyer(byte[] trame) {
+        if (!active.get()) return;
+        if (!fileSortante.deposer(trame)) {
+            LOGGER.log(Level.WARNING, "Nœud {0} trop lent, liaison fermée", Long.toHexString(noeud));
+            // L'appelant peut tenir le verrou de présence : la fermeture se termine dans le thread de lecture
+            fermerSocket();
+        }
+    }
+
+    public void envoyer(Message message) {
+        envoyer(CodecMessage.encoder(message, CodecMessage.VERSION_COURANTE));
+    }
+
+    /**
+     * Ferme la liaison ; la fédération oublie le nœud s'il n'a plus d'autre liaison
+     */
+    public void fermer() {
+        if (!active.compareAndSet(true, false)) return;
+
+        fileSortante.vider();
+        Thread ecrivain = threadEcriture;
+        if (ecrivain != null) {
+            ecrivain.interrupt();
+        }
+        fermerSocket();
+        federation.liaisonFermee(this);
+    }
+
+    private void fermerSocket() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Erreur lors de la fermeture d'une liaison", e);
+        }
+    }
+
+    public boolean estActive() {
+        return active.get();
+    }
+
+    public long getNoeud() {
+        return noeud;
+    }
+
+    void setNoeud(long noeud) {
+        this.noeud = noeud;
+    }
+
+    public String getAdresse() {
+        return socket.getRemoteSocketAddress().toString();
+    }
+}
@@ -0,0 +1,61 @@
+package com.chatapp.server;
+
+/**
+ * Seau à jetons d'un client, en messages et en octets par seconde, sous forme d'échéances
+ * théoriques (GCRA) : chaque message reçu repousse l'échéance de son coût, et une rafale
+ * d'une seconde de débit est tolérée. Au-delà, le limiteur retourne la pause à observer
+ * avant de lire à nouveau le client.
+ * Sans verrou ni variable partagée : une instance n'est utilisée que par le thread
+ * qui lit la connexion (thread du client ou boucle NIO).
+ */
+public final class LimiteurDebit {
+
+    // Rafale tolérée, exprimée en durée de débit nominal
+    private static final long TOLERANCE_NANOS = 1_000_000_000L;
+
+    private final long nanosParMessage;
+    private final double nanosParOctet;
+    private long echeanceMessages;
+    private long echeanceOctets;
+
+    /**
+     * Limites en messages et en octets par seconde ; 0 pour ne pas limiter
+     */
+    public LimiteurDebit(int messagesParSeconde, int octetsParSeconde) {
+        this.nanosParMessage = messagesParSeconde > 0 ? 1_000_000_000L / messagesParSeconde : 0;
+        this.nanosParOctet = octetsParSeconde > 0 ? 1e9 / octetsParSeconde : 0;
+        long maintenant = System.nanoTime();
+        this.echeanceMessages = maintenant;
+        this.echeanceOctets = maintenant;
+    }
+
+    /**
+     * Décompte un message reçu et retourne la pause, en nanosecondes, avant de lire le suivant
+     * (0 si le client reste dans ses limites)
+     */
+    public long consommer(int octets, long maintenant) {
+        long pause = 0;
+        if (nanosParMessage > 0) {
+            if (echeanceMessages - maintenant < 0) {
+                echeanceMessages = maintenant;
+            }
+            echeanceMessages += nanosParMessage;
+            pause = echeanceMessages - maintenant - TOLERANCE_NANOS;
+        }
+        if (nanosParOctet > 0) {
+            if (echeanceOctets - maintenant < 0) {
+                echeanceOctets = maintenant;
+            }
+            echeanceOctets += (long) (octets * nanosParOctet);
+            pause = Math.max(pause, echeanceOctets - maintenant - TOLERANCE_NANOS);
+        }
+        return Math.max(0, pause);
+    }
+
+    /**
+     * Indique si le limiteur limite quelque chose
+     */
+    public boolean estActif() {
+        return nanosParMessage > 0 || nanosParOctet > 0;
+    }
+}
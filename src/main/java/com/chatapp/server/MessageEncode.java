@@ -0,0 +1,68 @@
+package com.chatapp.server;
+
+import com.chatapp.model.CodecMessage;
+import com.chatapp.model.Message;
+import com.chatapp.model.TrameInvalideException;
+
+/**
+ * Message accompagné de ses trames encodées, calculées au plus une fois par version.
+ * Une diffusion partage ainsi les mêmes octets entre tous les destinataires ;
+ * les trames ne doivent jamais être modifiées par les connexions. Les trames sont publiées
+ * par des champs volatils : le même message est relu par d'autres threads lors des reprises,
+ * et deux threads qui encodent en même temps produisent simplement les mêmes octets.
+ */
+public final class MessageEncode {
+
+    private final Message message;
+    private volatile byte[] trameSerialisee;
+    private volatile byte[] trameBinaire;
+    private volatile byte[] trameCompressee;
+
+    public MessageEncode(Message message) {
+        this.message = message;
+    }
+
+    /**
+     * Reprend une trame binaire existante, envoyée telle quelle aux clients qui la comprennent
+     */
+    public static MessageEncode depuisTrameBinaire(byte[] trame) throws TrameInvalideException {
+        Message message = CodecMessage.decoder(trame, CodecMessage.TAILLE_ENTETE,
+                trame.length - CodecMessage.TAILLE_ENTETE);
+        MessageEncode encode = new MessageEncode(message);
+        encode.trameBinaire = trame;
+        return encode;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * Retourne la trame correspondant à la version du protocole d'un client
+     */
+    public byte[] trame(int version) {
+        if (version >= CodecMessage.VERSION_COMPRESSEE) {
+            // Compressée une seule fois pour tous les destinataires, à partir de la trame binaire
+            byte[] trame = trameCompressee;
+            if (trame == null) {
+                trame = CodecMessage.compresser(trame(CodecMessage.VERSION_BINAIRE));
+                trameCompressee = trame;
+            }
+            return trame;
+        }
+        if (version >= CodecMessage.VERSION_BINAIRE) {
+            byte[] trame = trameBinaire;
+            if (trame == null) {
+                trame = CodecMessage.encoder(message, CodecMessage.VERSION_BINAIRE);
+                trameBinaire = trame;
+            }
+            return trame;
+        }
+        byte[] trame = trameSerialisee;
+        if (trame == null) {
+            trame = CodecMessage.encoder(message, version);
+            trameSerialisee = trame;
+        }
+        return trame;
+    }
+}
@@ -0,0 +1,321 @@
+package com.chatapp.server;
+
+import com.chatapp.model.EtapeTrace;
+import com.chatapp.model.Histogramme;
+import com.chatapp.model.Message;
+import com.chatapp.model.StatistiquesTrace;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compteurs et histogrammes du serveur. L'enregistrement ne prend aucun verrou :
+ * compteurs répartis ({@link LongAdder}) et histogrammes sans verrou.
+ * Les débits sont calculés à la lecture, sur des intervalles d'au moins une seconde.
+ */
+public class MetriquesServeur implements MetriquesServeurMXBean {
+
+    private static final long DUREE_INTERVALLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long DIFFUSION_MAX_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final EtapeTrace[] ETAPES_SERVEUR = {
+            EtapeTrace.RECEPTION_SERVEUR, EtapeTrace.DEBUT_DIFFUSION, EtapeTrace.FIN_DIFFUSION};
+
+    private final Collection<ClientHandler> clients;
+    private final LongAdder messagesRecus = new LongAdder();
+    private final LongAdder octetsRecus = new LongAdder();
+    private final LongAdder messagesEnvoyes = new LongAdder();
+    private final LongAdder octetsEnvoyes = new LongAdder();
+    private final LongAdder connexionsAcceptees = new LongAdder();
+    private final LongAdder tramesSupprimees = new LongAdder();
+    private final LongAdder messagesRelayes = new LongAdder();
+    private final LongAdder messagesFederes = new LongAdder();
+    private final LongAdder doublonsEcartes = new LongAdder();
+    private final LongAdder lecturesSuspendues = new LongAdder();
+    private final LongAdder[] deconnexions = new LongAdder[RaisonDeconnexion.values().length];
+    // Étapes serveur des messages tracés, cumulées depuis le démarrage
+    private final StatistiquesTrace traces = new StatistiquesTrace();
+
+    // Diffusions de l'intervalle en cours ; l'autre histogramme sert au suivant
+    private volatile Histogramme diffusions = new Histogramme(DIFFUSION_MAX_NANOS);
+    private Histogramme diffusionsSuivantes = new Histogramme(DIFFUSION_MAX_NANOS);
+
+    // Intervalle en cours et dernier intervalle terminé (protégés par this, lecteurs uniquement)
+    private long debutIntervalle = System.nanoTime();
+    private Totaux totauxDebut = new Totaux(0, 0, 0, 0, 0);
+    private Intervalle dernier = new Intervalle(0, 0, 0, 0, 0, 0, 0, 0);
+
+    /** Valeurs des compteurs cumulés à un instant donné */
+    private record Totaux(long messagesRecus, long messagesEnvoyes, long octetsRecus, long octetsEnvoyes,
+                          long connexionsAcceptees) {
+    }
+
+    /** Débits et durées des diffusions sur un intervalle terminé */
+    private record Intervalle(double messagesRecus, double messagesEnvoyes, double octetsRecus,
+                              double octetsEnvoyes, double connexionsAcceptees,
+                              long diffusionP50, long diffusionP99, long diffusionMax) {
+    }
+
+    public MetriquesServeur(Collection<ClientHandler> clients) {
+        this.clients = clients;
+        for (int i = 0; i < deconnexions.length; i++) {
+            deconnexions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Compte une trame reçue, entête compris
+     */
+    void messageRecu(int octets) {
+        messagesRecus.increment();
+        octetsRecus.add(octets);
+    }
+
+    /**
+     * Compte des trames écrites sur le réseau
+     */
+    void tramesEnvoyees(int trames, long octets) {
+        messagesEnvoyes.add(trames);
+        octetsEnvoyes.add(octets);
+    }
+
+    void connexionAcceptee() {
+        connexionsAcceptees.increment();
+    }
+
+    /**
+     * Enregistre la durée d'une diffusion : encodage et dépôt chez tous les destinataires
+     */
+    void diffusionTerminee(long dureeNanos) {
+        diffusions.enregistrer(dureeNanos);
+    }
+
+    /**
+     * Enregistre les étapes serveur d'un message tracé, une fois sa diffusion terminée
+     */
+    void traceTerminee(Message message) {
+        traces.enregistrer(message, EtapeTrace.RECEPTION_SERVEUR, EtapeTrace.FIN_DIFFUSION);
+    }
+
+    /**
+     * Compte un message local relayé aux autres nœuds de la fédération
+     */
+    void messageRelaye() {
+        messagesRelayes.increment();
+    }
+
+    /**
+     * Compte un message reçu d'un autre nœud et diffusé aux clients locaux
+     */
+    void messageFedere() {
+        messagesFederes.increment();
+    }
+
+    void doublonEcarte() {
+        doublonsEcartes.increment();
+    }
+
+    /**
+     * Compte une pause de lecture imposée à un client qui dépasse son débit
+     */
+    void lectureSuspendue() {
+        lecturesSuspendues.increment();
+    }
+
+    void deconnexion(RaisonDeconnexion raison) {
+        deconnexions[raison.ordinal()].increment();
+    }
+
+    /**
+     * Compteur partagé par les files sortantes des clients
+     */
+    LongAdder getCompteurTramesSupprimees() {
+        return tramesSupprimees;
+    }
+
+    /**
+     * Termine l'intervalle en cours s'il dure depuis au moins une seconde
+     * et retourne le dernier intervalle terminé
+     */
+    private synchronized Intervalle intervalle() {
+        long maintenant = System.nanoTime();
+        long duree = maintenant - debutIntervalle;
+        if (duree < DUREE_INTERVALLE_NANOS) return dernier;
+
+        Histogramme termine = diffusions;
+        diffusionsSuivantes.reinitialiser();
+        diffusions = diffusionsSuivantes;
+        diffusionsSuivantes = termine;
+
+        Totaux totaux = new Totaux(messagesRecus.sum(), messagesEnvoyes.sum(), octetsRecus.sum(),
+                octetsEnvoyes.sum(), connexionsAcceptees.sum());
+        double secondes = duree / 1e9;
+        dernier = new Intervalle(
+                (totaux.messagesRecus() - totauxDebut.messagesRecus()) / secondes,
+                (totaux.messagesEnvoyes() - totauxDebut.messagesEnvoyes()) / secondes,
+                (totaux.octetsRecus() - totauxDebut.octetsRecus()) / secondes,
+                (totaux.octetsEnvoyes() - totauxDebut.octetsEnvoyes()) / secondes,
+                (totaux.connexionsAcceptees() - totauxDebut.connexionsAcceptees()) / secondes,
+                termine.valeurAuCentile(50), termine.valeurAuCentile(99), termine.getMax());
+        totauxDebut = totaux;
+        debutIntervalle = maintenant;
+        return dernier;
+    }
+
+    @Override
+    public long getMessagesRecus() {
+        return messagesRecus.sum();
+    }
+
+    @Override
+    public long getMessagesEnvoyes() {
+        return messagesEnvoyes.sum();
+    }
+
+    @Override
+    public long getOctetsRecus() {
+        return octetsRecus.sum();
+    }
+
+    @Override
+    public long getOctetsEnvoyes() {
+        return octetsEnvoyes.sum();
+    }
+
+    @Override
+    public double getMessagesRecusParSeconde() {
+        return intervalle().messagesRecus();
+    }
+
+    @Override
+    public double getMessagesEnvoyesParSeconde() {
+        return intervalle().messagesEnvoyes();
+    }
+
+    @Override
+    public double getOctetsRecusParSeconde() {
+        return intervalle().octetsRecus();
+    }
+
+    @Override
+    public double getOctetsEnvoyesParSeconde() {
+        return intervalle().octetsEnvoyes();
+    }
+
+    @Override
+    public long getConnexionsAcceptees() {
+        return connexionsAcceptees.sum();
+    }
+
+    @Override
+    public double getConnexionsAccepteesParSeconde() {
+        return intervalle().connexionsAcceptees();
+    }
+
+    @Override
+    public double getDiffusionP50Micros() {
+        return intervalle().diffusionP50() / 1e3;
+    }
+
+    @Override
+    public double getDiffusionP99Micros() {
+        return intervalle().diffusionP99() / 1e3;
+    }
+
+    @Override
+    public double getDiffusionMaxMicros() {
+        return intervalle().diffusionMax() / 1e3;
+    }
+
+    @Override
+    public int getNombreClients() {
+        return clients.size();
+    }
+
+    @Override
+    public int getProfondeurMaxFiles() {
+        int profondeurMax = 0;
+        for (ClientHandler client : clients) {
+            profondeurMax = Math.max(profondeurMax, client.getProfondeurFile());
+        }
+        return profondeurMax;
+    }
+
+    @Override
+    public double getProfondeurMoyenneFiles() {
+        long total = 0;
+        int nombre = 0;
+        for (ClientHandler client : clients) {
+            total += client.getProfondeurFile();
+            nombre++;
+        }
+        return nombre == 0 ? 0 : (double) total / nombre;
+    }
+
+    @Override
+    public long getTramesSupprimees() {
+        return tramesSupprimees.sum();
+    }
+
+    @Override
+    public long getMessagesRelayes() {
+        return messagesRelayes.sum();
+    }
+
+    @Override
+    public long getMessagesFederes() {
+        return messagesFederes.sum();
+    }
+
+    @Override
+    public long getDoublonsEcartes() {
+        return doublonsEcartes.sum();
+    }
+
+    @Override
+    public long getLecturesSuspendues() {
+        return lecturesSuspendues.sum();
+    }
+
+    /**
+     * Durées par étape des messages tracés
+     */
+    public StatistiquesTrace getTraces() {
+        return traces;
+    }
+
+    @Override
+    public Map<String, Double> getTraceP50Micros() {
+        return centilesTrace(50);
+    }
+
+    @Override
+    public Map<String, Double> getTraceP99Micros() {
+        return centilesTrace(99);
+    }
+
+    private Map<String, Double> centilesTrace(double centile) {
+        Map<String, Double> parEtape = new LinkedHashMap<>();
+        for (EtapeTrace etape : ETAPES_SERVEUR) {
+            parEtape.put(etape.name(), (double) traces.getDurees(etape).valeurAuCentile(centile));
+        }
+        return parEtape;
+    }
+
+    /**
+     * Nombre de déconnexions pour une raison donnée
+     */
+    public long getDeconnexions(RaisonDeconnexion raison) {
+        return deconnexions[raison.ordinal()].sum();
+    }
+
+    @Override
+    public Map<String, Long> getDeconnexions() {
+        Map<String, Long> parRaison = new LinkedHashMap<>();
+        for (RaisonDeconnexion raison : RaisonDeconnexion.values()) {
+            parRaison.put(raison.name(), getDeconnexions(raison));
+        }
+        return parRaison;
+    }
+}
@@ -0,0 +1,79 @@
+package com.chatapp.server;
+
+import java.util.Map;
+
+/**
+ * Métriques du serveur publiées en JMX, sous {@code com.chatapp:type=Serveur,port=<port>}.
+ * Les débits et la durée des diffusions portent sur la dernière seconde écoulée.
+ */
+public interface MetriquesServeurMXBean {
+
+    long getMessagesRecus();
+
+    long getMessagesEnvoyes();
+
+    long getOctetsRecus();
+
+    long getOctetsEnvoyes();
+
+    double getMessagesRecusParSeconde();
+
+    double getMessagesEnvoyesParSeconde();
+
+    double getOctetsRecusParSeconde();
+
+    double getOctetsEnvoyesParSeconde();
+
+    long getConnexionsAcceptees();
+
+    double getConnexionsAccepteesParSeconde();
+
+    double getDiffusionP50Micros();
+
+    double getDiffusionP99Micros();
+
+    double getDiffusionMaxMicros();
+
+    int getNombreClients();
+
+    int getProfondeurMaxFiles();
+
+    double getProfondeurMoyenneFiles();
+
+    long getTramesSupprimees();
+
+    /**
+     * Messages des clients locaux relayés aux autres nœuds de la fédération
+     */
+    long getMessagesRelayes();
+
+    /**
+     * Messages reçus des autres nœuds et diffusés localement
+     */
+    long getMessagesFederes();
+
+    /**
+     * Messages reçus en double d'un autre nœud et écartés
+     */
+    long getDoublonsEcartes();
+
+    /**
+     * Pauses de lecture imposées aux clients qui dépassent leur débit
+     */
+    long getLecturesSuspendues();
+
+    /**
+     * Médiane par étape serveur des messages tracés, depuis le démarrage
+     */
+    Map<String, Double> getTraceP50Micros();
+
+    /**
+     * 99e centile par étape serveur des messages tracés, depuis le démarrage
+     */
+    Map<String, Double> getTraceP99Micros();
+
+    /**
+     * Nombre de déconnexions par raison
+     */
+    Map<String, Long> getDeconnexions();
+}
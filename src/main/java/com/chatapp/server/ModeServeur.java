@@ -0,0 +1,24 @@
+package com.chatapp.server;
+
+/**
+ * Moteurs d'entrées/sorties disponibles pour le serveur
+ */
+public enum ModeServeur {
+    /** Un thread bloquant par client connecté */
+    BLOQUANT("Bloquant (thread par client)"),
+    /** Un thread virtuel bloquant par client connecté */
+    VIRTUEL("Threads virtuels"),
+    /** Boucles d'événements non bloquantes, une par cœur */
+    NIO("NIO (sélecteurs)");
+
+    private final String libelle;
+
+    ModeServeur(String libelle) {
+        this.libelle = libelle;
+    }
+
+    @Override
+    public String toString() {
+        return libelle;
+    }
+}
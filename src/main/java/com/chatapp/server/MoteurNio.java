@@ -0,0 +1,91 @@
+package com.chatapp.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moteur NIO : un thread d'acceptation répartit les connexions
+ * sur un nombre fixe de boucles d'événements (une par cœur)
+ */
+public class MoteurNio {
+    private static final Logger LOGGER = Logger.getLogger(MoteurNio.class.getName());
+
+    private final Server server;
+    private final int port;
+    private final BoucleEvenements[] boucles;
+    private ServerSocketChannel canalServeur;
+    private volatile boolean isRunning = false;
+    private int prochaineBoucle = 0;
+
+    public MoteurNio(Server server, int port) throws IOException {
+        this(server, port, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MoteurNio(Server server, int port, int nombreBoucles) throws IOException {
+        this.server = server;
+        this.port = port;
+        this.boucles = new BoucleEvenements[nombreBoucles];
+        for (int i = 0; i < nombreBoucles; i++) {
+            boucles[i] = new BoucleEvenements(server, i);
+        }
+    }
+
+    /**
+     * Ouvre le canal d'écoute et démarre les boucles d'événements
+     */
+    public void demarrer() throws IOException {
+        canalServeur = ServerSocketChannel.open();
+        canalServeur.bind(new InetSocketAddress(port));
+        isRunning = true;
+
+        for (BoucleEvenements boucle : boucles) {
+            boucle.demarrer();
+        }
+        new Thread(this::accepterConnexions, "acceptation-nio").start();
+    }
+
+    /**
+     * Accepte les connexions entrantes et les répartit entre les boucles
+     */
+    private void accepterConnexions() {
+        while (isRunning) {
+            try {
+                SocketChannel canal = canalServeur.accept();
+                server.getMetriques().connexionAcceptee();
+                LOGGER.log(Level.INFO, "Nouvelle connexion acceptée: {0}", canal.getRemoteAddress());
+
+                boucles[prochaineBoucle].enregistrer(canal);
+                prochaineBoucle = (prochaineBoucle + 1) % boucles.length;
+
+            } catch (IOException e) {
+                if (isRunning) {
+                    LOGGER.log(Level.SEVERE, "Erreur lors de l'acceptation d'une connexion", e);
+                    server.ajouterAuJournal("Erreur lors de l'acceptation d'une connexion: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Arrête l'acceptation et les boucles d'événements
+     */
+    public void arreter() {
+        isRunning = false;
+        try {
+            if (canalServeur != null) canalServeur.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Erreur lors de la fermeture du serveur", e);
+        }
+        for (BoucleEvenements boucle : boucles) {
+            boucle.arreter();
+        }
+    }
+
+    public int getNombreBoucles() {
+        return boucles.length;
+    }
+}
@@ -0,0 +1,11 @@
+package com.chatapp.server;
+
+/**
+ * Comportement lorsque la file sortante d'un client trop lent est pleine
+ */
+public enum PolitiqueConsommateurLent {
+    /** Supprimer la trame la plus ancienne pour faire de la place */
+    SUPPRIMER_PLUS_ANCIEN,
+    /** Déconnecter le client */
+    DECONNECTER
+}
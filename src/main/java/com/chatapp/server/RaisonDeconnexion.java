@@ -0,0 +1,32 @@
+package com.chatapp.server;
+
+/**
+ * Cause de la fermeture d'une connexion client, comptée dans les métriques du serveur
+ */
+public enum RaisonDeconnexion {
+    /** Le client a envoyé DECONNEXION */
+    DEMANDEE("demandée"),
+    /** Fin de flux ou erreur réseau */
+    CONNEXION_PERDUE("perdue"),
+    /** File sortante pleine avec la politique DECONNECTER */
+    CLIENT_LENT("client lent"),
+    /** Nom d'utilisateur refusé à la CONNEXION */
+    REFUSEE("refusée"),
+    /** Arrêt du serveur */
+    ARRET_SERVEUR("arrêt du serveur"),
+    /** Aucune trame reçue pendant le délai d'inactivité */
+    INACTIVITE("inactivité"),
+    /** Session reprise par une nouvelle connexion du même utilisateur */
+    REMPLACEE("remplacée");
+
+    private final String libelle;
+
+    RaisonDeconnexion(String libelle) {
+        this.libelle = libelle;
+    }
+
+    @Override
+    public String toString() {
+        return libelle;
+    }
+}
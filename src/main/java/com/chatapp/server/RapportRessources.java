@@ -0,0 +1,54 @@
+package com.chatapp.server;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Mesures des ressources consommées par le processus serveur
+ */
+public final class RapportRessources {
+
+    private static final Path STATUT_PROCESSUS = Path.of("/proc/self/status");
+
+    private RapportRessources() {
+    }
+
+    /**
+     * Retourne le nombre de threads de plateforme vivants
+     * (les threads virtuels ne sont pas comptés)
+     */
+    public static int getNombreThreads() {
+        return ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+    /**
+     * Retourne la mémoire résidente du processus en octets, ou -1 si elle n'est pas disponible
+     */
+    public static long getMemoireResidente() {
+        try {
+            List<String> lignes = Files.readAllLines(STATUT_PROCESSUS);
+            for (String ligne : lignes) {
+                if (ligne.startsWith("VmRSS:")) {
+                    String valeur = ligne.substring("VmRSS:".length()).replace("kB", "").trim();
+                    return Long.parseLong(valeur) * 1024;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Système sans /proc : mesure indisponible
+        }
+        return -1;
+    }
+
+    /**
+     * Résume les ressources consommées sous forme lisible
+     */
+    public static String resumer() {
+        long rss = getMemoireResidente();
+        return String.format("threads: %d, RSS: %s",
+                getNombreThreads(),
+                rss < 0 ? "n/d" : (rss / (1024 * 1024)) + " Mo");
+    }
+}
@@ -0,0 +1,175 @@
+package com.chatapp.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Roue de temporisation hachée qui écarte les éléments restés inactifs pendant un délai donné.
+ * Le délai est découpé en {@value #CRANS_PAR_DELAI} crans ; un seul thread fait tourner la roue
+ * et ne visite à chaque cran que les éléments dont l'échéance tombe sur ce cran.
+ * Une activité ne déplace rien : elle note le cran courant dans le suivi de l'élément.
+ * À son échéance, un élément actif entre-temps est replacé au cran de sa dernière activité
+ * plus le délai ; chaque élément n'est donc visité qu'une fois par délai, quel que soit
+ * le nombre de messages, et sans thread ni tâche planifiée par élément.
+ */
+public class RoueInactivite<T> {
+    private static final Logger LOGGER = Logger.getLogger(RoueInactivite.class.getName());
+
+    static final int CRANS_PAR_DELAI = 64;
+    // Puissance de deux supérieure au délai : une échéance est toujours à moins d'un tour
+    private static final int NOMBRE_CASES = 2 * CRANS_PAR_DELAI;
+    private static final int MASQUE = NOMBRE_CASES - 1;
+
+    private final long resolutionMs;
+    private final Consumer<T> expiration;
+    private final ScheduledExecutorService thread;
+    // Listes chaînées des suivis par case (thread de la roue uniquement)
+    @SuppressWarnings("unchecked")
+    private final Suivi<T>[] cases = (Suivi<T>[]) new Suivi<?>[NOMBRE_CASES];
+    private final Queue<Suivi<T>> nouveaux = new ConcurrentLinkedQueue<>();
+    // Horloge grossière lue à chaque activité, avancée par le seul thread de la roue
+    private volatile long cran = 0;
+    private volatile int nombreSuivis = 0;
+
+    /**
+     * Élément suivi par la roue
+     */
+    public static final class Suivi<T> {
+        private final RoueInactivite<T> roue;
+        private final T element;
+        private volatile long derniereActivite;
+        private volatile boolean annule = false;
+        // Cran d'échéance et suivant dans la case (thread de la roue uniquement)
+        private long echeance;
+        private Suivi<T> suivant;
+
+        private Suivi(RoueInactivite<T> roue, T element) {
+            this.roue = roue;
+            this.element = element;
+            this.derniereActivite = roue.cran;
+        }
+
+        /**
+         * Note une activité de l'élément ; au plus une écriture par cran
+         */
+        public void marquerActivite() {
+            long maintenant = roue.cran;
+            if (derniereActivite != maintenant) {
+                derniereActivite = maintenant;
+            }
+        }
+
+        /**
+         * Cesse de suivre l'élément ; il quitte la roue à sa prochaine échéance
+         */
+        public void annuler() {
+            annule = true;
+        }
+    }
+
+    /**
+     * Roue qui appelle l'expiration (sur son propre thread) pour chaque élément
+     * inactif depuis le délai donné, à une résolution de délai / {@value #CRANS_PAR_DELAI} près
+     */
+    public RoueInactivite(String nom, long delaiMs, Consumer<T> expiration) {
+        if (delaiMs <= 0) {
+            throw new IllegalArgumentException("Le délai doit être positif: " + delaiMs);
+        }
+        this.resolutionMs = Math.max(1, delaiMs / CRANS_PAR_DELAI);
+        this.expiration = expiration;
+        this.thread = Executors.newSingleThreadScheduledExecutor(tache -> {
+            Thread t = new Thread(tache, nom);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void demarrer() {
+        thread.scheduleAtFixedRate(this::avancer, resolutionMs, resolutionMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Commence à suivre un élément, considéré comme actif à partir de maintenant (tout thread)
+     */
+    public Suivi<T> suivre(T element) {
+        Suivi<T> suivi = new Suivi<>(this, element);
+        nouveaux.add(suivi);
+        return suivi;
+    }
+
+    /**
+     * Avance d'un cran : place les nouveaux suivis puis traite ceux dont l'échéance est atteinte
+     */
+    private void avancer() {
+        try {
+            long maintenant = cran + 1;
+            cran = maintenant;
+
+            Suivi<T> nouveau;
+            while ((nouveau = nouveaux.poll()) != null) {
+                placer(nouveau, nouveau.derniereActivite + CRANS_PAR_DELAI);
+                nombreSuivis++;
+            }
+
+            int indice = (int) (maintenant & MASQUE);
+            Suivi<T> suivi = cases[indice];
+            cases[indice] = null;
+            while (suivi != null) {
+                Suivi<T> suivant = suivi.suivant;
+                suivi.suivant = null;
+                if (suivi.annule) {
+                    nombreSuivis--;
+                } else if (maintenant - suivi.derniereActivite >= CRANS_PAR_DELAI) {
+                    nombreSuivis--;
+                    expirer(suivi);
+                } else {
+                    placer(suivi, suivi.derniereActivite + CRANS_PAR_DELAI);
+                }
+                suivi = suivant;
+            }
+        } catch (RuntimeException e) {
+            // Une exception arrêterait la roue pour de bon
+            LOGGER.log(Level.SEVERE, "Erreur dans la roue d'inactivité", e);
+        }
+    }
+
+    private void placer(Suivi<T> suivi, long echeance) {
+        // Jamais dans la case en cours de traitement : au plus tôt au cran suivant
+        suivi.echeance = Math.max(echeance, cran + 1);
+        int indice = (int) (suivi.echeance & MASQUE);
+        suivi.suivant = cases[indice];
+        cases[indice] = suivi;
+    }
+
+    private void expirer(Suivi<T> suivi) {
+        try {
+            expiration.accept(suivi.element);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Erreur lors de l'expiration d'un élément inactif", e);
+        }
+    }
+
+    /**
+     * Nombre d'éléments placés dans la roue, y compris ceux annulés depuis leur dernière échéance
+     */
+    public int getNombreSuivis() {
+        return nombreSuivis;
+    }
+
+    /**
+     * Durée d'un cran en millisecondes
+     */
+    public long getResolutionMs() {
+        return resolutionMs;
+    }
+
+    public void arreter() {
+        thread.shutdownNow();
+    }
+}
@@ -1,43 +1,134 @@
 package com.chatapp.server;
 
+import com.chatapp.model.CodecMessage;
+import com.chatapp.model.EtapeTrace;
+import com.chatapp.model.FormatHeure;
 import com.chatapp.model.Message;
+import com.chatapp.model.TrameInvalideException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * Classe principale du serveur de chat
  */
 public class Server {
     private static final Logger LOGGER = Logger.getLogger(Server.class.getName());
+    private static final SecureRandom ALEA = new SecureRandom();
+    // Noms dont le dernier jeton de reprise reste valable, les plus anciens oubliés au-delà
+    private static final int JETONS_MAX = 4096;
 
     private final int port;
+    private final ModeServeur mode;
+    private final ConfigurationServeur configuration;
     private ServerSocket serverSocket;
+    private MoteurNio moteurNio;
+    private ExecutorService executeur;
+    private HistoriqueMessages historique;
+    // Ferme les connexions sans trame reçue depuis le délai d'inactivité (null : jamais)
+    private volatile RoueInactivite<ClientHandler> roueInactivite;
     private final List<ClientHandler> clients = new CopyOnWriteArrayList<>();
-    private final List<String> journalMessages = new ArrayList<>();
-    private boolean isRunning = false;
+    // Abonnés de chaque salon ; un salon vide disparaît
+    private final Map<String, Set<ClientHandler>> salons = new ConcurrentHashMap<>();
+    // Index des utilisateurs connectés par nom, pour les messages directs
+    private final Map<String, ClientHandler> utilisateurs = new ConcurrentHashMap<>();
+    // Dernier jeton de reprise remis à chaque nom (protégé par lui-même)
+    private final Map<String, String> jetonsReprise = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> plusAncien) {
+            return size() > JETONS_MAX;
+        }
+    };
+    private final AnneauCirculaire<String> journalMessages;
+    // Derniers messages séquencés, rejoués aux clients qui reprennent leur session
+    private final AnneauCirculaire<MessageEncode> messagesRecents;
+    // Attribue les séquences et conserve les messages (mémoire, historique) dans ce même ordre ;
+    // la diffusion se fait ensuite, hors de ce verrou
+    private final ReentrantLock verrouSequence = new ReentrantLock();
+    // Verrous des salons, par hachage du nom, pris avant verrouSequence et gardés pendant
+    // la diffusion : les abonnés d'un salon en reçoivent les messages dans l'ordre des
+    // séquences, sans que les autres salons attendent
+    private final ReentrantLock[] verrousSalons = new ReentrantLock[64];
+    // Les séquences partent de l'heure de démarrage en microsecondes pour rester
+    // croissantes d'une exécution du serveur à la suivante
+    private final long baseSequence = System.currentTimeMillis() * 1000;
+    private volatile boolean isRunning = false;
+    // Sérialise les changements de présence : chaque client reçoit les deltas dans l'ordre des versions
+    private final ReentrantLock verrouPresence = new ReentrantLock();
+    private long versionPresence = 0;
+    // Clients dont l'arrivée a été annoncée, dans l'ordre d'arrivée (protégé par verrouPresence)
+    private final Set<ClientHandler> presents = new LinkedHashSet<>();
+    // Utilisateurs des autres nœuds de la fédération, par nœud (protégé par verrouPresence)
+    private final Map<Long, Set<String>> utilisateursDistants = new LinkedHashMap<>();
+    private volatile Federation federation;
+    private final MetriquesServeur metriques = new MetriquesServeur(clients);
+    private ObjectName nomMetriques;
 
     public Server(int port) {
+        this(port, ModeServeur.BLOQUANT);
+    }
+
+    public Server(int port, ModeServeur mode) {
+        this(port, mode, new ConfigurationServeur());
+    }
+
+    public Server(int port, ModeServeur mode, ConfigurationServeur configuration) {
         this.port = port;
+        this.mode = mode;
+        this.configuration = configuration;
+        this.journalMessages = new AnneauCirculaire<>(configuration.getCapaciteJournal());
+        this.messagesRecents = new AnneauCirculaire<>(configuration.getCapaciteReprise());
+        for (int i = 0; i < verrousSalons.length; i++) {
+            verrousSalons[i] = new ReentrantLock();
+        }
     }
 
     /**
      * Démarre le serveur sur le port spécifié
      */
     public void demarrer() {
+        ouvrirHistorique();
+        demarrerRoueInactivite();
         try {
-            serverSocket = new ServerSocket(port);
+            if (mode == ModeServeur.NIO) {
+                moteurNio = new MoteurNio(this, port);
+                moteurNio.demarrer();
+            } else {
+                serverSocket = new ServerSocket(port);
+                executeur = creerExecuteur();
+            }
             isRunning = true;
-            LOGGER.log(Level.INFO, "Serveur démarré sur le port {0}", port);
-            ajouterAuJournal("Serveur démarré sur le port " + port);
+            publierMetriques();
+            demarrerFederation();
+            LOGGER.log(Level.INFO, "Serveur démarré sur le port {0} (mode {1})", new Object[]{port, mode});
+            ajouterAuJournal("Serveur démarré sur le port " + port + " (mode " + mode + ")");
 
-            // Thread d'acceptation des connexions
-            new Thread(this::accepterConnexions).start();
+            // Thread d'acceptation des connexions (le moteur NIO a le sien)
+            if (executeur != null) {
+                executeur.execute(this::accepterConnexions);
+            }
 
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Erreur lors du démarrage du serveur", e);
@@ -45,6 +136,90 @@ public class Server {
         }
     }
 
+    /**
+     * Publie les métriques en JMX ; le serveur fonctionne aussi sans
+     */
+    private void publierMetriques() {
+        try {
+            nomMetriques = new ObjectName("com.chatapp:type=Serveur,port=" + port);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metriques, nomMetriques);
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Métriques non publiées en JMX", e);
+            nomMetriques = null;
+        }
+    }
+
+    private void retirerMetriques() {
+        if (nomMetriques == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(nomMetriques);
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Erreur lors du retrait des métriques JMX", e);
+        }
+        nomMetriques = null;
+    }
+
+    /**
+     * Relie ce serveur aux autres nœuds de la fédération, si elle est configurée
+     */
+    private void demarrerFederation() {
+        if (configuration.getPortFederation() == 0 && configuration.getPairs().isEmpty()) return;
+
+        Federation nouvelle = new Federation(this);
+        try {
+            nouvelle.demarrer(configuration.getPortFederation(), configuration.getInterfaceFederation(),
+                    configuration.getPairsAutorises(), configuration.getPairs());
+            federation = nouvelle;
+            ajouterAuJournal("Fédération: nœud " + Long.toHexString(nouvelle.getIdentifiant())
+                    + ", port " + configuration.getPortFederation()
+                    + " sur " + configuration.getInterfaceFederation().getHostAddress()
+                    + (configuration.getPairsAutorises().isEmpty() ? "" : ", autorisés " + configuration.getPairsAutorises())
+                    + ", pairs " + configuration.getPairs());
+        } catch (IOException e) {
+            nouvelle.arreter();
+            LOGGER.log(Level.WARNING, "Fédération indisponible", e);
+            ajouterAuJournal("Fédération désactivée: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Relaie aux autres nœuds un message diffusé par un client local
+     */
+    void relayer(Message message) {
+        Federation actuelle = federation;
+        if (actuelle != null) {
+            actuelle.relayer(message);
+        }
+    }
+
+    /**
+     * Ouvre l'historique sur disque ; sans lui le serveur fonctionne sans mémoire
+     */
+    private void ouvrirHistorique() {
+        if (configuration.getRepertoireHistorique() == null) return;
+
+        try {
+            historique = new HistoriqueMessages(configuration.getRepertoireHistorique(),
+                    configuration.getTailleSegmentHistorique(),
+                    configuration.getSegmentsHistoriqueConserves());
+            historique.demarrer();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Historique indisponible", e);
+            ajouterAuJournal("Historique désactivé: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Crée l'exécuteur qui lance une tâche par client, sur un thread
+     * de plateforme ou sur un thread virtuel selon le mode
+     */
+    private ExecutorService creerExecuteur() {
+        if (mode == ModeServeur.VIRTUEL) {
+            return Executors.newVirtualThreadPerTaskExecutor();
+        }
+        return Executors.newThreadPerTaskExecutor(Thread.ofPlatform().factory());
+    }
+
     /**
      * Accepte les connexions entrantes et crée un handler pour chaque client
      */
@@ -52,11 +227,13 @@ public class Server {
         while (isRunning) {
             try {
                 Socket clientSocket = serverSocket.accept();
+                metriques.connexionAcceptee();
                 LOGGER.log(Level.INFO, "Nouvelle connexion acceptée: {0}", clientSocket.getInetAddress());
 
-                ClientHandler clientHandler = new ClientHandler(this, clientSocket);
-                clients.add(clientHandler);
-                new Thread(clientHandler).start();
+                ConnexionBloquante connexion = new ConnexionBloquante(this, clientSocket);
+                ajouterClient(connexion.getHandler());
+                executeur.execute(connexion);
+                executeur.execute(connexion::ecrire);
 
             } catch (IOException e) {
                 if (isRunning) {
@@ -68,47 +245,655 @@ public class Server {
     }
 
     /**
-     * Diffuse un message à tous les clients connectés
+     * Ajoute un client à la liste des clients connectés
+     */
+    void ajouterClient(ClientHandler client) {
+        clients.add(client);
+        RoueInactivite<ClientHandler> roue = roueInactivite;
+        if (roue != null) {
+            client.suivreInactivite(roue.suivre(client));
+        }
+    }
+
+    /**
+     * Remplace un client qui n'a encore rien envoyé par une connexion bloquante
+     * sur le même socket, et démarre ses threads
+     */
+    void transfererClient(ClientHandler ancien, ConnexionBloquante connexion) {
+        clients.remove(ancien);
+        ancien.arreterSuiviInactivite();
+        ajouterClient(connexion.getHandler());
+        Thread.ofVirtual().name("flux-objets-lecture").start(connexion);
+        Thread.ofVirtual().name("flux-objets-ecriture").start(connexion::ecrire);
+    }
+
+    /**
+     * Démarre la roue qui ferme les connexions inactives ; un seul thread pour toutes
+     */
+    private void demarrerRoueInactivite() {
+        long delai = configuration.getDelaiInactiviteMs();
+        if (delai == 0) return;
+
+        RoueInactivite<ClientHandler> roue = new RoueInactivite<>("inactivite-" + port, delai, client -> {
+            ajouterAuJournal("Connexion inactive fermée: "
+                    + (client.getNomUtilisateur() != null ? client.getNomUtilisateur() : "inconnu"));
+            client.fermer(RaisonDeconnexion.INACTIVITE);
+        });
+        roue.demarrer();
+        roueInactivite = roue;
+    }
+
+    /**
+     * Abonne un nouvel utilisateur au salon par défaut et lui rejoue les derniers messages
+     * de ce salon présents dans l'historique, avant tout message en direct
+     */
+    void accueillir(ClientHandler client) {
+        long limite;
+        verrouSequence.lock();
+        try {
+            // Sous le verrou, seulement l'abonnement et la borne : les messages plus récents
+            // sont retenus par le client jusqu'à la fin du rattrapage
+            client.commencerRattrapage(baseSequence + messagesRecents.getProchaineSequence());
+            rejoindreSalon(client, Message.SALON_PAR_DEFAUT);
+            limite = historique == null ? 0 : historique.getProchainOffset();
+        } finally {
+            verrouSequence.unlock();
+        }
+        try {
+            rejouerHistorique(client, limite);
+        } finally {
+            client.terminerRattrapage();
+        }
+    }
+
+    /**
+     * Envoie au client en rattrapage les derniers messages du salon par défaut
+     * présents dans l'historique, d'offset inférieur à la limite
+     */
+    private void rejouerHistorique(ClientHandler client, long limite) {
+        if (historique == null) return;
+
+        historique.lireDerniers(configuration.getMessagesRejoues(), limite, trame -> {
+            try {
+                MessageEncode message = MessageEncode.depuisTrameBinaire(trame);
+                return message.getMessage().estDansSalonParDefaut() ? message : null;
+            } catch (TrameInvalideException e) {
+                LOGGER.log(Level.WARNING, "Message illisible dans l'historique", e);
+                return null;
+            }
+        }, message -> {
+            if (message.getMessage().estTrace()) {
+                // Les marques d'une diffusion passée fausseraient les durées mesurées par le client
+                message.getMessage().effacerTrace();
+                message = new MessageEncode(message.getMessage());
+            }
+            client.envoyerRattrapage(message);
+        });
+    }
+
+    /**
+     * Associe un nom à un client ; échoue si un autre client porte déjà ce nom,
+     * ici ou sur un autre nœud de la fédération
+     */
+    boolean reserverNom(ClientHandler client, String nom) {
+        if (noeudDistant(nom) != 0) return false;
+        return utilisateurs.putIfAbsent(nom, client) == null;
+    }
+
+    /**
+     * Nœud de la fédération où l'utilisateur est connecté, 0 s'il n'est sur aucun autre nœud
+     */
+    private long noeudDistant(String nom) {
+        verrouPresence.lock();
+        try {
+            for (Map.Entry<Long, Set<String>> noeud : utilisateursDistants.entrySet()) {
+                if (noeud.getValue().contains(nom)) return noeud.getKey();
+            }
+            return 0;
+        } finally {
+            verrouPresence.unlock();
+        }
+    }
+
+    /**
+     * Attribue à un client qui reprend sa session le nom qu'il portait. Une connexion
+     * à demi coupée peut encore le détenir : elle est fermée et le nom lui est repris.
+     * N'est appelée qu'après {@link #verifierJeton}, sans quoi n'importe qui évincerait le titulaire.
+     */
+    boolean reprendreNom(ClientHandler client, String nom) {
+        ClientHandler ancien = utilisateurs.get(nom);
+        if (ancien != null && ancien != client) {
+            ajouterAuJournal("Session de " + nom + " reprise par une nouvelle connexion");
+            ancien.fermer(RaisonDeconnexion.REMPLACEE);
+        }
+        return reserverNom(client, nom);
+    }
+
+    /**
+     * Remet un nouveau jeton de reprise au titulaire du nom ; le précédent ne vaut plus rien
+     */
+    String emettreJeton(String nom) {
+        byte[] octets = new byte[16];
+        ALEA.nextBytes(octets);
+        String jeton = HexFormat.of().formatHex(octets);
+        synchronized (jetonsReprise) {
+            jetonsReprise.put(nom, jeton);
+        }
+        return jeton;
+    }
+
+    /**
+     * Vérifie que le jeton présenté est le dernier remis pour ce nom
+     */
+    boolean verifierJeton(String nom, String jeton) {
+        if (nom == null || jeton == null) return false;
+        String attendu;
+        synchronized (jetonsReprise) {
+            attendu = jetonsReprise.get(nom);
+        }
+        return attendu != null && MessageDigest.isEqual(
+                attendu.getBytes(StandardCharsets.UTF_8), jeton.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Libère le nom d'un client, s'il lui appartient encore
+     */
+    void libererNom(ClientHandler client) {
+        String nom = client.getNomUtilisateur();
+        if (nom != null) {
+            utilisateurs.remove(nom, client);
+        }
+    }
+
+    /**
+     * Remet un message DIRECT à son seul destinataire, avec une copie pour l'expéditeur.
+     * Un destinataire connecté à un autre nœud le reçoit par la liaison vers ce seul nœud.
+     */
+    void envoyerDirect(ClientHandler expediteur, Message message) {
+        ClientHandler destinataire = utilisateurs.get(message.getDestinataire());
+        long noeud = destinataire == null ? noeudDistant(message.getDestinataire()) : 0;
+        Federation actuelle = federation;
+        if (destinataire == null && (noeud == 0 || actuelle == null)) {
+            expediteur.envoyerErreur("Utilisateur inconnu: " + message.getDestinataire());
+            return;
+        }
+
+        MessageEncode encode = sequencerSeul(message);
+        if (destinataire == null) {
+            actuelle.relayerDirect(message, noeud);
+        } else {
+            remettreDirect(destinataire, message, encode);
+        }
+        if (destinataire != expediteur) {
+            expediteur.envoyerMessage(encode);
+        }
+    }
+
+    /**
+     * Remet un message DIRECT reçu d'un autre nœud à son destinataire local, s'il est encore là
+     */
+    void livrerDirect(Message message) {
+        ClientHandler destinataire = utilisateurs.get(message.getDestinataire());
+        if (destinataire == null) return;
+
+        remettreDirect(destinataire, message, sequencerSeul(message));
+    }
+
+    private static void remettreDirect(ClientHandler destinataire, Message message, MessageEncode encode) {
+        if (destinataire.getVersionProtocole() >= Message.TypeMessage.DIRECT.getVersionMinimale()) {
+            destinataire.envoyerMessage(encode);
+        } else {
+            // Un client de version 1 ne connaît pas DIRECT : il le reçoit comme un message ordinaire
+            destinataire.envoyerMessage(new Message(message.getExpediteur(),
+                    "(privé) " + message.getContenu(), Message.TypeMessage.MESSAGE));
+        }
+    }
+
+    private MessageEncode sequencerSeul(Message message) {
+        verrouSequence.lock();
+        try {
+            return sequencer(message);
+        } finally {
+            verrouSequence.unlock();
+        }
+    }
+
+    /**
+     * Numérote un message et le conserve pour les reprises de session (sous verrouSequence)
+     */
+    private MessageEncode sequencer(Message message) {
+        message.setSequence(baseSequence + messagesRecents.getProchaineSequence() + 1);
+        MessageEncode encode = new MessageEncode(message);
+        messagesRecents.ajouter(encode);
+        return encode;
+    }
+
+    /**
+     * Reprend la session d'un client reconnecté : le réabonne à ses salons puis lui renvoie,
+     * dans l'ordre, les messages de ses salons et ses messages directs postérieurs à la dernière
+     * séquence reçue. Si les messages conservés ne remontent plus jusque-là (serveur redémarré,
+     * absence trop longue), l'historique sur disque est rejoué comme à une connexion.
+     * Retourne le nombre de messages rejoués depuis la mémoire, -1 pour l'historique.
+     */
+    int reprendre(ClientHandler client, long derniereSequence, Collection<String> salonsClient) {
+        long fin;
+        long limite;
+        verrouSequence.lock();
+        try {
+            // Sous le verrou, seulement l'abonnement et les bornes : les messages plus récents
+            // sont retenus par le client jusqu'à la fin du rattrapage
+            fin = messagesRecents.getProchaineSequence();
+            client.commencerRattrapage(baseSequence + fin);
+            rejoindreSalon(client, Message.SALON_PAR_DEFAUT);
+            for (String salon : salonsClient) {
+                rejoindreSalon(client, salon);
+            }
+            limite = historique == null ? 0 : historique.getProchainOffset();
+        } finally {
+            verrouSequence.unlock();
+        }
+
+        try {
+            List<MessageEncode> manques = messagesManques(client, derniereSequence - baseSequence, fin);
+            if (manques == null) {
+                rejouerHistorique(client, limite);
+                return -1;
+            }
+            // Au-delà de la moitié de la file sortante, le rattrapage évincerait ses propres messages
+            int debut = Math.max(0, manques.size() - configuration.getCapaciteFileSortante() / 2);
+            for (int i = debut; i < manques.size(); i++) {
+                client.envoyerRattrapage(sansTrace(manques.get(i)));
+            }
+            return manques.size() - debut;
+        } finally {
+            client.terminerRattrapage();
+        }
+    }
+
+    /**
+     * Messages conservés qui concernent le client, du rang donné jusqu'à la borne exclue ;
+     * null si les plus anciens ont déjà été écrasés
+     */
+    private List<MessageEncode> messagesManques(ClientHandler client, long depuis, long fin) {
+        if (depuis < Math.max(0, fin - messagesRecents.capacite())) return null;
+
+        String nom = client.getNomUtilisateur();
+        List<MessageEncode> manques = new ArrayList<>();
+        messagesRecents.lireDepuis(depuis, encode -> {
+            Message message = encode.getMessage();
+            // Les séquences partent de baseSequence + 1 : le rang fin porte baseSequence + fin + 1
+            if (message.getSequence() > baseSequence + fin) return;
+            boolean concerne = message.getType() == Message.TypeMessage.DIRECT
+                    ? nom.equals(message.getDestinataire()) || nom.equals(message.getExpediteur())
+                    : client.getSalons().contains(message.getSalon());
+            if (concerne) {
+                manques.add(encode);
+            }
+        });
+        // Écrasés pendant la lecture : la mémoire ne couvre plus toute l'absence
+        if (depuis < messagesRecents.getProchaineSequence() - messagesRecents.capacite()) return null;
+        return manques;
+    }
+
+    /**
+     * Copie d'un message rejoué sans les marques de sa diffusion passée,
+     * qui fausseraient les durées mesurées par le client
+     */
+    private static MessageEncode sansTrace(MessageEncode encode) {
+        if (!encode.getMessage().estTrace()) return encode;
+        try {
+            Message copie = MessageEncode.depuisTrameBinaire(encode.trame(CodecMessage.VERSION_BINAIRE)).getMessage();
+            copie.effacerTrace();
+            return new MessageEncode(copie);
+        } catch (TrameInvalideException e) {
+            throw new IllegalStateException("Trame produite par le serveur illisible", e);
+        }
+    }
+
+    /**
+     * Abonne un client à un salon, créé au besoin.
+     * Retourne false s'il y était déjà.
+     */
+    boolean rejoindreSalon(ClientHandler client, String salon) {
+        boolean[] ajoute = new boolean[1];
+        // compute rend l'ajout atomique face à la suppression d'un salon devenu vide
+        salons.compute(salon, (nom, abonnes) -> {
+            if (abonnes == null) {
+                abonnes = ConcurrentHashMap.newKeySet();
+            }
+            ajoute[0] = abonnes.add(client);
+            return abonnes;
+        });
+        if (!ajoute[0]) return false;
+
+        client.getSalons().add(salon);
+        // Un client fermé entre-temps ne doit pas rester abonné
+        if (!client.estActif()) {
+            quitterSalon(client, salon);
+        }
+        return true;
+    }
+
+    /**
+     * Désabonne un client d'un salon et supprime le salon s'il est vide.
+     * Retourne false s'il n'y était pas.
+     */
+    boolean quitterSalon(ClientHandler client, String salon) {
+        boolean[] retire = new boolean[1];
+        salons.computeIfPresent(salon, (nom, abonnes) -> {
+            retire[0] = abonnes.remove(client);
+            return abonnes.isEmpty() ? null : abonnes;
+        });
+        client.getSalons().remove(salon);
+        return retire[0];
+    }
+
+    /**
+     * Diffuse un message aux seuls abonnés de son salon
+     */
+    public void diffuserDansSalon(Message message) {
+        message.marquer(EtapeTrace.DEBUT_DIFFUSION);
+        ajouterAuJournal(message.toString());
+        ReentrantLock verrouSalon = verrouSalon(message.getSalon());
+        verrouSalon.lock();
+        try {
+            MessageEncode encode;
+            verrouSequence.lock();
+            try {
+                encode = sequencer(message);
+                if (historique != null && message.getType() == Message.TypeMessage.MESSAGE) {
+                    historique.ajouter(encode.trame(CodecMessage.VERSION_BINAIRE));
+                }
+            } finally {
+                verrouSequence.unlock();
+            }
+
+            Set<ClientHandler> abonnes = salons.get(message.getSalon());
+            if (abonnes == null) return;
+            long debut = System.nanoTime();
+            for (ClientHandler client : abonnes) {
+                client.envoyerMessage(encode);
+            }
+            metriques.diffusionTerminee(System.nanoTime() - debut);
+        } finally {
+            verrouSalon.unlock();
+        }
+        if (message.estTrace()) {
+            // Les trames sont déjà parties : cette marque reste propre au serveur
+            message.marquer(EtapeTrace.FIN_DIFFUSION);
+            metriques.traceTerminee(message);
+        }
+    }
+
+    private ReentrantLock verrouSalon(String salon) {
+        int hachage = salon.hashCode();
+        return verrousSalons[(hachage ^ (hachage >>> 16)) & (verrousSalons.length - 1)];
+    }
+
+    /**
+     * Retourne le nombre d'abonnés d'un salon
+     */
+    public int getNombreAbonnes(String salon) {
+        Set<ClientHandler> abonnes = salons.get(salon);
+        return abonnes == null ? 0 : abonnes.size();
+    }
+
+    /**
+     * Crée la file sortante d'un nouveau client selon la configuration
+     */
+    FileSortante creerFileSortante() {
+        return new FileSortante(configuration.getCapaciteFileSortante(),
+                configuration.getPolitiqueConsommateurLent(), metriques.getCompteurTramesSupprimees());
+    }
+
+    /**
+     * Déconnecte un client dont la file sortante est pleine
+     */
+    void deconnecterClientLent(ClientHandler client) {
+        if (!client.estActif()) return;
+
+        LOGGER.log(Level.WARNING, "Client trop lent, déconnexion: {0}", client.getNomUtilisateur());
+        ajouterAuJournal("Client trop lent déconnecté: " + client.getNomUtilisateur());
+        client.fermer(RaisonDeconnexion.CLIENT_LENT);
+    }
+
+    /**
+     * Diffuse un message à tous les clients connectés.
+     * Le message est encodé une seule fois par version de protocole,
+     * quel que soit le nombre de destinataires.
      */
     public void diffuser(Message message) {
         ajouterAuJournal(message.toString());
+        diffuserSansJournal(new MessageEncode(message));
+    }
+
+    private void diffuserSansJournal(MessageEncode message) {
+        long debut = System.nanoTime();
         for (ClientHandler client : clients) {
             client.envoyerMessage(message);
         }
+        metriques.diffusionTerminee(System.nanoTime() - debut);
     }
 
     /**
      * Supprime un client de la liste des clients connectés
      */
     public void supprimerClient(ClientHandler client) {
-        clients.remove(client);
+        if (!clients.remove(client)) return;
+        libererNom(client);
+        for (String salon : client.getSalons()) {
+            quitterSalon(client, salon);
+        }
         ajouterAuJournal("Client déconnecté: " + client.getNomUtilisateur());
 
-        // Envoyer la liste mise à jour des utilisateurs
-        envoyerListeUtilisateurs();
+        // Inutile de prévenir des clients qui vont tous être déconnectés
+        if (isRunning) {
+            annoncerPresence(client, Message.TypeMessage.UTILISATEUR_PARTI);
+        }
+    }
+
+    /**
+     * Annonce l'arrivée d'un utilisateur : un delta pour les clients déjà connectés,
+     * la liste complète pour le nouveau venu
+     */
+    void annoncerArrivee(ClientHandler client) {
+        annoncerPresence(client, Message.TypeMessage.UTILISATEUR_REJOINT);
+    }
+
+    private void annoncerPresence(ClientHandler client, Message.TypeMessage type) {
+        verrouPresence.lock();
+        try {
+            boolean change = type == Message.TypeMessage.UTILISATEUR_REJOINT
+                    ? client.estActif() && presents.add(client)
+                    : presents.remove(client);
+            if (!change) return;
+
+            envoyerDelta(client.getNomUtilisateur(), type, client);
+            Federation actuelle = federation;
+            if (actuelle != null) {
+                actuelle.relayerPresence(client.getNomUtilisateur(), type);
+            }
+
+            if (type == Message.TypeMessage.UTILISATEUR_REJOINT && comprendDeltas(client)) {
+                Message instantane = new Message("Serveur", construireListeUtilisateurs(),
+                        Message.TypeMessage.LISTE_UTILISATEURS);
+                instantane.setVersionPresence(versionPresence);
+                client.envoyerMessage(instantane);
+            }
+
+            envoyerListeUtilisateurs();
+        } finally {
+            verrouPresence.unlock();
+        }
     }
 
     /**
-     * Envoie la liste des utilisateurs connectés à tous les clients
+     * Envoie un changement de présence numéroté à tous les clients sauf celui qui en est l'objet
+     * (appelée sous verrouPresence)
      */
-    public void envoyerListeUtilisateurs() {
-        StringBuilder listeUtilisateurs = new StringBuilder();
-        for (ClientHandler client : clients) {
-            if (client.getNomUtilisateur() != null) {
-                listeUtilisateurs.append(client.getNomUtilisateur()).append(",");
+    private void envoyerDelta(String nom, Message.TypeMessage type, ClientHandler exclu) {
+        versionPresence++;
+        Message delta = new Message("Serveur", nom, type);
+        delta.setVersionPresence(versionPresence);
+        MessageEncode deltaEncode = new MessageEncode(delta);
+
+        for (ClientHandler autre : clients) {
+            if (autre != exclu) {
+                autre.envoyerMessage(deltaEncode);
             }
         }
+    }
 
-        // Supprimer la dernière virgule si elle existe
-        if (listeUtilisateurs.length() > 0) {
-            listeUtilisateurs.deleteCharAt(listeUtilisateurs.length() - 1);
+    /**
+     * Applique l'arrivée ou le départ d'un utilisateur d'un autre nœud
+     */
+    void presenceDistante(long noeud, String nom, Message.TypeMessage type) {
+        List<ClientHandler> conflits = new ArrayList<>();
+        verrouPresence.lock();
+        try {
+            Set<String> noms = utilisateursDistants.computeIfAbsent(noeud, cle -> new LinkedHashSet<>());
+            boolean change = type == Message.TypeMessage.UTILISATEUR_REJOINT ? noms.add(nom) : noms.remove(nom);
+            if (noms.isEmpty()) {
+                utilisateursDistants.remove(noeud);
+            }
+            if (change) {
+                if (type == Message.TypeMessage.UTILISATEUR_REJOINT) {
+                    noterConflits(noeud, List.of(nom), conflits);
+                }
+                envoyerDelta(nom, type, null);
+                envoyerListeUtilisateurs();
+            }
+        } finally {
+            verrouPresence.unlock();
         }
+        evincerConflits(conflits);
+    }
 
-        Message message = new Message("Serveur", listeUtilisateurs.toString(),
-                Message.TypeMessage.LISTE_UTILISATEURS);
+    /**
+     * Remplace la liste des utilisateurs d'un autre nœud ; seules les différences sont annoncées.
+     * Une liste vide retire le nœud.
+     */
+    void remplacerPresenceDistante(long noeud, Collection<String> noms) {
+        List<ClientHandler> conflits = new ArrayList<>();
+        verrouPresence.lock();
+        try {
+            Set<String> anciens = utilisateursDistants.getOrDefault(noeud, Set.of());
+            Set<String> nouveaux = new LinkedHashSet<>(noms);
+            boolean change = false;
+            for (String nom : anciens) {
+                if (!nouveaux.contains(nom)) {
+                    envoyerDelta(nom, Message.TypeMessage.UTILISATEUR_PARTI, null);
+                    change = true;
+                }
+            }
+            for (String nom : nouveaux) {
+                if (!anciens.contains(nom)) {
+                    envoyerDelta(nom, Message.TypeMessage.UTILISATEUR_REJOINT, null);
+                    change = true;
+                }
+            }
+            noterConflits(noeud, nouveaux, conflits);
+            if (nouveaux.isEmpty()) {
+                utilisateursDistants.remove(noeud);
+            } else {
+                utilisateursDistants.put(noeud, nouveaux);
+            }
+            if (change) {
+                envoyerListeUtilisateurs();
+            }
+        } finally {
+            verrouPresence.unlock();
+        }
+        evincerConflits(conflits);
+    }
 
-        for (ClientHandler client : clients) {
-            client.envoyerMessage(message);
+    /**
+     * Relève les clients locaux qui portent un nom aussi connecté sur le nœud donné.
+     * Deux nœuds ont pu accepter le même nom en même temps : celui d'identifiant le plus
+     * petit le garde, chaque nœud appliquant la même règle (appelée sous verrouPresence).
+     */
+    private void noterConflits(long noeud, Collection<String> noms, List<ClientHandler> conflits) {
+        Federation actuelle = federation;
+        if (actuelle == null || noeud > actuelle.getIdentifiant()) return;
+
+        for (String nom : noms) {
+            ClientHandler local = utilisateurs.get(nom);
+            if (local != null) {
+                conflits.add(local);
+            }
+        }
+    }
+
+    /**
+     * Ferme, hors du verrou de présence, les sessions dont le nom revient à un autre nœud
+     */
+    private void evincerConflits(List<ClientHandler> conflits) {
+        for (ClientHandler client : conflits) {
+            client.evincer("Nom d'utilisateur déjà pris sur un autre nœud: " + client.getNomUtilisateur());
+        }
+    }
+
+    /**
+     * Exécute une action sous le verrou de présence avec la liste des utilisateurs locaux :
+     * aucun changement de présence ne peut s'intercaler
+     */
+    void avecPresenceLocale(Consumer<String> action) {
+        verrouPresence.lock();
+        try {
+            StringBuilder liste = new StringBuilder();
+            ajouterUtilisateursLocaux(liste);
+            action.accept(liste.toString());
+        } finally {
+            verrouPresence.unlock();
+        }
+    }
+
+    /**
+     * Envoie la liste complète des utilisateurs aux clients de version 1,
+     * qui ne comprennent pas les deltas de présence
+     */
+    public void envoyerListeUtilisateurs() {
+        verrouPresence.lock();
+        try {
+            MessageEncode message = null;
+            for (ClientHandler client : clients) {
+                if (comprendDeltas(client)) continue;
+
+                if (message == null) {
+                    message = new MessageEncode(new Message("Serveur", construireListeUtilisateurs(),
+                            Message.TypeMessage.LISTE_UTILISATEURS));
+                }
+                client.envoyerMessage(message);
+            }
+        } finally {
+            verrouPresence.unlock();
+        }
+    }
+
+    private static boolean comprendDeltas(ClientHandler client) {
+        return client.getVersionProtocole() >= Message.TypeMessage.UTILISATEUR_REJOINT.getVersionMinimale();
+    }
+
+    /**
+     * Construit la liste des utilisateurs annoncés, locaux puis ceux des autres nœuds,
+     * séparés par des virgules (appelée sous verrouPresence)
+     */
+    private String construireListeUtilisateurs() {
+        StringBuilder listeUtilisateurs = new StringBuilder();
+        ajouterUtilisateursLocaux(listeUtilisateurs);
+        for (Set<String> noms : utilisateursDistants.values()) {
+            for (String nom : noms) {
+                if (listeUtilisateurs.length() > 0) listeUtilisateurs.append(',');
+                listeUtilisateurs.append(nom);
+            }
+        }
+        return listeUtilisateurs.toString();
+    }
+
+    private void ajouterUtilisateursLocaux(StringBuilder liste) {
+        for (ClientHandler client : presents) {
+            if (liste.length() > 0) liste.append(',');
+            liste.append(client.getNomUtilisateur());
         }
     }
 
@@ -120,12 +905,41 @@ public class Server {
         LOGGER.info("Arrêt du serveur...");
         ajouterAuJournal("Arrêt du serveur...");
 
+        // Plus rien à relayer ni à recevoir des autres nœuds
+        Federation actuelle = federation;
+        if (actuelle != null) {
+            actuelle.arreter();
+            federation = null;
+        }
+
         // Fermer toutes les connexions client
         for (ClientHandler client : clients) {
-            client.fermer();
+            client.fermer(RaisonDeconnexion.ARRET_SERVEUR);
         }
 
         clients.clear();
+        retirerMetriques();
+
+        RoueInactivite<ClientHandler> roue = roueInactivite;
+        if (roue != null) {
+            roue.arreter();
+            roueInactivite = null;
+        }
+
+        // Écrire les derniers messages avant de libérer l'historique
+        if (historique != null) {
+            historique.arreter();
+        }
+
+        // Arrêter le moteur NIO
+        if (moteurNio != null) {
+            moteurNio.arreter();
+        }
+
+        // Libérer les threads des clients
+        if (executeur != null) {
+            executeur.shutdown();
+        }
 
         // Fermer le socket serveur
         try {
@@ -141,15 +955,37 @@ public class Server {
      * Ajoute un message au journal du serveur
      */
     public void ajouterAuJournal(String message) {
-        journalMessages.add("[" + java.time.LocalTime.now().format(
-                java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss")) + "] " + message);
+        journalMessages.ajouter("[" + FormatHeure.formater(System.currentTimeMillis()) + "] " + message);
     }
 
     /**
-     * Retourne la liste des messages du journal
+     * Retourne les messages encore présents dans le journal
      */
     public List<String> getJournalMessages() {
-        return new ArrayList<>(journalMessages);
+        return journalMessages.depuis(0);
+    }
+
+    /**
+     * Transmet les entrées du journal ajoutées depuis la séquence donnée
+     * et retourne la séquence à demander la fois suivante
+     */
+    public long lireJournalDepuis(long sequence, Consumer<String> consommateur) {
+        return journalMessages.lireDepuis(sequence, consommateur);
+    }
+
+    /**
+     * Indique si le serveur écoute : faux avant le démarrage, après l'arrêt
+     * ou si le port n'a pas pu être ouvert
+     */
+    public boolean estDemarre() {
+        return isRunning;
+    }
+
+    /**
+     * Retourne le mode d'entrées/sorties du serveur
+     */
+    public ModeServeur getMode() {
+        return mode;
     }
 
     /**
@@ -158,4 +994,40 @@ public class Server {
     public int getNombreClients() {
         return clients.size();
     }
+
+    /**
+     * Retourne la plus grande profondeur de file sortante parmi les clients
+     */
+    public int getProfondeurMaxFiles() {
+        return metriques.getProfondeurMaxFiles();
+    }
+
+    /**
+     * Retourne le nombre de trames supprimées pour des clients trop lents
+     */
+    public long getTramesSupprimees() {
+        return metriques.getTramesSupprimees();
+    }
+
+    /**
+     * Retourne le nombre de clients déconnectés parce que trop lents
+     */
+    public long getDeconnexionsClientsLents() {
+        return metriques.getDeconnexions(RaisonDeconnexion.CLIENT_LENT);
+    }
+
+    /**
+     * Fédération à laquelle appartient ce serveur, null s'il fonctionne seul
+     */
+    public Federation getFederation() {
+        return federation;
+    }
+
+    public MetriquesServeur getMetriques() {
+        return metriques;
+    }
+
+    public ConfigurationServeur getConfiguration() {
+        return configuration;
+    }
 }
\ No newline at end of file
@@ -26,6 +26,14 @@ public class ServerApplication extends Application {
         stage.setMinHeight(400);
         stage.show();
 
+        // Exécution d'entraînement de l'archive CDS : quitter une fois la fenêtre affichée
+        if (Boolean.getBoolean("chatapp.entrainement")) {
+            Platform.runLater(() -> {
+                Platform.exit();
+                System.exit(0);
+            });
+        }
+
         // Gestion de la fermeture propre de l'application
         stage.setOnCloseRequest(event -> {
             Platform.exit();
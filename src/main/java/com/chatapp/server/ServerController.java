@@ -1,11 +1,16 @@
 package com.chatapp.server;
 
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
-import javafx.application.Platform;
+import javafx.animation.AnimationTimer;
+import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.control.TextField;
@@ -15,15 +20,43 @@ import javafx.scene.control.TextField;
  */
 public class ServerController implements Initializable {
 
+    // Nombre maximal de lignes affichées dans le journal
+    private static final int LIGNES_MAX_JOURNAL = 1000;
+    private static final long PERIODE_STATISTIQUES_NANOS = 1_000_000_000L;
+
     @FXML private Button btnDemarrer;
     @FXML private Button btnArreter;
     @FXML private TextField txtPort;
+    @FXML private ComboBox<ModeServeur> cmbMode;
     @FXML private ListView<String> lstJournal;
     @FXML private Label lblStatut;
     @FXML private Label lblConnections;
+    @FXML private Label lblRessources;
+    @FXML private Label lblFiles;
+    @FXML private Label lblMessages;
+    @FXML private Label lblOctets;
+    @FXML private Label lblDiffusion;
+    @FXML private Label lblAcceptations;
+    @FXML private Label lblDeconnexions;
+    @FXML private Label lblTraces;
 
     private Server server;
     private boolean serverStarted = false;
+    private long sequenceJournal = 0;
+    private final List<String> nouvellesEntrees = new ArrayList<>();
+    private long dernieresStatistiques = 0;
+
+    // Rafraîchissement à chaque impulsion d'affichage : ne coûte que s'il y a du nouveau
+    private final AnimationTimer rafraichissement = new AnimationTimer() {
+        @Override
+        public void handle(long maintenant) {
+            afficherNouvellesEntrees();
+            if (serverStarted && maintenant - dernieresStatistiques >= PERIODE_STATISTIQUES_NANOS) {
+                dernieresStatistiques = maintenant;
+                updateUI();
+            }
+        }
+    };
 
     /**
      * Initialise le contrôleur
@@ -32,24 +65,10 @@ public class ServerController implements Initializable {
     public void initialize(URL url, ResourceBundle rb) {
         btnArreter.setDisable(true);
         txtPort.setText("9000");
+        cmbMode.getItems().setAll(ModeServeur.values());
+        cmbMode.setValue(ModeServeur.BLOQUANT);
 
-        // Mise à jour périodique de l'interface
-        Thread updateThread = new Thread(() -> {
-            while (true) {
-                try {
-                    Thread.sleep(1000);
-                    if (server != null && serverStarted) {
-                        updateUI();
-                    }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-        });
-
-        updateThread.setDaemon(true);
-        updateThread.start();
+        rafraichissement.start();
     }
 
     /**
@@ -59,13 +78,20 @@ public class ServerController implements Initializable {
     private void handleDemarrer() {
         try {
             int port = Integer.parseInt(txtPort.getText().trim());
-            server = new Server(port);
+            // Historique propre à chaque port, dans le répertoire de l'utilisateur
+            ConfigurationServeur configuration = new ConfigurationServeur();
+            configuration.setRepertoireHistorique(
+                    Path.of(System.getProperty("user.home"), ".chatapp", "historique-" + port));
+            server = new Server(port, cmbMode.getValue(), configuration);
+            sequenceJournal = 0;
+            lstJournal.getItems().clear();
             server.demarrer();
 
             serverStarted = true;
             btnDemarrer.setDisable(true);
             btnArreter.setDisable(false);
             txtPort.setDisable(true);
+            cmbMode.setDisable(true);
             lblStatut.setText("En cours d'exécution");
 
             updateUI();
@@ -87,6 +113,7 @@ public class ServerController implements Initializable {
             btnDemarrer.setDisable(false);
             btnArreter.setDisable(true);
             txtPort.setDisable(false);
+            cmbMode.setDisable(false);
             lblStatut.setText("Arrêté");
             lblConnections.setText("0");
 
@@ -95,23 +122,73 @@ public class ServerController implements Initializable {
     }
 
     /**
-     * Met à jour l'interface utilisateur avec les informations du serveur
+     * Met à jour les statistiques du serveur
      */
     private void updateUI() {
         if (server == null) return;
 
-        Platform.runLater(() -> {
-            // Mettre à jour le nombre de connexions
-            lblConnections.setText(String.valueOf(server.getNombreClients()));
+        lblConnections.setText(String.valueOf(server.getNombreClients()));
+        lblRessources.setText(RapportRessources.resumer());
+        lblFiles.setText(String.format("max %d, supprimées %d, clients lents %d",
+                server.getProfondeurMaxFiles(),
+                server.getTramesSupprimees(),
+                server.getDeconnexionsClientsLents()));
+        afficherMetriques(server.getMetriques());
+    }
 
-            // Mettre à jour le journal
-            lstJournal.getItems().clear();
-            lstJournal.getItems().addAll(server.getJournalMessages());
+    /**
+     * Affiche les débits et durées de la dernière seconde écoulée
+     */
+    private void afficherMetriques(MetriquesServeur metriques) {
+        lblMessages.setText(String.format("reçus %.0f/s, envoyés %.0f/s",
+                metriques.getMessagesRecusParSeconde(), metriques.getMessagesEnvoyesParSeconde()));
+        lblOctets.setText(String.format("reçus %s/s, envoyés %s/s (total %s / %s)",
+                formaterOctets(metriques.getOctetsRecusParSeconde()),
+                formaterOctets(metriques.getOctetsEnvoyesParSeconde()),
+                formaterOctets(metriques.getOctetsRecus()),
+                formaterOctets(metriques.getOctetsEnvoyes())));
+        lblDiffusion.setText(String.format("p50 %.0f µs, p99 %.0f µs, max %.0f µs",
+                metriques.getDiffusionP50Micros(), metriques.getDiffusionP99Micros(),
+                metriques.getDiffusionMaxMicros()));
+        lblAcceptations.setText(String.format("%.0f/s (total %d), file moyenne %.1f",
+                metriques.getConnexionsAccepteesParSeconde(), metriques.getConnexionsAcceptees(),
+                metriques.getProfondeurMoyenneFiles()));
+
+        StringBuilder deconnexions = new StringBuilder();
+        for (RaisonDeconnexion raison : RaisonDeconnexion.values()) {
+            if (deconnexions.length() > 0) deconnexions.append(", ");
+            deconnexions.append(raison).append(' ').append(metriques.getDeconnexions(raison));
+        }
+        lblDeconnexions.setText(deconnexions.toString());
+        lblTraces.setText(metriques.getTraces().resumer());
+    }
 
-            // Faire défiler vers le bas pour voir les messages les plus récents
-            if (!lstJournal.getItems().isEmpty()) {
-                lstJournal.scrollTo(lstJournal.getItems().size() - 1);
-            }
-        });
+    private static String formaterOctets(double octets) {
+        if (octets < 1024) return String.format("%.0f o", octets);
+        if (octets < 1024 * 1024) return String.format("%.1f Ko", octets / 1024);
+        return String.format("%.1f Mo", octets / (1024 * 1024));
+    }
+
+    /**
+     * Ajoute au journal affiché les seules entrées apparues depuis la dernière impulsion
+     */
+    private void afficherNouvellesEntrees() {
+        if (server == null) return;
+
+        sequenceJournal = server.lireJournalDepuis(sequenceJournal, nouvellesEntrees::add);
+        if (nouvellesEntrees.isEmpty()) return;
+
+        ObservableList<String> lignes = lstJournal.getItems();
+        lignes.addAll(nouvellesEntrees);
+        nouvellesEntrees.clear();
+
+        // Ne conserver que les lignes les plus récentes
+        int excedent = lignes.size() - LIGNES_MAX_JOURNAL;
+        if (excedent > 0) {
+            lignes.remove(0, excedent);
+        }
+
+        // Faire défiler vers le bas pour voir les messages les plus récents
+        lstJournal.scrollTo(lignes.size() - 1);
     }
-}
\ No newline at end of file
+}
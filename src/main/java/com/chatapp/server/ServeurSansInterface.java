@@ -0,0 +1,231 @@
+package com.chatapp.server;
+
+import com.chatapp.client.Client;
+import com.chatapp.model.Message;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serveur sans interface graphique, pour les machines sans écran.
+ * Il se lance sur le classpath et ne charge aucun module JavaFX :
+ * <pre>java -cp target/classes com.chatapp.server.ServeurSansInterface [fichier.properties] [cle=valeur ...]</pre>
+ * Les paramètres donnés en ligne de commande remplacent ceux du fichier. Clés reconnues :
+ * port, mode, capaciteFileSortante, politiqueConsommateurLent, delaiRegroupementMicros,
+ * tailleLotOctets, capaciteJournal, repertoireHistorique (absent ou vide : aucun historique),
+ * tailleSegmentHistorique, segmentsHistoriqueConserves, messagesRejoues,
+ * portFederation, interfaceFederation (boucle locale par défaut), pairsAutorises (hôtes séparés
+ * par des virgules, vide : tous), pairs (hote:port séparés par des virgules), messagesParSeconde, octetsParSeconde,
+ * delaiInactiviteMs et capaciteReprise.
+ * Avec -Dchatapp.entrainement=true, le serveur échange un message avec un client local
+ * puis s'arrête : c'est l'exécution qui remplit l'archive CDS (profil Maven cds).
+ */
+public class ServeurSansInterface {
+
+    private static final Set<String> CLES = Set.of("port", "mode", "capaciteFileSortante",
+            "politiqueConsommateurLent", "delaiRegroupementMicros", "tailleLotOctets", "capaciteJournal",
+            "repertoireHistorique", "tailleSegmentHistorique", "segmentsHistoriqueConserves",
+            "messagesRejoues", "portFederation", "interfaceFederation", "pairsAutorises", "pairs", "messagesParSeconde", "octetsParSeconde",
+            "delaiInactiviteMs", "capaciteReprise");
+    private static final int DELAI_ENTRAINEMENT_S = 10;
+
+    public static void main(String[] args) throws Exception {
+        Properties proprietes;
+        try {
+            proprietes = lireArguments(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println("Paramètres invalides: " + e.getMessage());
+            System.err.println("Usage: ServeurSansInterface [fichier.properties] [cle=valeur ...]");
+            System.exit(2);
+            return;
+        }
+
+        int port;
+        ModeServeur mode;
+        ConfigurationServeur configuration;
+        try {
+            port = Integer.parseInt(proprietes.getProperty("port", "9000"));
+            mode = ModeServeur.valueOf(proprietes.getProperty("mode", ModeServeur.NIO.name()));
+            configuration = lireConfiguration(proprietes);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Paramètres invalides: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        Server server = new Server(port, mode, configuration);
+        server.demarrer();
+        if (!server.estDemarre()) {
+            System.err.println("Impossible de démarrer le serveur sur le port " + port);
+            System.exit(1);
+            return;
+        }
+        long pretMs = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.printf("Serveur prêt sur le port %d (mode %s) en %d ms depuis le lancement de la JVM, %s%n",
+                port, mode.name(), pretMs, RapportRessources.resumer());
+
+        if (Boolean.getBoolean("chatapp.entrainement")) {
+            boolean reussi = entrainer(port);
+            server.arreter();
+            System.exit(reussi ? 0 : 1);
+            return;
+        }
+
+        // Arrêt propre sur SIGTERM ou Ctrl+C ; le thread principal attend jusque-là
+        CountDownLatch arrete = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.arreter();
+            arrete.countDown();
+        }, "arret-serveur"));
+        arrete.await();
+    }
+
+    /**
+     * Fusionne le fichier de propriétés éventuel (premier argument sans '=')
+     * et les paramètres cle=valeur de la ligne de commande
+     */
+    static Properties lireArguments(String[] args) throws IOException {
+        Properties proprietes = new Properties();
+        int debut = 0;
+        if (args.length > 0 && !args[0].contains("=")) {
+            try (Reader lecteur = Files.newBufferedReader(Path.of(args[0]), StandardCharsets.UTF_8)) {
+                proprietes.load(lecteur);
+            }
+            debut = 1;
+        }
+        for (int i = debut; i < args.length; i++) {
+            int egal = args[i].indexOf('=');
+            if (egal <= 0) {
+                throw new IllegalArgumentException("Paramètre attendu sous la forme cle=valeur: " + args[i]);
+            }
+            proprietes.setProperty(args[i].substring(0, egal).trim(), args[i].substring(egal + 1).trim());
+        }
+        for (String cle : proprietes.stringPropertyNames()) {
+            if (!CLES.contains(cle)) {
+                throw new IllegalArgumentException("Clé inconnue: " + cle);
+            }
+        }
+        return proprietes;
+    }
+
+    /**
+     * Construit la configuration du serveur ; les clés absentes gardent leur valeur par défaut
+     */
+    static ConfigurationServeur lireConfiguration(Properties proprietes) {
+        ConfigurationServeur configuration = new ConfigurationServeur();
+        String valeur;
+        if ((valeur = proprietes.getProperty("capaciteFileSortante")) != null) {
+            configuration.setCapaciteFileSortante(Integer.parseInt(valeur));
+        }
+        if ((valeur = proprietes.getProperty("politiqueConsommateurLent")) != null) {
+            configuration.setPolitiqueConsommateurLent(PolitiqueConsommateurLent.valueOf(valeur));
+        }
+        if ((valeur = proprietes.getProperty("delaiRegroupementMicros")) != null) {
+            configuration.setDelaiRegroupementMicros(Long.parseLong(valeur));
+        }
+        if ((valeur = proprietes.getProperty("tailleLotOctets")) != null) {
+            configuration.setTailleLotOctets(Integer.parseInt(valeur));
+        }
+        if ((valeur = proprietes.getProperty("capaciteJournal")) != null) {
+            configuration.setCapaciteJournal(Integer.parseInt(valeur));
+        }
+        if ((valeur = proprietes.getProperty("repertoireHistorique")) != null) {
+            configuration.setRepertoireHistorique(valeur.isEmpty() ? null : Path.of(valeur));
+        }
+        if ((valeur = proprietes.getProperty("tailleSegmentHistorique")) != null) {
+            configuration.setTailleSegmentHistorique(Integer.parseInt(valeur));
+        }
+        if ((valeur = proprietes.getProperty("segmentsHistoriqueConserves")) != null) {
+            configuration.setSegmentsHistoriqueConserves(Integer.parseInt(valeur));
+        }
+        if ((valeur = proprietes.getProperty("messagesRejoues")) != null) {
+            configuration.setMessagesRejoues(Integer.parseInt(valeur));
+        }
+        if ((valeur = proprietes.getProperty("portFederation")) != null) {
+            configuration.setPortFederation(Integer.parseInt(valeur));
+        }
+        if ((valeur = proprietes.getProperty("interfaceFederation")) != null) {
+            configuration.setInterfaceFederation(lireAdresse(valeur.trim()));
+        }
+        if ((valeur = proprietes.getProperty("pairsAutorises")) != null) {
+            Set<InetAddress> autorises = new HashSet<>();
+            for (String hote : valeur.split(",")) {
+                if (!hote.isBlank()) {
+                    autorises.add(lireAdresse(hote.trim()));
+                }
+            }
+            configuration.setPairsAutorises(autorises);
+        }
+        if ((valeur = proprietes.getProperty("pairs")) != null) {
+            configuration.setPairs(lirePairs(valeur));
+        }
+        if ((valeur = proprietes.getProperty("messagesParSeconde")) != null) {
+            configuration.setMessagesParSeconde(Integer.parseInt(valeur));
+        }
+        if ((valeur = proprietes.getProperty("octetsParSeconde")) != null) {
+            configuration.setOctetsParSeconde(Integer.parseInt(valeur));
+        }
+        if ((valeur = proprietes.getProperty("delaiInactiviteMs")) != null) {
+            configuration.setDelaiInactiviteMs(Long.parseLong(valeur));
+        }
+        if ((valeur = proprietes.getProperty("capaciteReprise")) != null) {
+            configuration.setCapaciteReprise(Integer.parseInt(valeur));
+        }
+        return configuration;
+    }
+
+    private static InetAddress lireAdresse(String hote) {
+        try {
+            return InetAddress.getByName(hote);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Hôte inconnu: " + hote, e);
+        }
+    }
+
+    private static List<InetSocketAddress> lirePairs(String valeur) {
+        List<InetSocketAddress> pairs = new ArrayList<>();
+        for (String pair : valeur.split(",")) {
+            pair = pair.trim();
+            if (pair.isEmpty()) continue;
+            int deuxPoints = pair.lastIndexOf(':');
+            if (deuxPoints <= 0) {
+                throw new IllegalArgumentException("Pair attendu sous la forme hote:port: " + pair);
+            }
+            int port = Integer.parseInt(pair.substring(deuxPoints + 1));
+            pairs.add(new InetSocketAddress(pair.substring(0, deuxPoints), port));
+        }
+        return pairs;
+    }
+
+    /**
+     * Connecte un client local, échange un message avec le serveur puis le déconnecte,
+     * pour charger les classes du chemin d'un message
+     */
+    private static boolean entrainer(int port) throws InterruptedException {
+        CountDownLatch recu = new CountDownLatch(1);
+        Client client = new Client("localhost", port, "entrainement");
+        client.ajouterObservateurMessages(message -> {
+            if (message.getType() == Message.TypeMessage.MESSAGE) {
+                recu.countDown();
+            }
+        });
+        if (!client.connecter()) return false;
+        client.envoyerMessageTexte("Message d'entraînement");
+        boolean reussi = recu.await(DELAI_ENTRAINEMENT_S, TimeUnit.SECONDS);
+        client.deconnecter();
+        return reussi;
+    }
+}
@@ -2,6 +2,7 @@ module com.chatapp {
     requires javafx.controls;
     requires javafx.fxml;
     requires java.logging;
+    requires java.management;
 
     opens com.chatapp.client to javafx.fxml;
     opens com.chatapp.server to javafx.fxml;
@@ -0,0 +1,114 @@
+package com.chatapp.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Aller-retour des trames dans chaque version du protocole
+ */
+class CodecMessageTest {
+
+    private static Message relire(Message message, int version) throws IOException {
+        byte[] trame = CodecMessage.encoder(message, version);
+        return CodecMessage.lire(new DataInputStream(new ByteArrayInputStream(trame)));
+    }
+
+    @Test
+    void allerRetourDansToutesLesVersionsSansSalonNiDestinataire() throws IOException {
+        for (int version = CodecMessage.VERSION_SERIALISEE; version <= CodecMessage.VERSION_COURANTE; version++) {
+            Message message = new Message("alice", "bonjour à tous", Message.TypeMessage.MESSAGE, 1_700_000_000_123L);
+
+            Message relu = relire(message, version);
+
+            assertEquals("alice", relu.getExpediteur(), "version " + version);
+            assertEquals("bonjour à tous", relu.getContenu(), "version " + version);
+            assertEquals(Message.TypeMessage.MESSAGE, relu.getType(), "version " + version);
+            assertEquals(1_700_000_000_123L, relu.getHorodatageMillis(), "version " + version);
+            assertTrue(relu.estDansSalonParDefaut(), "version " + version);
+            assertNull(relu.getDestinataire());
+        }
+    }
+
+    @Test
+    void allerRetourDuSalonEtDuDestinataireDansToutesLesVersions() throws IOException {
+        for (int version = CodecMessage.VERSION_SERIALISEE; version <= CodecMessage.VERSION_COURANTE; version++) {
+            Message message = new Message("alice", "entre nous", Message.TypeMessage.DIRECT);
+            message.setSalon("projets");
+            message.setDestinataire("bob");
+            message.setVersionPresence(42);
+
+            Message relu = relire(message, version);
+
+            assertEquals("projets", relu.getSalon(), "version " + version);
+            assertEquals("bob", relu.getDestinataire(), "version " + version);
+            assertEquals(42, relu.getVersionPresence(), "version " + version);
+        }
+    }
+
+    @Test
+    void champsAbsentsDuFormatSerialiseTransmisEnBinaire() throws IOException {
+        for (int version = CodecMessage.VERSION_BINAIRE; version <= CodecMessage.VERSION_COURANTE; version++) {
+            Message message = new Message("Serveur", "jeton\ngénéral", Message.TypeMessage.REPRISE);
+            message.setSequence(1_234_567_890_123L);
+            message.setIdentifiant(77, 9);
+            message.setVersionProtocole(CodecMessage.VERSION_COURANTE);
+            message.demarrerTrace();
+            message.marquer(EtapeTrace.ENVOI_CLIENT);
+
+            Message relu = relire(message, version);
+
+            assertEquals(1_234_567_890_123L, relu.getSequence(), "version " + version);
+            assertEquals(77, relu.getOrigine(), "version " + version);
+            assertEquals(9, relu.getNumero(), "version " + version);
+            assertEquals(CodecMessage.VERSION_COURANTE, relu.getVersionProtocole(), "version " + version);
+            assertEquals(message.getMarque(EtapeTrace.ENVOI_CLIENT), relu.getMarque(EtapeTrace.ENVOI_CLIENT));
+        }
+    }
+
+    @Test
+    void grandMessageCompresseAPartirDeLaVersion3() throws IOException {
+        char[] lignes = new char[4000];
+        Arrays.fill(lignes, 'x');
+        Message message = new Message("alice", new String(lignes), Message.TypeMessage.MESSAGE);
+
+        byte[] binaire = CodecMessage.encoder(message, CodecMessage.VERSION_BINAIRE);
+        byte[] compressee = CodecMessage.encoder(message, CodecMessage.VERSION_COMPRESSEE);
+
+        assertEquals(0x02, binaire[CodecMessage.TAILLE_ENTETE]);
+        assertEquals(0x03, compressee[CodecMessage.TAILLE_ENTETE]);
+        assertTrue(compressee.length < binaire.length);
+        assertEquals(message.getContenu(), relire(message, CodecMessage.VERSION_COMPRESSEE).getContenu());
+    }
+
+    @Test
+    void petitMessageResteBinaireEnVersion3() {
+        Message message = new Message("alice", "court", Message.TypeMessage.MESSAGE);
+
+        byte[] trame = CodecMessage.encoder(message, CodecMessage.VERSION_COMPRESSEE);
+
+        assertEquals(0x02, trame[CodecMessage.TAILLE_ENTETE]);
+    }
+
+    @Test
+    void trameTronqueeRefusee() {
+        byte[] trame = CodecMessage.encoder(new Message("alice", "bonjour", Message.TypeMessage.MESSAGE),
+                CodecMessage.VERSION_BINAIRE);
+
+        assertThrows(TrameInvalideException.class, () -> CodecMessage.decoder(trame, CodecMessage.TAILLE_ENTETE,
+                trame.length - CodecMessage.TAILLE_ENTETE - 3));
+    }
+
+    @Test
+    void longueurInvalideRefusee() {
+        assertThrows(IOException.class, () -> CodecMessage.verifierLongueur(0));
+        assertThrows(IOException.class, () -> CodecMessage.verifierLongueur(CodecMessage.TAILLE_MAX_CHARGE + 1));
+    }
+}
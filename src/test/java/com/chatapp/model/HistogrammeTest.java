@@ -0,0 +1,98 @@
+package com.chatapp.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Centiles de l'histogramme : exacts sous 128, à moins de 1,6 % au-delà
+ */
+class HistogrammeTest {
+
+    @Test
+    void centilesExactsPourLesPetitesValeurs() {
+        Histogramme histogramme = new Histogramme(1_000_000);
+        for (int valeur = 1; valeur <= 100; valeur++) {
+            histogramme.enregistrer(valeur);
+        }
+
+        assertEquals(50, histogramme.valeurAuCentile(50));
+        assertEquals(90, histogramme.valeurAuCentile(90));
+        assertEquals(99, histogramme.valeurAuCentile(99));
+        assertEquals(100, histogramme.valeurAuCentile(100));
+        assertEquals(1, histogramme.valeurAuCentile(0));
+        assertEquals(100, histogramme.getNombre());
+        assertEquals(100, histogramme.getMax());
+        assertEquals(50.5, histogramme.getMoyenne(), 1e-9);
+    }
+
+    @Test
+    void centilesAPrecisionRelativePourLesGrandesValeurs() {
+        Histogramme histogramme = new Histogramme(10_000_000);
+        for (int valeur = 1; valeur <= 1_000_000; valeur++) {
+            histogramme.enregistrer(valeur);
+        }
+
+        for (double centile : new double[]{50, 90, 99, 99.9}) {
+            long attendu = (long) (centile / 100 * 1_000_000);
+            long obtenu = histogramme.valeurAuCentile(centile);
+            // Borne haute de l'intervalle : jamais en dessous de la valeur exacte
+            assertTrue(obtenu >= attendu, "centile " + centile + ": " + obtenu);
+            assertTrue(obtenu - attendu <= attendu * 0.016, "centile " + centile + ": " + obtenu);
+        }
+        assertEquals(1_000_000, histogramme.valeurAuCentile(100));
+    }
+
+    @Test
+    void valeursHorsBornesRameneesAuxExtremites() {
+        Histogramme histogramme = new Histogramme(1000);
+        histogramme.enregistrer(-5);
+        histogramme.enregistrer(50_000);
+
+        assertEquals(0, histogramme.valeurAuCentile(50));
+        assertEquals(50_000, histogramme.getMax());
+        assertTrue(histogramme.valeurAuCentile(100) >= 1000);
+    }
+
+    @Test
+    void histogrammeVideEtRemiseAZero() {
+        Histogramme histogramme = new Histogramme(1000);
+        assertEquals(0, histogramme.valeurAuCentile(99));
+        assertEquals(0.0, histogramme.getMoyenne(), 0);
+
+        histogramme.enregistrer(10);
+        histogramme.reinitialiser();
+
+        assertEquals(0, histogramme.getNombre());
+        assertEquals(0, histogramme.getMax());
+        assertEquals(0, histogramme.valeurAuCentile(50));
+    }
+
+    @Test
+    void enregistrementsConcurrentsTousComptes() throws InterruptedException {
+        Histogramme histogramme = new Histogramme(1_000_000);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 1; i <= 10_000; i++) {
+                    histogramme.enregistrer(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40_000, histogramme.getNombre());
+        assertEquals(10_000, histogramme.getMax());
+        assertEquals(5000.5, histogramme.getMoyenne(), 1e-9);
+    }
+
+    @Test
+    void valeurMaximaleNulleRefusee() {
+        assertThrows(IllegalArgumentException.class, () -> new Histogramme(0));
+    }
+}
@@ -0,0 +1,97 @@
+package com.chatapp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tampon circulaire : séquences, écrasement des plus anciens et reprise de lecture
+ */
+class AnneauCirculaireTest {
+
+    @Test
+    void capaciteArrondieALaPuissanceDeDeuxSuperieure() {
+        assertEquals(8, new AnneauCirculaire<String>(5).capacite());
+        assertEquals(8, new AnneauCirculaire<String>(8).capacite());
+        assertThrows(IllegalArgumentException.class, () -> new AnneauCirculaire<String>(0));
+    }
+
+    @Test
+    void sequencesCroissantesDepuisZero() {
+        AnneauCirculaire<String> anneau = new AnneauCirculaire<>(4);
+
+        assertEquals(0, anneau.ajouter("a"));
+        assertEquals(1, anneau.ajouter("b"));
+        assertEquals(2, anneau.getProchaineSequence());
+        assertEquals(List.of("a", "b"), anneau.depuis(0));
+        assertEquals(List.of("b"), anneau.depuis(1));
+    }
+
+    @Test
+    void apresUnTourSeulsLesDerniersRestent() {
+        AnneauCirculaire<Integer> anneau = new AnneauCirculaire<>(4);
+        for (int i = 0; i < 10; i++) {
+            anneau.ajouter(i);
+        }
+
+        assertEquals(List.of(6, 7, 8, 9), anneau.depuis(0));
+        assertEquals(List.of(8, 9), anneau.depuis(8));
+        assertTrue(anneau.depuis(10).isEmpty());
+    }
+
+    @Test
+    void lectureRepriseOuElleSEstArretee() {
+        AnneauCirculaire<Integer> anneau = new AnneauCirculaire<>(4);
+        List<Integer> lus = new ArrayList<>();
+        anneau.ajouter(0);
+        anneau.ajouter(1);
+
+        long suivante = anneau.lireDepuis(0, lus::add);
+        for (int i = 2; i < 5; i++) {
+            anneau.ajouter(i);
+        }
+        suivante = anneau.lireDepuis(suivante, lus::add);
+
+        assertEquals(List.of(0, 1, 2, 3, 4), lus);
+        assertEquals(5, suivante);
+    }
+
+    @Test
+    void lecteurEnRetardSauteLesElementsEcrases() {
+        AnneauCirculaire<Integer> anneau = new AnneauCirculaire<>(4);
+        List<Integer> lus = new ArrayList<>();
+        long suivante = anneau.lireDepuis(0, lus::add);
+        for (int i = 0; i < 7; i++) {
+            anneau.ajouter(i);
+        }
+
+        suivante = anneau.lireDepuis(suivante, lus::add);
+
+        assertEquals(List.of(3, 4, 5, 6), lus);
+        assertEquals(7, suivante);
+    }
+
+    @Test
+    void ecrivainsConcurrentsNePerdentAucuneSequence() throws InterruptedException {
+        AnneauCirculaire<Long> anneau = new AnneauCirculaire<>(1 << 16);
+        Thread[] ecrivains = new Thread[4];
+        for (int t = 0; t < ecrivains.length; t++) {
+            ecrivains[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    anneau.ajouter((long) i);
+                }
+            });
+            ecrivains[t].start();
+        }
+        for (Thread ecrivain : ecrivains) {
+            ecrivain.join();
+        }
+
+        assertEquals(40_000, anneau.getProchaineSequence());
+        assertEquals(40_000, anneau.depuis(0).size());
+    }
+}
@@ -0,0 +1,88 @@
+package com.chatapp.server;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Fenêtre glissante des numéros déjà reçus de chaque nœud
+ */
+class FiltreDoublonsTest {
+
+    private static final int FENETRE = FiltreDoublons.TAILLE_FENETRE;
+
+    @Test
+    void doublonEcarte() {
+        FiltreDoublons filtre = new FiltreDoublons();
+
+        assertTrue(filtre.accepter(1, 1));
+        assertFalse(filtre.accepter(1, 1));
+        assertTrue(filtre.accepter(1, 2));
+    }
+
+    @Test
+    void numeroNulOuNegatifEcarte() {
+        FiltreDoublons filtre = new FiltreDoublons();
+
+        assertFalse(filtre.accepter(1, 0));
+        assertFalse(filtre.accepter(1, -3));
+    }
+
+    @Test
+    void desordreTolereDansLaFenetre() {
+        FiltreDoublons filtre = new FiltreDoublons();
+
+        assertTrue(filtre.accepter(1, 10));
+        assertTrue(filtre.accepter(1, 7));
+        assertTrue(filtre.accepter(1, 9));
+        assertFalse(filtre.accepter(1, 7));
+        assertTrue(filtre.accepter(1, 8));
+    }
+
+    @Test
+    void numeroPlusAncienQueLaFenetreTenuPourRecu() {
+        FiltreDoublons filtre = new FiltreDoublons();
+        assertTrue(filtre.accepter(1, FENETRE + 10));
+
+        assertTrue(filtre.accepter(1, 11));
+        assertFalse(filtre.accepter(1, 10));
+    }
+
+    @Test
+    void caseReutiliseeApresUnTourDeFenetre() {
+        FiltreDoublons filtre = new FiltreDoublons();
+        assertTrue(filtre.accepter(1, 5));
+
+        // Même case de l'anneau, un tour plus loin : un autre numéro, pas un doublon
+        assertTrue(filtre.accepter(1, 5 + FENETRE));
+        assertFalse(filtre.accepter(1, 5 + FENETRE));
+        // Numéros sautés dans la fenêtre : jamais marqués comme reçus
+        assertTrue(filtre.accepter(1, 6 + FENETRE / 2));
+    }
+
+    @Test
+    void grandSautEffaceToutLAnneau() {
+        FiltreDoublons filtre = new FiltreDoublons();
+        for (int numero = 1; numero <= 100; numero++) {
+            filtre.accepter(1, numero);
+        }
+
+        assertTrue(filtre.accepter(1, 100L + 10 * FENETRE));
+        for (long numero = 100L + 9 * FENETRE + 1; numero < 100L + 10 * FENETRE; numero++) {
+            assertTrue(filtre.accepter(1, numero), "numéro " + numero);
+        }
+    }
+
+    @Test
+    void fenetresIndependantesParOrigineEtOubli() {
+        FiltreDoublons filtre = new FiltreDoublons();
+        assertTrue(filtre.accepter(1, 1));
+
+        assertTrue(filtre.accepter(2, 1));
+
+        filtre.oublier(1);
+        assertTrue(filtre.accepter(1, 1));
+        assertFalse(filtre.accepter(2, 1));
+    }
+}
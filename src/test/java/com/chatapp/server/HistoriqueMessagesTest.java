@@ -0,0 +1,154 @@
+package com.chatapp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.chatapp.model.CodecMessage;
+import com.chatapp.model.Message;
+import com.chatapp.model.TrameInvalideException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Historique sur disque : relecture après réouverture, écriture déchirée, lecture filtrée
+ */
+class HistoriqueMessagesTest {
+
+    private static final int TAILLE_SEGMENT = 64 * 1024;
+
+    @TempDir
+    Path repertoire;
+
+    private HistoriqueMessages ouvrir() throws IOException {
+        HistoriqueMessages historique = new HistoriqueMessages(repertoire, TAILLE_SEGMENT, 4);
+        historique.demarrer();
+        return historique;
+    }
+
+    private static byte[] trame(String contenu, String salon) {
+        Message message = new Message("alice", contenu, Message.TypeMessage.MESSAGE);
+        message.setSalon(salon);
+        return CodecMessage.encoder(message, CodecMessage.VERSION_BINAIRE);
+    }
+
+    private static Message decoder(byte[] trame) {
+        try {
+            return CodecMessage.decoder(trame, CodecMessage.TAILLE_ENTETE, trame.length - CodecMessage.TAILLE_ENTETE);
+        } catch (TrameInvalideException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static List<String> derniers(HistoriqueMessages historique, int n) {
+        List<String> contenus = new ArrayList<>();
+        historique.lireDerniers(n, historique.getProchainOffset(), HistoriqueMessagesTest::decoder,
+                message -> contenus.add(message.getContenu()));
+        return contenus;
+    }
+
+    @Test
+    void messagesRelusApresReouverture() throws IOException {
+        HistoriqueMessages historique = ouvrir();
+        for (int i = 0; i < 10; i++) {
+            historique.ajouter(trame("m" + i, null));
+        }
+        historique.arreter();
+
+        HistoriqueMessages rouvert = ouvrir();
+        try {
+            assertEquals(10, rouvert.getProchainOffset());
+            assertEquals(List.of("m6", "m7", "m8", "m9"), derniers(rouvert, 4));
+        } finally {
+            rouvert.arreter();
+        }
+    }
+
+    @Test
+    void ecritureDechireeTronqueeALaReouverture() throws IOException {
+        HistoriqueMessages historique = ouvrir();
+        for (int i = 0; i < 3; i++) {
+            historique.ajouter(trame("m" + i, null));
+        }
+        historique.arreter();
+        dechirerApresLeDernierEnregistrement();
+
+        HistoriqueMessages rouvert = ouvrir();
+        rouvert.ajouter(trame("après", null));
+        rouvert.arreter();
+
+        // L'enregistrement déchiré a été effacé puis recouvert par le suivant
+        HistoriqueMessages relu = ouvrir();
+        try {
+            assertEquals(4, relu.getProchainOffset());
+            assertEquals(List.of("m0", "m1", "m2", "après"), derniers(relu, 10));
+        } finally {
+            relu.arreter();
+        }
+    }
+
+    /**
+     * Simule un arrêt pendant une écriture : longueur et début de charge écrits, somme de contrôle fausse
+     */
+    private void dechirerApresLeDernierEnregistrement() throws IOException {
+        Path segment;
+        try (Stream<Path> fichiers = Files.list(repertoire)) {
+            segment = fichiers.filter(f -> f.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        try (FileChannel canal = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer longueur = ByteBuffer.allocate(Integer.BYTES);
+            long position = 0;
+            while (true) {
+                longueur.clear();
+                canal.read(longueur, position);
+                int taille = longueur.getInt(0);
+                if (taille <= 0) break;
+                position += 2 * Integer.BYTES + taille;
+            }
+            ByteBuffer dechire = ByteBuffer.allocate(2 * Integer.BYTES + 16);
+            dechire.putInt(200).putInt(0x12345678).put(new byte[16]).flip();
+            canal.write(dechire, position);
+        }
+    }
+
+    @Test
+    void derniersMessagesDuSalonMalgreLesAutresSalons() throws IOException {
+        HistoriqueMessages historique = ouvrir();
+        try {
+            for (int i = 0; i < 200; i++) {
+                historique.ajouter(trame(i % 10 == 0 ? "g" + i : "x" + i, i % 10 == 0 ? null : "x"));
+            }
+
+            List<String> contenus = new ArrayList<>();
+            historique.lireDerniers(5, historique.getProchainOffset(), trame -> {
+                Message message = decoder(trame);
+                return message.estDansSalonParDefaut() ? message.getContenu() : null;
+            }, contenus::add);
+
+            assertEquals(List.of("g150", "g160", "g170", "g180", "g190"), contenus);
+        } finally {
+            historique.arreter();
+        }
+    }
+
+    @Test
+    void messagePlusGrandQuUnSegmentRefuseSansConsommerDOffset() throws IOException {
+        HistoriqueMessages historique = ouvrir();
+        try {
+            historique.ajouter(trame("x".repeat(TAILLE_SEGMENT), null));
+            historique.ajouter(trame("petit", null));
+
+            assertEquals(1, historique.getProchainOffset());
+            assertEquals(List.of("petit"), derniers(historique, 10));
+        } finally {
+            historique.arreter();
+        }
+    }
+}
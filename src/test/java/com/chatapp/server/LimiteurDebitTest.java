@@ -0,0 +1,77 @@
+package com.chatapp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Seau à jetons : rafale d'une seconde, pause au-delà et remplissage avec le temps
+ */
+class LimiteurDebitTest {
+
+    private static final long SECONDE = 1_000_000_000L;
+
+    @Test
+    void rafaleDUneSecondeToleree() {
+        LimiteurDebit limiteur = new LimiteurDebit(10, 0);
+        long maintenant = System.nanoTime();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiteur.consommer(100, maintenant), "message " + i);
+        }
+        assertEquals(SECONDE / 10, limiteur.consommer(100, maintenant));
+        assertEquals(2 * SECONDE / 10, limiteur.consommer(100, maintenant));
+    }
+
+    @Test
+    void seauRempliParLeTemps() {
+        LimiteurDebit limiteur = new LimiteurDebit(10, 0);
+        long maintenant = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            limiteur.consommer(100, maintenant);
+        }
+
+        // Un dixième de seconde rend un message
+        assertEquals(0, limiteur.consommer(100, maintenant + SECONDE / 10));
+        assertTrue(limiteur.consommer(100, maintenant + SECONDE / 10) > 0);
+
+        // Après un long silence, la rafale entière est de nouveau permise, pas davantage
+        long plusTard = maintenant + 10 * SECONDE;
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0, limiteur.consommer(100, plusTard), "message " + i);
+        }
+        assertTrue(limiteur.consommer(100, plusTard) > 0);
+    }
+
+    @Test
+    void limiteEnOctetsIndependanteDuNombreDeMessages() {
+        LimiteurDebit limiteur = new LimiteurDebit(0, 1000);
+        long maintenant = System.nanoTime();
+
+        assertEquals(0, limiteur.consommer(1000, maintenant));
+        // Une seconde de débit au-delà de la rafale : une seconde de pause
+        assertEquals(SECONDE, limiteur.consommer(1000, maintenant));
+    }
+
+    @Test
+    void laPlusLonguePauseDesDeuxLimitesLEmporte() {
+        LimiteurDebit limiteur = new LimiteurDebit(1000, 1000);
+        long maintenant = System.nanoTime();
+
+        limiteur.consommer(1000, maintenant);
+        assertEquals(SECONDE / 2, limiteur.consommer(500, maintenant));
+    }
+
+    @Test
+    void sansLimiteRienNEstRetenu() {
+        LimiteurDebit limiteur = new LimiteurDebit(0, 0);
+        long maintenant = System.nanoTime();
+
+        assertFalse(limiteur.estActif());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limiteur.consommer(1 << 20, maintenant));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.chatapp.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Roue d'inactivité : expiration après le délai, sursis par l'activité, annulation
+ */
+class RoueInactiviteTest {
+
+    private static final long DELAI_MS = 320;
+
+    private final List<String> expires = new CopyOnWriteArrayList<>();
+    private final CountDownLatch premiereExpiration = new CountDownLatch(1);
+    private final RoueInactivite<String> roue = new RoueInactivite<>("roue-test", DELAI_MS, element -> {
+        expires.add(element);
+        premiereExpiration.countDown();
+    });
+
+    @AfterEach
+    void arreter() {
+        roue.arreter();
+    }
+
+    @Test
+    void elementInactifExpireApresLeDelai() throws InterruptedException {
+        roue.demarrer();
+        long debut = System.nanoTime();
+        roue.suivre("inactif");
+
+        assertTrue(premiereExpiration.await(5, TimeUnit.SECONDS));
+        long ecouleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - debut);
+        assertTrue(ecouleMs >= DELAI_MS - roue.getResolutionMs(), "expiré après " + ecouleMs + " ms");
+        assertEquals(List.of("inactif"), expires);
+        assertEquals(0, roue.getNombreSuivis());
+    }
+
+    @Test
+    void activiteRepousseLExpiration() throws InterruptedException {
+        roue.demarrer();
+        RoueInactivite.Suivi<String> actif = roue.suivre("actif");
+        roue.suivre("inactif");
+
+        // Actif pendant plus de trois délais
+        long fin = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(3 * DELAI_MS + 100);
+        while (System.nanoTime() < fin) {
+            actif.marquerActivite();
+            Thread.sleep(DELAI_MS / 8);
+        }
+        assertEquals(List.of("inactif"), expires);
+
+        // Puis silencieux : il finit par expirer à son tour
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (expires.size() < 2 && System.nanoTime() < limite) {
+            Thread.sleep(10);
+        }
+        assertEquals(List.of("inactif", "actif"), expires);
+    }
+
+    @Test
+    void elementAnnuleNExpireJamais() throws InterruptedException {
+        roue.demarrer();
+        roue.suivre("annule").annuler();
+
+        Thread.sleep(3 * DELAI_MS);
+
+        assertFalse(expires.contains("annule"));
+        assertEquals(0, roue.getNombreSuivis());
+    }
+
+    @Test
+    void delaiNulRefuse() {
+        assertThrows(IllegalArgumentException.class, () -> new RoueInactivite<String>("roue", 0, element -> { }));
+    }
+}